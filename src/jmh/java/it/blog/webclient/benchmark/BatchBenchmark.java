@@ -0,0 +1,148 @@
+package it.blog.webclient.benchmark;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import it.blog.webclient.Greeting;
+import it.blog.webclient.component.WebClientGreeting;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/*
+ * The same greetings posted one per request to /greeting/{from} and in NDJSON batches to
+ * /greeting/{from}/batch. One operation sends all the greetings: greetings/s is ops/s times greetings.
+ * The aux counters are the bytes on the wire in each direction, headers included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Threads(1)
+@Fork(1)
+public class BatchBenchmark {
+
+	static final int CONCURRENCY = 16;
+
+	@Param({ "1000" })
+	int greetings;
+
+	@Param({ "10", "100" })
+	int batchSize;
+
+	ConfigurableApplicationContext server;
+	ConnectionProvider provider;
+	WebClient client;
+	List<Greeting> payloads;
+
+	final ByteCounter wire = new ByteCounter();
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Traffic {
+		public long bytesSent;
+		public long bytesReceived;
+		public long greetingsSent;
+	}
+
+	@Setup(Level.Trial)
+	public void start() {
+		server = BenchmarkContexts.server();
+		provider = ConnectionProvider.builder("batch-benchmark").maxConnections(CONCURRENCY).build();
+		HttpClient httpClient = HttpClient.create(provider)
+				.doOnChannelInit((observer, channel, address) -> channel.pipeline().addFirst(wire));
+		client = WebClient.builder().baseUrl(BenchmarkContexts.serverUrl(server))
+				.clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+		payloads = IntStream.range(0, greetings).mapToObj(i -> new Greeting("Hello World " + i))
+				.collect(Collectors.toList());
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		provider.dispose();
+		server.close();
+	}
+
+	@Benchmark
+	public Greeting single(Traffic traffic) {
+		long sent = wire.sent.sum(), received = wire.received.sum();
+		Greeting last = Flux.fromIterable(payloads)
+				.flatMap(greeting -> client.post().uri("/greeting/{from}", "Milan")
+						.contentType(MediaType.APPLICATION_JSON).bodyValue(greeting).retrieve()
+						.bodyToMono(Greeting.class), CONCURRENCY)
+				.blockLast();
+		count(traffic, sent, received);
+		return last;
+	}
+
+	@Benchmark
+	public Greeting batch(Traffic traffic) {
+		long sent = wire.sent.sum(), received = wire.received.sum();
+		Greeting last = WebClientGreeting.postGreetingsBatch(client, "Milan", Flux.fromIterable(payloads), batchSize,
+				Duration.ofMillis(5), CONCURRENCY).blockLast();
+		count(traffic, sent, received);
+		return last;
+	}
+
+	private void count(Traffic traffic, long sent, long received) {
+		traffic.bytesSent += wire.sent.sum() - sent;
+		traffic.bytesReceived += wire.received.sum() - received;
+		traffic.greetingsSent += greetings;
+	}
+
+	/*
+	 * First in the pipeline, it sees the raw bytes of every connection
+	 */
+	@Sharable
+	static class ByteCounter extends ChannelDuplexHandler {
+
+		final LongAdder sent = new LongAdder();
+		final LongAdder received = new LongAdder();
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			if (msg instanceof ByteBuf) {
+				received.add(((ByteBuf) msg).readableBytes());
+			}
+			super.channelRead(ctx, msg);
+		}
+
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+			if (msg instanceof ByteBuf) {
+				sent.add(((ByteBuf) msg).readableBytes());
+			}
+			super.write(ctx, msg, promise);
+		}
+	}
+}
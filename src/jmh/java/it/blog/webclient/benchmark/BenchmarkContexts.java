@@ -0,0 +1,88 @@
+package it.blog.webclient.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import it.blog.webclient.GreetingNettyServer;
+import it.blog.webclient.WebClientApplication;
+
+/*
+ * Application contexts for the benchmarks: an upstream serving /message and /from on Netty,
+ * and a client whose "greeting" and "backend" upstreams point to it. Only the benchmarks log below WARN.
+ */
+public class BenchmarkContexts {
+
+	public static ConfigurableApplicationContext upstream(long delayMillis, String... properties) {
+		List<String> all = new ArrayList<>(List.of("greeting.server.mode=netty", "greeting.server.netty.port=0",
+				"greeting.server.latency=" + delayMillis + "ms", "logging.level.root=WARN",
+				"logging.level.it.blog.webclient.benchmark=INFO"));
+		all.addAll(List.of(properties));
+		return new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE).run(args(all));
+	}
+
+	/*
+	 * The application itself on Tomcat, for the endpoints that only ServerController serves
+	 */
+	public static ConfigurableApplicationContext server(String... properties) {
+		List<String> all = new ArrayList<>(List.of("server.port=0", "logging.level.root=WARN",
+				"logging.level.it.blog.webclient.benchmark=INFO"));
+		all.addAll(List.of(properties));
+		return new SpringApplicationBuilder(WebClientApplication.class).run(args(all));
+	}
+
+	public static String serverUrl(ConfigurableApplicationContext server) {
+		return "http://localhost:" + ((WebServerApplicationContext) server).getWebServer().getPort();
+	}
+
+	/*
+	 * Client resilience filters are off unless enabled by properties, the strategies are measured alone
+	 */
+	public static ConfigurableApplicationContext client(ConfigurableApplicationContext upstream,
+			String... properties) {
+		return client(baseUrl(upstream), properties);
+	}
+
+	/*
+	 * Against any upstream, a StubUpstream for instance
+	 */
+	public static ConfigurableApplicationContext client(String baseUrl, String... properties) {
+		List<String> all = new ArrayList<>();
+		for (String name : List.of("greeting", "backend")) {
+			String prefix = "webclient.upstreams." + name + ".";
+			all.add(prefix + "base-url=" + baseUrl);
+			all.add(prefix + "cache.enabled=false");
+			all.add(prefix + "coalescing.enabled=false");
+			all.add(prefix + "hedging.enabled=false");
+			all.add(prefix + "retry.enabled=false");
+			all.add(prefix + "breaker.enabled=false");
+			all.add(prefix + "timeout.adaptive.enabled=false");
+		}
+		all.add("logging.level.root=WARN");
+		all.add("logging.level.it.blog.webclient.benchmark=INFO");
+		all.addAll(List.of(properties));
+		return new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE).run(args(all));
+	}
+
+	/*
+	 * As command line arguments, default properties would lose against application.properties.
+	 * A repeated argument would become a list: the last value of a property wins.
+	 */
+	private static String[] args(List<String> properties) {
+		Map<String, String> args = new LinkedHashMap<>();
+		for (String property : properties) {
+			args.put(property.substring(0, property.indexOf('=')), "--" + property);
+		}
+		return args.values().toArray(new String[0]);
+	}
+
+	public static String baseUrl(ConfigurableApplicationContext upstream) {
+		return "http://localhost:" + upstream.getBean(GreetingNettyServer.class).getPort();
+	}
+}
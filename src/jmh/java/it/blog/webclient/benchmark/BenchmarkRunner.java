@@ -0,0 +1,40 @@
+package it.blog.webclient.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the benchmarks matching include once for every thread count (concurrent callers),
+ * with the GC profiler for the allocation rate. One JSON file per thread count, to diff between releases.
+ *
+ * args: include regex, comma separated thread counts, output directory
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : ".*";
+		String threads = args.length > 1 ? args[1] : "1";
+		File output = new File(args.length > 2 ? args[2] : "target/jmh");
+		output.mkdirs();
+
+		for (String count : threads.split(",")) {
+			int concurrency = Integer.parseInt(count.trim());
+
+			Options options = new OptionsBuilder() //
+					.include(include) //
+					.threads(concurrency) //
+					.addProfiler(GCProfiler.class) //
+					.resultFormat(ResultFormatType.JSON) //
+					.result(new File(output, "jmh-threads-" + concurrency + ".json").getPath()) //
+					.build();
+
+			new Runner(options).run();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package it.blog.webclient.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * /message (async, no latency), /ko404 and a 304 for /message on Tomcat, with the responses of the
+ * @CachedResponse handlers written from their bytes or serialized on every call. Throughput is requests per
+ * millisecond, gc.alloc.rate.norm of the GC profiler the allocation per request, client included: the
+ * difference between the two settings is the server side.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CachedResponseBenchmark {
+
+	@Param({ "false", "true" })
+	boolean cachedResponses;
+
+	ConfigurableApplicationContext server;
+	HttpClient client;
+	HttpRequest message;
+	HttpRequest notFound;
+	HttpRequest notModified;
+
+	@Setup(Level.Trial)
+	public void start() throws IOException, InterruptedException {
+		server = BenchmarkContexts.server("greeting.server.mode=delayed", "greeting.server.latency=0ms",
+				"greeting.server.cached-responses=" + cachedResponses);
+		String url = BenchmarkContexts.serverUrl(server);
+
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		message = HttpRequest.newBuilder(URI.create(url + "/message")).build();
+		notFound = HttpRequest.newBuilder(URI.create(url + "/ko404")).build();
+
+		String eTag = client.send(message, HttpResponse.BodyHandlers.discarding()).headers().firstValue("ETag")
+				.orElseThrow();
+		notModified = HttpRequest.newBuilder(URI.create(url + "/message")).header("If-None-Match", eTag).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		server.close();
+	}
+
+	@Benchmark
+	public int message() throws IOException, InterruptedException {
+		return client.send(message, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+	}
+
+	@Benchmark
+	public int notFound() throws IOException, InterruptedException {
+		return client.send(notFound, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+	}
+
+	@Benchmark
+	public int notModified() throws IOException, InterruptedException {
+		return client.send(notModified, HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+}
@@ -0,0 +1,72 @@
+package it.blog.webclient.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.component.GreetingCodec;
+
+/*
+ * Greeting to and from bytes: GreetingCodec against Jackson databinding with reader and writer resolved once.
+ * With the GC profiler, gc.alloc.rate.norm is the allocation per greeting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GreetingCodecBenchmark {
+
+	GreetingCodec codec;
+	ObjectReader reader;
+	ObjectWriter writer;
+
+	Greeting greeting = new Greeting("Hello World - Reactive!", "Milan");
+	byte[] json;
+
+	@Setup(Level.Trial)
+	public void start() throws IOException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		codec = new GreetingCodec(objectMapper);
+		reader = objectMapper.readerFor(Greeting.class);
+		writer = objectMapper.writerFor(Greeting.class);
+		json = writer.writeValueAsBytes(greeting);
+	}
+
+	@Benchmark
+	public byte[] encodeDatabind() throws IOException {
+		return writer.writeValueAsBytes(greeting);
+	}
+
+	@Benchmark
+	public byte[] encodeCodec() throws IOException {
+		return codec.toBytes(greeting);
+	}
+
+	@Benchmark
+	public Greeting decodeDatabind() throws IOException {
+		return reader.readValue(json);
+	}
+
+	@Benchmark
+	public Greeting decodeCodec() throws IOException {
+		return codec.fromBytes(json);
+	}
+}
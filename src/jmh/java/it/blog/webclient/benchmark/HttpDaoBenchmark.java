@@ -0,0 +1,87 @@
+package it.blog.webclient.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.HttpDao;
+import it.blog.webclient.component.AggregateResult;
+
+/*
+ * Every HttpDao strategy fetching /message and /from. The JMH thread count is the number of concurrent
+ * callers, SampleTime gives the latency percentiles.
+ * reactive is the serial chain of the two calls, parallel and aggregated run them concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class HttpDaoBenchmark {
+
+	@Param({ "0", "20" })
+	long upstreamDelayMillis;
+
+	ConfigurableApplicationContext upstream;
+	ConfigurableApplicationContext client;
+	HttpDao dao;
+
+	@Setup(Level.Trial)
+	public void start() {
+		upstream = BenchmarkContexts.upstream(upstreamDelayMillis);
+		client = BenchmarkContexts.client(upstream);
+		dao = client.getBean(HttpDao.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		client.close();
+		upstream.close();
+	}
+
+	@Benchmark
+	public Greeting restTemplate() throws Exception {
+		return dao.getGreetingNoReactiveMessage(null);
+	}
+
+	@Benchmark
+	public Greeting blockingWebClient() throws Exception {
+		return dao.getGreetingReactiveBlockMessage(null, (age, warnings) -> {
+		});
+	}
+
+	@Benchmark
+	public Greeting reactive() {
+		return dao.getGreetingReactiveMessage().block();
+	}
+
+	@Benchmark
+	public Greeting exchange() {
+		return dao.getGreetingMessageReactiveExchange().block();
+	}
+
+	@Benchmark
+	public Greeting parallel() {
+		return dao.getGreetingMessageReactiveParallel().block();
+	}
+
+	@Benchmark
+	public AggregateResult<Greeting> aggregated() {
+		return dao.getGreetingAggregated().block();
+	}
+}
@@ -0,0 +1,73 @@
+package it.blog.webclient.benchmark;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import it.blog.webclient.component.HttpMetricsFilter;
+import it.blog.webclient.component.UpstreamMetrics;
+import it.blog.webclient.component.UpstreamProperties;
+import reactor.core.publisher.Mono;
+
+/*
+ * Cost of HttpMetricsFilter per request, without network: record alone must show
+ * gc.alloc.rate.norm = 0, filtered minus unfiltered is the overhead of the filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpMetricsBenchmark {
+
+	UpstreamMetrics metrics;
+	ClientRequest request;
+	ExchangeFunction exchange;
+	ExchangeFunction filtered;
+
+	@Setup(Level.Trial)
+	public void start() {
+		HttpMetricsFilter filter = new HttpMetricsFilter();
+		ExchangeFilterFunction function = filter.forUpstream("benchmark", new UpstreamProperties.Upstream());
+
+		metrics = filter.metrics("benchmark");
+		request = ClientRequest.create(HttpMethod.GET, URI.create("http://localhost/message")).build();
+
+		Mono<ClientResponse> response = Mono.just(ClientResponse.create(HttpStatus.OK).build());
+		exchange = clientRequest -> response;
+		filtered = function.apply(exchange);
+	}
+
+	@Benchmark
+	public void record() {
+		metrics.record(HttpMethod.GET, 200, null, 1_500_000);
+	}
+
+	@Benchmark
+	public ClientResponse unfiltered() {
+		return exchange.exchange(request).block();
+	}
+
+	@Benchmark
+	public ClientResponse filtered() {
+		return filtered.exchange(request).block();
+	}
+}
@@ -0,0 +1,74 @@
+package it.blog.webclient.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.HttpDao;
+import it.blog.webclient.component.WebClientRegistry;
+
+/*
+ * /message of the upstream copied to a response body: passthrough forwards the bytes, decoded reads a
+ * Greeting and writes it again as the controllers do. With the GC profiler, gc.alloc.rate.norm is the
+ * allocation per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class PassthroughBenchmark {
+
+	ConfigurableApplicationContext upstream;
+	ConfigurableApplicationContext client;
+	HttpDao dao;
+	WebClient webClient;
+	ObjectMapper objectMapper;
+
+	final OutputStream response = OutputStream.nullOutputStream();
+
+	@Setup(Level.Trial)
+	public void start() {
+		upstream = BenchmarkContexts.upstream(0);
+		client = BenchmarkContexts.client(upstream);
+		dao = client.getBean(HttpDao.class);
+		webClient = client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+		objectMapper = client.getBean(ObjectMapper.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		client.close();
+		upstream.close();
+	}
+
+	@Benchmark
+	public void passthrough() throws IOException {
+		dao.getPassthrough("/message").block().getBody().writeTo(response);
+	}
+
+	@Benchmark
+	public void decoded() throws IOException {
+		Greeting greeting = webClient.get().uri("/message").retrieve().bodyToMono(Greeting.class).block();
+		objectMapper.writeValue(response, greeting);
+	}
+}
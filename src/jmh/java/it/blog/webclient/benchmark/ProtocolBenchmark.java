@@ -0,0 +1,86 @@
+package it.blog.webclient.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.GreetingNettyServer;
+import it.blog.webclient.HttpDao;
+import it.blog.webclient.component.WebClientRegistry;
+import reactor.core.publisher.Flux;
+
+/*
+ * The same calls over HTTP/1.1 and h2c (prior knowledge) to the Netty upstream. The JMH thread count is the
+ * number of concurrent callers, SampleTime gives the latency percentiles. fanOut has FAN_OUT GETs in flight
+ * for every caller: on HTTP/1.1 each one needs its own connection, on h2c they are streams of the
+ * h2-max-connections connections. The connections accepted by the upstream are logged at the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ProtocolBenchmark {
+
+	private static Logger log = LoggerFactory.getLogger(ProtocolBenchmark.class);
+
+	static final int FAN_OUT = 16;
+
+	@Param({ "HTTP11", "H2C" })
+	String protocol;
+
+	@Param({ "0", "20" })
+	long upstreamDelayMillis;
+
+	ConfigurableApplicationContext upstream;
+	ConfigurableApplicationContext client;
+	HttpDao dao;
+	WebClient webClient;
+
+	@Setup(Level.Trial)
+	public void start() {
+		upstream = BenchmarkContexts.upstream(upstreamDelayMillis, "greeting.server.netty.protocols=HTTP11,H2C");
+		client = BenchmarkContexts.client(upstream, "webclient.upstreams.greeting.http.protocols=" + protocol,
+				"webclient.upstreams.greeting.limiter.enabled=false");
+		dao = client.getBean(HttpDao.class);
+		webClient = client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		log.info("{} upstream connections opened: {}", protocol,
+				upstream.getBean(GreetingNettyServer.class).getConnections());
+		client.close();
+		upstream.close();
+	}
+
+	@Benchmark
+	public Greeting parallel() {
+		return dao.getGreetingMessageReactiveParallel().block();
+	}
+
+	@Benchmark
+	public Greeting fanOut() {
+		return Flux.range(0, FAN_OUT)
+				.flatMap(i -> webClient.get().uri("/message").retrieve().bodyToMono(Greeting.class), FAN_OUT)
+				.blockLast();
+	}
+}
@@ -0,0 +1,72 @@
+package it.blog.webclient.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.HttpDao;
+import it.blog.webclient.WebClient.StubUpstream;
+import it.blog.webclient.WebClient.StubUpstream.Latency;
+import it.blog.webclient.WebClient.StubUpstream.Route;
+import reactor.core.publisher.Mono;
+
+/*
+ * HttpDao.getGreetingReactiveMessage against a StubUpstream with a production-like tail: log-normal latency
+ * around 10ms, 1% of 300ms spikes, 2% of 503 and 0.1% of resets, the same sequence on every run.
+ * Failed calls return null, SampleTime shows how much of the tail retries and hedges take back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class TailLatencyBenchmark {
+
+	@Param({ "none", "retry", "hedging" })
+	String resilience;
+
+	StubUpstream upstream;
+	ConfigurableApplicationContext client;
+	HttpDao dao;
+
+	@Setup(Level.Trial)
+	public void start() {
+		Latency latency = Latency.logNormal(Duration.ofMillis(10), 0.5).withSpikes(0.01, Duration.ofMillis(300));
+		upstream = StubUpstream.builder().seed(42) //
+				.route("/message", new Route().latency(latency).error(503, 0.02).reset(0.001)) //
+				.route("/from", new Route().latency(latency).body(new Greeting(null, "Milan"))) //
+				.start();
+
+		client = BenchmarkContexts.client(upstream.getBaseUrl(),
+				"webclient.upstreams.greeting.retry.enabled=" + resilience.equals("retry"),
+				"webclient.upstreams.greeting.hedging.enabled=" + resilience.equals("hedging"));
+		dao = client.getBean(HttpDao.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		client.close();
+		upstream.close();
+	}
+
+	@Benchmark
+	public Greeting reactive() {
+		return dao.getGreetingReactiveMessage().onErrorResume(error -> Mono.empty()).block();
+	}
+}
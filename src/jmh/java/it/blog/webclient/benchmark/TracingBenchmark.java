@@ -0,0 +1,66 @@
+package it.blog.webclient.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.component.WebClientRegistry;
+
+/*
+ * Latency of an upstream GET, the callbacks of the response run on the Netty event loop:
+ * sampled async tracing (sampleRate 0 = off) against the .log() operator used before, both logging at INFO
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class TracingBenchmark {
+
+	@Param({ "0", "0.01", "1" })
+	double sampleRate;
+
+	ConfigurableApplicationContext upstream;
+	ConfigurableApplicationContext client;
+	WebClient webClient;
+
+	@Setup(Level.Trial)
+	public void start() {
+		upstream = BenchmarkContexts.upstream(0);
+		client = BenchmarkContexts.client(upstream, "webclient.tracing.sample-rate=" + sampleRate,
+				"logging.level.it.blog.webclient.trace=INFO", "logging.level.reactor.core.publisher=INFO");
+		webClient = client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		client.close();
+		upstream.close();
+	}
+
+	@Benchmark
+	public Greeting traced() {
+		return webClient.get().uri("/message").retrieve().bodyToMono(Greeting.class).block();
+	}
+
+	@Benchmark
+	public Greeting logOperator() {
+		return webClient.get().uri("/message").retrieve().bodyToMono(Greeting.class).log().block();
+	}
+}
@@ -0,0 +1,82 @@
+package it.blog.webclient.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import it.blog.webclient.Greeting;
+import it.blog.webclient.GreetingNettyServer;
+import it.blog.webclient.component.WebClientRegistry;
+import reactor.netty.http.client.HttpClient;
+
+/*
+ * A WebClient built for every call, as HttpDao and WebClientGreeting once did, against the pooled
+ * client of WebClientRegistry. gc.alloc.rate.norm is the allocation per request, the upstream
+ * connections opened are logged at the end of every trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class WebClientCreationBenchmark {
+
+	private static Logger log = LoggerFactory.getLogger(WebClientCreationBenchmark.class);
+
+	ConfigurableApplicationContext upstream;
+	ConfigurableApplicationContext client;
+	WebClient registryClient;
+	String url;
+
+	@Setup(Level.Trial)
+	public void start() {
+		upstream = BenchmarkContexts.upstream(0);
+		client = BenchmarkContexts.client(upstream);
+		registryClient = client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+		url = BenchmarkContexts.baseUrl(upstream) + "/message";
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		log.info("Upstream connections opened: {}", upstream.getBean(GreetingNettyServer.class).getConnections());
+		client.close();
+		upstream.close();
+	}
+
+	@Benchmark
+	public Greeting createPerCall() {
+		return WebClient.create().get().uri(url).retrieve().bodyToMono(Greeting.class).block();
+	}
+
+	@Benchmark
+	public Greeting createWithTimeoutPerCall() {
+		HttpClient httpClient = HttpClient.create().option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 50000)
+				.responseTimeout(Duration.ofMillis(50000));
+		return WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient)).build().get().uri(url)
+				.retrieve().bodyToMono(Greeting.class).block();
+	}
+
+	@Benchmark
+	public Greeting registry() {
+		return registryClient.get().uri("/message").retrieve().bodyToMono(Greeting.class).block();
+	}
+}
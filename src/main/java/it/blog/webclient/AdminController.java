@@ -0,0 +1,61 @@
+package it.blog.webclient;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import it.blog.webclient.component.ConnectionPools;
+import it.blog.webclient.component.LoadBalancerFilter;
+
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+	@Autowired
+	LoadBalancerFilter loadBalancer;
+
+	@Autowired
+	ConnectionPools pools;
+
+	/*
+	 * Replicas of an upstream replaced at runtime, a JSON array of URLs: the calls in flight end on the old
+	 * ones, the next calls are balanced over the new ones
+	 */
+	@PutMapping(value = "/upstreams/{name}/endpoints", consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> endpoints(@PathVariable("name") String name, @RequestBody List<String> endpoints) {
+		try {
+			if (!loadBalancer.update(name, endpoints)) {
+				return ResponseEntity.notFound().build();
+			}
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+		}
+		return ResponseEntity.ok(loadBalancer.snapshot().get(name));
+	}
+
+	/*
+	 * Connection limits of an upstream changed at runtime, {"maxConnections":..,"pendingAcquireMaxCount":..}:
+	 * the next calls use a new pool, the old one is drained
+	 */
+	@PutMapping(value = "/upstreams/{name}/pool", consumes = MediaType.APPLICATION_JSON_VALUE,
+			produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> pool(@PathVariable("name") String name, @RequestBody ConnectionPools.Limits limits) {
+		try {
+			if (!pools.resize(name, limits)) {
+				return ResponseEntity.notFound().build();
+			}
+		} catch (IllegalArgumentException e) {
+			return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+		}
+		return ResponseEntity.ok(pools.snapshot().get(name));
+	}
+}
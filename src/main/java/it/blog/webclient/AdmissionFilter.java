@@ -0,0 +1,245 @@
+package it.blog.webclient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import it.blog.webclient.component.GreetingCodec;
+import it.blog.webclient.component.LatencyHistogram;
+
+/*
+ * Admission of the inbound requests by priority class, see AdmissionProperties. Every class has its own
+ * concurrency, so a burst on the slow blocking endpoints can't take all the Tomcat threads from the cheap ones.
+ * A request over the concurrency of its class waits for a slot at most max-queue-time, then it is refused with
+ * 503 and Retry-After instead of timing out. The wait is measured here: the Tomcat accept queue before it is
+ * not observable.
+ * An async request (reactive, streaming) holds its slot until the async processing completes.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class AdmissionFilter extends OncePerRequestFilter {
+
+	@Autowired
+	AdmissionProperties properties;
+
+	@Autowired
+	GreetingCodec codec;
+
+	private final AntPathMatcher matcher = new AntPathMatcher();
+	private final UrlPathHelper pathHelper = new UrlPathHelper();
+	private final Map<String, Gate> gates = new LinkedHashMap<>();
+
+	@PostConstruct
+	public void init() {
+		properties.getClasses().forEach((name, config) -> gates.put(name, new Gate(name, config)));
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !properties.isEnabled();
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+
+		Gate gate = classify(pathHelper.getPathWithinApplication(request));
+		if (gate == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+		if (!gate.enter()) {
+			refuse(gate, response);
+			return;
+		}
+
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			/*
+			 * Tomcat runs the listeners only after this thread leaves the filter, even when the async
+			 * processing is already complete
+			 */
+			if (request.isAsyncStarted()) {
+				request.getAsyncContext().addListener(new Exit(gate));
+			} else {
+				gate.exit();
+			}
+		}
+	}
+
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+		gates.forEach((name, gate) -> snapshot.put(name, gate.snapshot()));
+		return snapshot;
+	}
+
+	/*
+	 * The class of the most specific matching pattern, as Spring MVC picks a mapping: /** doesn't swallow
+	 * /clientNoReactive whatever the order of the classes. Equally specific patterns go by that order.
+	 */
+	private Gate classify(String path) {
+		Comparator<String> specificity = matcher.getPatternComparator(path);
+		Gate match = null;
+		String matchPattern = null;
+		for (Gate gate : gates.values()) {
+			for (String pattern : gate.config.getPaths()) {
+				if (matcher.match(pattern, path)
+						&& (matchPattern == null || specificity.compare(pattern, matchPattern) < 0)) {
+					match = gate;
+					matchPattern = pattern;
+				}
+			}
+		}
+		return match;
+	}
+
+	private void refuse(Gate gate, HttpServletResponse response) throws IOException {
+		response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+		response.setHeader(HttpHeaders.RETRY_AFTER,
+				String.valueOf(Math.max(1, gate.config.getRetryAfter().toSeconds())));
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		codec.write(new Greeting("Admission refused: too many " + gate.name + " requests"),
+				response.getOutputStream());
+	}
+
+	private static class Gate {
+
+		private final String name;
+		private final AdmissionProperties.PriorityClass config;
+
+		/*
+		 * Fair: the longest waiting request gets the next slot
+		 */
+		private final Semaphore slots;
+		private final AtomicInteger waiting = new AtomicInteger();
+
+		private final LongAdder accepted = new LongAdder();
+		private final LongAdder queueFull = new LongAdder();
+		private final LongAdder queueTimeouts = new LongAdder();
+		private final LatencyHistogram queueTime = new LatencyHistogram();
+
+		Gate(String name, AdmissionProperties.PriorityClass config) {
+			this.name = name;
+			this.config = config;
+			this.slots = new Semaphore(config.getMaxConcurrent(), true);
+		}
+
+		boolean enter() {
+			long start = System.nanoTime();
+			try {
+				/*
+				 * tryAcquire() would overtake the waiting requests, a zero timeout doesn't
+				 */
+				if (slots.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+					admitted(start);
+					return true;
+				}
+				Duration maxQueueTime = config.getMaxQueueTime();
+				if (maxQueueTime.isZero() || waiting.incrementAndGet() > config.getMaxQueue()) {
+					waiting.decrementAndGet();
+					queueFull.increment();
+					return false;
+				}
+				try {
+					if (slots.tryAcquire(maxQueueTime.toNanos(), TimeUnit.NANOSECONDS)) {
+						admitted(start);
+						return true;
+					}
+				} finally {
+					waiting.decrementAndGet();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			queueTimeouts.increment();
+			return false;
+		}
+
+		void exit() {
+			slots.release();
+		}
+
+		private void admitted(long start) {
+			queueTime.record(System.nanoTime() - start);
+			accepted.increment();
+		}
+
+		Map<String, Object> snapshot() {
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("maxConcurrent", config.getMaxConcurrent());
+			snapshot.put("inFlight", config.getMaxConcurrent() - slots.availablePermits());
+			snapshot.put("waiting", waiting.get());
+			snapshot.put("accepted", accepted.sum());
+			snapshot.put("rejected", queueFull.sum() + queueTimeouts.sum());
+			snapshot.put("queueFull", queueFull.sum());
+			snapshot.put("queueTimeouts", queueTimeouts.sum());
+			Map<String, Object> wait = new LinkedHashMap<>();
+			wait.put("meanMillis", queueTime.mean().toNanos() / 1e6);
+			wait.put("p50Millis", queueTime.percentile(50).toNanos() / 1e6);
+			wait.put("p99Millis", queueTime.percentile(99).toNanos() / 1e6);
+			wait.put("maxMillis", queueTime.percentile(100).toNanos() / 1e6);
+			snapshot.put("queueTime", wait);
+			return snapshot;
+		}
+	}
+
+	/*
+	 * A new startAsync on the same request drops the listeners, so the listener adds itself back
+	 */
+	private static class Exit implements AsyncListener {
+
+		private final Gate gate;
+		private final AtomicBoolean done = new AtomicBoolean();
+
+		Exit(Gate gate) {
+			this.gate = gate;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			if (done.compareAndSet(false, true)) {
+				gate.exit();
+			}
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			event.getAsyncContext().addListener(this);
+		}
+	}
+}
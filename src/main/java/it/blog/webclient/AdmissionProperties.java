@@ -0,0 +1,60 @@
+package it.blog.webclient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/*
+ * Priority classes of the inbound requests, bound from the "greeting.admission.classes.<name>.*" properties,
+ * see AdmissionFilter
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "greeting.admission")
+public class AdmissionProperties {
+
+	private boolean enabled = false;
+
+	/*
+	 * A request belongs to the class with the most specific matching path, requests of no class are always
+	 * admitted
+	 */
+	private Map<String, PriorityClass> classes = new LinkedHashMap<>();
+
+	@Data
+	public static class PriorityClass {
+
+		/*
+		 * Ant patterns of the request path
+		 */
+		private List<String> paths = new ArrayList<>();
+
+		/*
+		 * Requests of the class in progress, with the Tomcat threads shared by all the classes it must stay
+		 * below server.tomcat.max-threads for the other classes to go on
+		 */
+		private int maxConcurrent = 10;
+
+		/*
+		 * Requests waiting for a slot, each one holds a Tomcat thread: beyond these the request fails at once
+		 */
+		private int maxQueue = 10;
+
+		/*
+		 * Wait for a slot before the request fails with 503, zero fails at once
+		 */
+		private Duration maxQueueTime = Duration.ofMillis(100);
+
+		/*
+		 * Sent as Retry-After with the 503
+		 */
+		private Duration retryAfter = Duration.ofSeconds(1);
+	}
+}
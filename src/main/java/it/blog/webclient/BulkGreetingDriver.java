@@ -0,0 +1,412 @@
+package it.blog.webclient;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import it.blog.webclient.component.ErrorType;
+import it.blog.webclient.component.GreetingCodec;
+import it.blog.webclient.component.LatencyHistogram;
+import it.blog.webclient.component.WebClientException;
+import it.blog.webclient.component.WebClientRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * Replays the greetings of greeting.bulk.input against /greeting/{from} of the backend upstream, see
+ * BulkProperties. The input is read in chunks as the POSTs complete, the outcomes are written in input order
+ * as they come: the heap holds the concurrency records in flight, whatever the size of the file.
+ * Every checkpoint-every records the output is flushed and the offsets of input and output are saved, a run
+ * started again goes on from there. Closing the application stops the replay before the web server: the
+ * records in flight are not written, instead of being written as failed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "greeting.bulk.enabled", havingValue = "true")
+public class BulkGreetingDriver implements ApplicationRunner {
+
+	@Autowired
+	BulkProperties properties;
+
+	@Autowired
+	WebClientRegistry webClients;
+
+	@Autowired
+	GreetingCodec codec;
+
+	private final Sinks.One<Boolean> stop = Sinks.one();
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	@Override
+	public void run(ApplicationArguments args) throws IOException {
+		log.info("Bulk replay of {}: {}", properties.getInput(), drive());
+	}
+
+	/*
+	 * Context close begins with this event, the web server and the WebClients are still up
+	 */
+	@EventListener(ContextClosedEvent.class)
+	public void stop() throws InterruptedException {
+		stop.tryEmitValue(Boolean.TRUE);
+		stopped.await(5, TimeUnit.SECONDS);
+	}
+
+	public Map<String, Object> drive() throws IOException {
+		try {
+			return replay();
+		} finally {
+			stopped.countDown();
+		}
+	}
+
+	private Map<String, Object> replay() throws IOException {
+		Path checkpointFile = properties.getCheckpoint() != null ? properties.getCheckpoint()
+				: properties.getOutput().resolveSibling(properties.getOutput().getFileName() + ".checkpoint");
+		long[] checkpoint = properties.isResume() && Files.exists(checkpointFile) ? readCheckpoint(checkpointFile)
+				: new long[] { 0, 0 };
+		if (checkpoint[0] > 0) {
+			log.info("Bulk replay resumed at offset {} of {}", checkpoint[0], properties.getInput());
+		}
+
+		Stats stats = new Stats();
+		long start = System.nanoTime();
+
+		try (FileChannel output = FileChannel.open(properties.getOutput(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+				Outcomes outcomes = new Outcomes(output.truncate(checkpoint[1]).position(checkpoint[1]),
+						checkpointFile)) {
+
+			Flux<Record> records = Flux.using(() -> new Records(properties.getInput(), checkpoint[0],
+					(int) properties.getChunkSize().toBytes()), Records::flux, Records::close)
+					/*
+					 * The reads happen on the requests of flatMapSequential, off the event loop
+					 */
+					.subscribeOn(Schedulers.boundedElastic());
+			if (properties.getRate() > 0) {
+				records = records.delayUntil(pacer(1_000_000_000L / properties.getRate()));
+			}
+
+			records.takeUntilOther(stop.asMono()) //
+					.flatMapSequential(record -> post(record, stats), properties.getConcurrency()) //
+					.takeUntilOther(stop.asMono()) //
+					.publishOn(Schedulers.boundedElastic()) //
+					.doOnNext(outcomes::write) //
+					.then() //
+					.block();
+		}
+
+		return stats.snapshot(Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	/*
+	 * Every record waits for its slot, one period after the previous one: the rate holds whatever the
+	 * time spent reading, and a pause of the POSTs is not made up with a burst afterwards
+	 */
+	private static Function<Record, Mono<Long>> pacer(long periodNanos) {
+		long[] slot = { 0 };
+		return record -> {
+			long now = System.nanoTime();
+			slot[0] = Math.max(slot[0] + periodNanos, now);
+			return slot[0] > now ? Mono.delay(Duration.ofNanos(slot[0] - now)) : Mono.empty();
+		};
+	}
+
+	private Mono<Outcome> post(Record record, Stats stats) {
+		return Mono.defer(() -> {
+			long start = System.nanoTime();
+			return webClients.get(WebClientRegistry.BACKEND).post().uri("/greeting/{from}", properties.getFrom())
+					.contentType(MediaType.APPLICATION_JSON).bodyValue(record.body).retrieve()
+					.bodyToMono(Greeting.class) //
+					.map(greeting -> new Outcome(record, greeting, null)) //
+					/*
+					 * A 2xx without body has its line too, the output stays aligned with the input
+					 */
+					.switchIfEmpty(Mono.fromSupplier(() -> new Outcome(record, null, null))) //
+					.onErrorResume(error -> Mono.just(new Outcome(record, null, errorType(error)))) //
+					.doOnNext(outcome -> stats.record(outcome, System.nanoTime() - start));
+		});
+	}
+
+	private static ErrorType errorType(Throwable error) {
+		if (error instanceof WebClientResponseException) {
+			ErrorType type = ErrorType.of(((WebClientResponseException) error).getRawStatusCode());
+			return type == null ? ErrorType.HTTPSTATUS5XX : type;
+		}
+		if (error instanceof WebClientException) {
+			return ((WebClientException) error).getType();
+		}
+		if (error.getCause() instanceof WebClientException) {
+			return ((WebClientException) error.getCause()).getType();
+		}
+		return ErrorType.NETWORK;
+	}
+
+	private static long[] readCheckpoint(Path file) throws IOException {
+		String[] offsets = Files.readString(file).trim().split("\\s+");
+		return new long[] { Long.parseLong(offsets[0]), Long.parseLong(offsets[1]) };
+	}
+
+	/*
+	 * A line of the input, next is the offset of the following one
+	 */
+	private static class Record {
+
+		final long next;
+		final byte[] body;
+
+		Record(long next, byte[] body) {
+			this.next = next;
+			this.body = body;
+		}
+	}
+
+	private static class Outcome {
+
+		final Record record;
+		final Greeting greeting;
+		final ErrorType error;
+
+		Outcome(Record record, Greeting greeting, ErrorType error) {
+			this.record = record;
+			this.greeting = greeting;
+			this.error = error;
+		}
+	}
+
+	/*
+	 * Lines of the input from an offset, read chunk by chunk with the same buffer
+	 */
+	private static class Records implements Closeable {
+
+		private final FileChannel channel;
+		private final ByteBuffer chunk;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+		private long offset;
+
+		Records(Path input, long offset, int chunkSize) throws IOException {
+			this.channel = FileChannel.open(input, StandardOpenOption.READ).position(offset);
+			this.chunk = ByteBuffer.allocate(chunkSize).flip();
+			this.offset = offset;
+		}
+
+		Flux<Record> flux() {
+			return Flux.generate(sink -> {
+				try {
+					Record record = next();
+					if (record == null) {
+						sink.complete();
+					} else {
+						sink.next(record);
+					}
+				} catch (IOException e) {
+					sink.error(e);
+				}
+			});
+		}
+
+		/*
+		 * null at the end of the input, a last line without newline included
+		 */
+		private Record next() throws IOException {
+			while (true) {
+				if (!chunk.hasRemaining()) {
+					chunk.clear();
+					int read = channel.read(chunk);
+					chunk.flip();
+					if (read < 0) {
+						byte[] last = take();
+						return isBlank(last) ? null : new Record(offset, last);
+					}
+				}
+
+				int from = chunk.position();
+				int end = from;
+				while (end < chunk.limit() && chunk.get(end) != '\n') {
+					end++;
+				}
+				line.write(chunk.array(), chunk.arrayOffset() + from, end - from);
+				boolean complete = end < chunk.limit();
+				chunk.position(complete ? end + 1 : end);
+				offset += chunk.position() - from;
+
+				if (complete) {
+					byte[] body = take();
+					if (!isBlank(body)) {
+						return new Record(offset, body);
+					}
+				}
+			}
+		}
+
+		private byte[] take() {
+			byte[] body = line.toByteArray();
+			line.reset();
+			return body;
+		}
+
+		private static boolean isBlank(byte[] body) {
+			for (byte b : body) {
+				if (b != ' ' && b != '\t' && b != '\r') {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.warn("Bulk input not closed: {}", e.toString());
+			}
+		}
+	}
+
+	/*
+	 * NDJSON output: {"greeting":{...}}, {"greeting":null} for an empty body or {"error":"HTTPSTATUS4XX"},
+	 * one line per record
+	 */
+	private class Outcomes implements Closeable {
+
+		private final FileChannel channel;
+		private final Path checkpointFile;
+		private final OutputStream out;
+		private final JsonGenerator generator;
+		private long written;
+		private long next;
+
+		Outcomes(FileChannel channel, Path checkpointFile) throws IOException {
+			this.channel = channel;
+			this.checkpointFile = checkpointFile;
+			this.out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+			this.generator = codec.generator(out);
+			generator.setRootValueSeparator(null);
+		}
+
+		void write(Outcome outcome) {
+			try {
+				generator.writeStartObject();
+				if (outcome.error != null) {
+					generator.writeStringField("error", outcome.error.name());
+				} else if (outcome.greeting != null) {
+					generator.writeFieldName("greeting");
+					codec.write(outcome.greeting, generator);
+				} else {
+					generator.writeNullField("greeting");
+				}
+				generator.writeEndObject();
+				generator.writeRaw('\n');
+
+				next = outcome.record.next;
+				if (++written % properties.getCheckpointEvery() == 0) {
+					checkpoint();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/*
+		 * The output is on disk up to the offset saved with the input one: a run resumed from here truncates
+		 * the outcomes written after it, no record is lost or written twice. Both are forced to the disk before
+		 * the rename: after a crash the checkpoint never points past the outcomes actually stored
+		 */
+		private void checkpoint() throws IOException {
+			generator.flush();
+			channel.force(false);
+			Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+			try (FileChannel offsets = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				offsets.write(StandardCharsets.US_ASCII.encode(next + " " + channel.position()));
+				offsets.force(false);
+			}
+			Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (written > 0) {
+				checkpoint();
+			}
+			generator.close();
+			out.close();
+		}
+	}
+
+	private static class Stats {
+
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LongAdder succeeded = new LongAdder();
+		private final Map<ErrorType, LongAdder> failed = new EnumMap<>(ErrorType.class);
+
+		Stats() {
+			for (ErrorType type : ErrorType.values()) {
+				failed.put(type, new LongAdder());
+			}
+		}
+
+		void record(Outcome outcome, long nanos) {
+			latency.record(nanos);
+			if (outcome.error == null) {
+				succeeded.increment();
+			} else {
+				failed.get(outcome.error).increment();
+			}
+		}
+
+		Map<String, Object> snapshot(Duration elapsed) {
+			Map<String, Object> errors = new LinkedHashMap<>();
+			failed.forEach((type, count) -> {
+				if (count.sum() > 0) {
+					errors.put(type.name(), count.sum());
+				}
+			});
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("records", latency.count());
+			snapshot.put("succeeded", succeeded.sum());
+			snapshot.put("failed", errors);
+			snapshot.put("seconds", elapsed.toMillis() / 1000.0);
+			snapshot.put("recordsPerSecond", latency.count() * 1e9 / Math.max(1, elapsed.toNanos()));
+			snapshot.put("meanMillis", latency.mean().toNanos() / 1e6);
+			snapshot.put("p50Millis", latency.percentile(50).toNanos() / 1e6);
+			snapshot.put("p90Millis", latency.percentile(90).toNanos() / 1e6);
+			snapshot.put("p99Millis", latency.percentile(99).toNanos() / 1e6);
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package it.blog.webclient;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+
+/*
+ * Bulk replay of an NDJSON file of greetings, bound from the "greeting.bulk.*" properties, see BulkGreetingDriver
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "greeting.bulk")
+public class BulkProperties {
+
+	private boolean enabled = false;
+
+	/*
+	 * One greeting per line, empty lines are skipped
+	 */
+	private Path input;
+
+	/*
+	 * One outcome per line, in the order of the input: the greeting answered or the ErrorType
+	 */
+	private Path output;
+
+	/*
+	 * Offsets of the input and the output up to the last checkpoint, default output + ".checkpoint"
+	 */
+	private Path checkpoint;
+
+	/*
+	 * Start from the checkpoint if there is one, otherwise from the beginning of the input with an empty output
+	 */
+	private boolean resume = true;
+
+	private int checkpointEvery = 1000;
+
+	private String from = "Milan";
+
+	/*
+	 * POSTs in flight
+	 */
+	private int concurrency = 16;
+
+	/*
+	 * Records per second, 0 without limit
+	 */
+	private int rate = 0;
+
+	/*
+	 * Size of each read of the input
+	 */
+	private DataSize chunkSize = DataSize.ofKilobytes(64);
+}
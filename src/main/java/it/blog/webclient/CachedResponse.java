@@ -0,0 +1,18 @@
+package it.blog.webclient;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+ * The handler always answers the same: its response is encoded once and its bytes written on every call,
+ * with a strong ETag and 304 for If-None-Match, see CachedResponseHandler.
+ * Return constants: a new body or status is encoded again, a new instance of the same body too.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CachedResponse {
+}
@@ -0,0 +1,203 @@
+package it.blog.webclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+/*
+ * Writes the ResponseEntity of the @CachedResponse handlers, returned as it is or through a Mono, from its
+ * encoded bytes. The first call encodes it with the message converters of Spring MVC, the next ones returning
+ * the same body and status write the bytes without serialization. A 2xx gets a strong ETag, the one of the
+ * ResponseEntity or the MD5 of the bytes, and a matching If-None-Match gets 304.
+ * The Content-Type is negotiated with the Accept of the request, one encoding for each media type.
+ * Installed ahead of the return value handlers of Spring MVC, greeting.server.cached-responses=false leaves
+ * the handlers to them. Only in a servlet application: the Netty upstream contexts have no Spring MVC.
+ */
+@Component
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class CachedResponseHandler implements HandlerMethodReturnValueHandler {
+
+	@Autowired
+	RequestMappingHandlerAdapter adapter;
+
+	@Autowired
+	GreetingServerProperties properties;
+
+	private final Map<Method, Map<MediaType, Encoded>> responses = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() {
+		List<HandlerMethodReturnValueHandler> handlers = new ArrayList<>();
+		handlers.add(this);
+		handlers.addAll(adapter.getReturnValueHandlers());
+		adapter.setReturnValueHandlers(handlers);
+	}
+
+	/*
+	 * A Mono is left to Spring MVC, its ResponseEntity comes back here once the async result is dispatched
+	 */
+	@Override
+	public boolean supportsReturnType(MethodParameter returnType) {
+		return properties.isCachedResponses() && returnType.hasMethodAnnotation(CachedResponse.class)
+				&& ResponseEntity.class.isAssignableFrom(returnType.getParameterType());
+	}
+
+	@Override
+	public void handleReturnValue(Object returnValue, MethodParameter returnType, ModelAndViewContainer mavContainer,
+			NativeWebRequest webRequest) throws Exception {
+
+		mavContainer.setRequestHandled(true);
+		if (returnValue == null) {
+			return;
+		}
+
+		ResponseEntity<?> entity = (ResponseEntity<?>) returnValue;
+		MediaType contentType = entity.hasBody() ? negotiate(entity, webRequest) : MediaType.ALL;
+		Map<MediaType, Encoded> encodings = responses.computeIfAbsent(returnType.getMethod(),
+				method -> new ConcurrentHashMap<>());
+		Encoded encoded = encodings.get(contentType);
+		if (encoded == null || encoded.body != entity.getBody() || encoded.status != entity.getStatusCodeValue()) {
+			encoded = encode(entity, contentType);
+			encodings.put(contentType, encoded);
+		}
+
+		if (encoded.eTag != null && webRequest.checkNotModified(encoded.eTag)) {
+			return;
+		}
+
+		HttpServletResponse response = webRequest.getNativeResponse(HttpServletResponse.class);
+		response.setStatus(encoded.status);
+		/*
+		 * checkNotModified has already set ETag and Last-Modified, set replaces them
+		 */
+		encoded.headers.forEach((name, values) -> {
+			response.setHeader(name, values.get(0));
+			values.subList(1, values.size()).forEach(value -> response.addHeader(name, value));
+		});
+		response.getOutputStream().write(encoded.bytes);
+	}
+
+	private Encoded encode(ResponseEntity<?> entity, MediaType contentType) throws IOException {
+		BufferedMessage message = new BufferedMessage();
+		message.headers.putAll(entity.getHeaders());
+
+		Object body = entity.getBody();
+		if (body != null) {
+			write(body, contentType, message);
+		}
+
+		byte[] bytes = message.body.toByteArray();
+		message.headers.setContentLength(bytes.length);
+
+		String eTag = null;
+		if (entity.getStatusCode().is2xxSuccessful()) {
+			eTag = entity.getHeaders().getETag() != null ? entity.getHeaders().getETag()
+					: "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"";
+			message.headers.setETag(eTag);
+		}
+		return new Encoded(body, entity.getStatusCodeValue(), bytes, message.headers, eTag);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void write(Object body, MediaType contentType, HttpOutputMessage message) throws IOException {
+		for (HttpMessageConverter<?> converter : adapter.getMessageConverters()) {
+			if (converter.canWrite(body.getClass(), contentType)) {
+				((HttpMessageConverter<Object>) converter).write(body, contentType, message);
+				return;
+			}
+		}
+		throw new HttpMessageNotWritableException("No converter for " + body.getClass() + " as " + contentType);
+	}
+
+	/*
+	 * The Content-Type of the ResponseEntity, otherwise the first media type of the produces of the mapping
+	 * accepted by the request, as Spring MVC would choose. None accepted is 406.
+	 */
+	@SuppressWarnings("unchecked")
+	private MediaType negotiate(ResponseEntity<?> entity, NativeWebRequest webRequest)
+			throws HttpMediaTypeNotAcceptableException {
+		Set<MediaType> producible = (Set<MediaType>) webRequest
+				.getAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+		List<MediaType> candidates = entity.getHeaders().getContentType() != null
+				? List.of(entity.getHeaders().getContentType())
+				: producible == null || producible.isEmpty() ? List.of(MediaType.APPLICATION_JSON)
+						: new ArrayList<>(producible);
+
+		String accept = webRequest.getHeader(HttpHeaders.ACCEPT);
+		if (accept == null || accept.equals(MediaType.ALL_VALUE)) {
+			return candidates.get(0);
+		}
+		List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+		MediaType.sortBySpecificityAndQuality(accepted);
+		for (MediaType type : accepted) {
+			for (MediaType candidate : candidates) {
+				if (type.isCompatibleWith(candidate)) {
+					return candidate;
+				}
+			}
+		}
+		throw new HttpMediaTypeNotAcceptableException(candidates);
+	}
+
+	private static class Encoded {
+
+		final Object body;
+		final int status;
+		final byte[] bytes;
+		final HttpHeaders headers;
+		final String eTag;
+
+		Encoded(Object body, int status, byte[] bytes, HttpHeaders headers, String eTag) {
+			this.body = body;
+			this.status = status;
+			this.bytes = bytes;
+			this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+			this.eTag = eTag;
+		}
+	}
+
+	private static class BufferedMessage implements HttpOutputMessage {
+
+		final HttpHeaders headers = new HttpHeaders();
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		@Override
+		public OutputStream getBody() {
+			return body;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package it.blog.webclient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/*
+ * Deadlines of the inbound requests, bound from the "greeting.deadline.*" properties, see DeadlineRequestFilter
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "greeting.deadline")
+public class DeadlineProperties {
+
+	private boolean enabled = false;
+
+	/*
+	 * Upper bound of the X-Request-Timeout sent by the callers
+	 */
+	private Duration max = Duration.ofSeconds(30);
+
+	/*
+	 * Deadline of the requests without X-Request-Timeout, from the endpoint with the most specific matching
+	 * path. Requests of no endpoint have no deadline
+	 */
+	private Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+
+	@Data
+	public static class Endpoint {
+
+		/*
+		 * Ant patterns of the request path
+		 */
+		private List<String> paths = new ArrayList<>();
+
+		private Duration timeout = Duration.ofSeconds(5);
+	}
+}
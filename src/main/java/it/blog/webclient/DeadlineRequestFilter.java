@@ -0,0 +1,128 @@
+package it.blog.webclient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Comparator;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import it.blog.webclient.component.Deadline;
+
+/*
+ * Deadline of the inbound request, from the milliseconds of X-Request-Timeout (at most max) or the timeout of
+ * its endpoint, see DeadlineProperties. Outermost: the time waiting for admission is part of it.
+ * The controllers bind their upstream calls to the request attribute with Deadline.bound. An async request
+ * ending with an error, the caller closing the connection included, abandons its Deadline.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class DeadlineRequestFilter extends OncePerRequestFilter {
+
+	public static final String ATTRIBUTE = "it.blog.webclient.DeadlineRequestFilter.deadline";
+
+	@Autowired
+	DeadlineProperties properties;
+
+	private final AntPathMatcher matcher = new AntPathMatcher();
+	private final UrlPathHelper pathHelper = new UrlPathHelper();
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !properties.isEnabled();
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+
+		Duration timeout = timeout(request);
+		if (timeout == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		Deadline deadline = Deadline.after(timeout);
+		request.setAttribute(ATTRIBUTE, deadline);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			if (request.isAsyncStarted()) {
+				request.getAsyncContext().addListener(new Abandon(deadline));
+			}
+		}
+	}
+
+	/*
+	 * A malformed header is ignored, like a missing one
+	 */
+	private Duration timeout(HttpServletRequest request) {
+		String header = request.getHeader(Deadline.HEADER);
+		if (header != null) {
+			try {
+				Duration timeout = Duration.ofMillis(Math.max(0, Long.parseLong(header.trim())));
+				return timeout.compareTo(properties.getMax()) < 0 ? timeout : properties.getMax();
+			} catch (NumberFormatException e) {
+				logger.debug("Ignored " + Deadline.HEADER + ": " + header);
+			}
+		}
+
+		/*
+		 * The most specific matching pattern, whatever the order of the endpoints, as AdmissionFilter does
+		 */
+		String path = pathHelper.getPathWithinApplication(request);
+		Comparator<String> specificity = matcher.getPatternComparator(path);
+		Duration timeout = null;
+		String timeoutPattern = null;
+		for (DeadlineProperties.Endpoint endpoint : properties.getEndpoints().values()) {
+			for (String pattern : endpoint.getPaths()) {
+				if (matcher.match(pattern, path)
+						&& (timeoutPattern == null || specificity.compare(pattern, timeoutPattern) < 0)) {
+					timeout = endpoint.getTimeout();
+					timeoutPattern = pattern;
+				}
+			}
+		}
+		return timeout;
+	}
+
+	private static class Abandon implements AsyncListener {
+
+		private final Deadline deadline;
+
+		Abandon(Deadline deadline) {
+			this.deadline = deadline;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			deadline.abandon();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			deadline.abandon();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			event.getAsyncContext().addListener(this);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package it.blog.webclient;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import it.blog.webclient.component.TraceRecord;
+import it.blog.webclient.component.TracingFilter;
+
+@RestController
+@RequestMapping("/debug")
+public class DebugController {
+
+	@Autowired
+	TracingFilter tracing;
+
+	/*
+	 * Last sampled upstream exchanges, newest first
+	 */
+	@GetMapping(value = "/traces", produces = MediaType.APPLICATION_JSON_VALUE)
+	public List<TraceRecord> traces() {
+		return tracing.recent();
+	}
+}
@@ -1,36 +1,64 @@
 package it.blog.webclient;
 
-public class Greeting {
+import java.util.Objects;
 
-	private String message;
-	private String from;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
-	public Greeting() {
-	}
+/*
+ * Immutable: safe to share between subscribers and to cache, every change is a new Greeting.
+ * Encoded and decoded by GreetingCodec on the hot path, the Jackson annotations are for databinding elsewhere.
+ */
+public final class Greeting {
+
+	private final String message;
+	private final String from;
 
 	public Greeting(String message) {
+		this(message, null);
+	}
+
+	@JsonCreator
+	public Greeting(@JsonProperty("message") String message, @JsonProperty("from") String from) {
 		this.message = message;
+		this.from = from;
 	}
-	
+
 	public Greeting(Greeting greetingMsg, Greeting greetingFrom) {
-		this.setMessage(greetingMsg.getMessage());
-		this.setFrom(greetingFrom.getFrom());
+		this(greetingMsg.getMessage(), greetingFrom.getFrom());
 	}
 
 	public String getMessage() {
 		return message;
 	}
 
-	public void setMessage(String message) {
-		this.message = message;
-	}
-
 	public String getFrom() {
 		return from;
 	}
 
-	public void setFrom(String from) {
-		this.from = from;
+	public Greeting withMessage(String message) {
+		return new Greeting(message, from);
+	}
+
+	public Greeting withFrom(String from) {
+		return new Greeting(message, from);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Greeting)) {
+			return false;
+		}
+		Greeting other = (Greeting) obj;
+		return Objects.equals(message, other.message) && Objects.equals(from, other.from);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(message, from);
 	}
 
 	@Override
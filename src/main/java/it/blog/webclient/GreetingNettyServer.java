@@ -0,0 +1,127 @@
+package it.blog.webclient;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.resources.LoopResources;
+
+/*
+ * /message and /from served by Reactor Netty, the event loop never blocks while the latency elapses
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "greeting.server.mode", havingValue = "netty")
+public class GreetingNettyServer {
+
+	@Autowired
+	GreetingServerProperties properties;
+
+	@Autowired
+	LatencySimulator latency;
+
+	@Autowired
+	ObjectMapper objectMapper;
+
+	private LoopResources loops;
+
+	private DisposableServer server;
+
+	private final LongAdder connections = new LongAdder();
+	private final LongAdder open = new LongAdder();
+
+	@PostConstruct
+	public void start() throws JsonProcessingException {
+
+		Greeting from = new Greeting(null, "Milan");
+
+		byte[] message = objectMapper.writeValueAsBytes(new Greeting("Hello World"));
+		byte[] milan = objectMapper.writeValueAsBytes(from);
+		String messageETag = "\"" + DigestUtils.md5DigestAsHex(message) + "\"";
+		String milanETag = "\"" + DigestUtils.md5DigestAsHex(milan) + "\"";
+
+		GreetingServerProperties.Netty netty = properties.getNetty();
+		loops = LoopResources.create("greeting-netty", netty.getWorkerThreads(), true);
+
+		HttpServer httpServer = HttpServer.create() //
+				.port(netty.getPort()) //
+				.protocol(netty.getProtocols().toArray(new HttpProtocol[0])) //
+				.runOn(loops) //
+				.doOnChannelInit((observer, channel, address) -> {
+					connections.increment();
+					open.increment();
+					channel.closeFuture().addListener(future -> open.decrement());
+				});
+		if (netty.isCompression()) {
+			httpServer = httpServer.compress((int) netty.getCompressionMinSize().toBytes());
+		}
+
+		server = httpServer //
+				.route(routes -> routes //
+						.get("/message", (request, response) -> send(request, response, message, messageETag)) //
+						.get("/from", (request, response) -> send(request, response, milan, milanETag))) //
+				.bindNow();
+
+		log.info("Netty greeting server on port {} {}", server.port(), netty.getProtocols());
+	}
+
+	public int getPort() {
+		return server.port();
+	}
+
+	/*
+	 * Connections accepted since the start, a client reusing keep-alive connections keeps it flat.
+	 * Counted when the channel is set up: an HTTP/2 connection counts once, not once per stream.
+	 */
+	public long getConnections() {
+		return connections.sum();
+	}
+
+	/*
+	 * Connections open now: a client cancelling its calls closes their connections
+	 */
+	public long getOpenConnections() {
+		return open.sum();
+	}
+
+	private Mono<Void> send(HttpServerRequest request, HttpServerResponse response, byte[] body, String eTag) {
+
+		if (eTag.equals(request.requestHeaders().get(HttpHeaders.IF_NONE_MATCH))) {
+			return response.status(HttpResponseStatus.NOT_MODIFIED).header(HttpHeaders.ETAG, eTag).send();
+		}
+
+		return latency.delay(() -> body) //
+				.flatMap(bytes -> response //
+						.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE) //
+						.header(HttpHeaders.ETAG, eTag) //
+						.header(HttpHeaders.CONTENT_LENGTH, String.valueOf(bytes.length)) //
+						.send(Mono.just(Unpooled.wrappedBuffer(bytes))) //
+						.then());
+	}
+
+	@PreDestroy
+	public void stop() {
+		server.disposeNow();
+		loops.dispose();
+	}
+}
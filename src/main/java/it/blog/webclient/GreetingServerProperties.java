@@ -0,0 +1,57 @@
+package it.blog.webclient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+import reactor.netty.http.HttpProtocol;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "greeting.server")
+public class GreetingServerProperties {
+
+	private ServerMode mode = ServerMode.BLOCKING;
+
+	/*
+	 * Simulated latency of /message and /from
+	 */
+	private Duration latency = Duration.ofMillis(1000);
+
+	/*
+	 * Timer threads completing the delays in DELAYED and NETTY mode
+	 */
+	private int delayThreads = 1;
+
+	/*
+	 * Responses of the @CachedResponse handlers written from their encoded bytes, see CachedResponseHandler
+	 */
+	private boolean cachedResponses = true;
+
+	private Netty netty = new Netty();
+
+	@Data
+	public static class Netty {
+
+		private int port = 8080;
+
+		private int workerThreads = Runtime.getRuntime().availableProcessors();
+
+		/*
+		 * HTTP11 and H2C accept both HTTP/1.1 and h2c, by upgrade or prior knowledge
+		 */
+		private List<HttpProtocol> protocols = new ArrayList<>(List.of(HttpProtocol.HTTP11));
+
+		/*
+		 * Gzip responses of compression-min-size or more to clients sending Accept-Encoding: gzip
+		 */
+		private boolean compression = false;
+
+		private DataSize compressionMinSize = DataSize.ofKilobytes(1);
+	}
+}
@@ -0,0 +1,98 @@
+package it.blog.webclient;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * One poller of /message and /from for all the /stream subscribers. The upstreams are polled only while
+ * somebody is subscribed, a new subscriber gets the latest greeting at once.
+ * Every subscriber has its own bounded buffer: a slow one loses greetings, the others and the poller
+ * never wait for it.
+ */
+@Slf4j
+@Component
+public class GreetingStream {
+
+	@Autowired
+	HttpDao client;
+
+	@Value("${greeting.stream.poll-interval:1s}")
+	Duration pollInterval;
+
+	@Value("${greeting.stream.buffer-size:16}")
+	int bufferSize;
+
+	@Value("${greeting.stream.overflow:DROP_OLDEST}")
+	BufferOverflowStrategy overflow;
+
+	@Value("${greeting.stream.heartbeat:15s}")
+	Duration heartbeat;
+
+	private final AtomicInteger subscribers = new AtomicInteger();
+	private final LongAdder polls = new LongAdder();
+	private final LongAdder failedPolls = new LongAdder();
+	private final LongAdder published = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	private Flux<Greeting> greetings;
+	private Flux<Long> heartbeats;
+
+	@PostConstruct
+	public void init() {
+		/*
+		 * A poll still running when the next tick comes skips that tick
+		 */
+		greetings = Flux.interval(Duration.ZERO, pollInterval) //
+				.onBackpressureDrop() //
+				.concatMap(tick -> client.getGreetingMessageReactiveParallel() //
+						.doOnSubscribe(subscription -> polls.increment()) //
+						.onErrorResume(error -> {
+							failedPolls.increment();
+							log.warn("Greeting stream poll failed: {}", error.toString());
+							return Mono.empty();
+						}), 1) //
+				.doOnNext(greeting -> published.increment()) //
+				.replay(1) //
+				.refCount();
+
+		heartbeats = Flux.interval(heartbeat, heartbeat).share();
+	}
+
+	/*
+	 * Greetings mapped by data, plus a heartbeat every greeting.stream.heartbeat: idle connections are kept
+	 * open by proxies and a gone subscriber is noticed at the next write
+	 */
+	public <T> Flux<T> subscribe(Function<Greeting, T> data, Supplier<T> heartbeat) {
+		return Flux.merge( //
+				greetings.onBackpressureBuffer(bufferSize, greeting -> dropped.increment(), overflow).map(data), //
+				heartbeats.onBackpressureDrop().map(tick -> heartbeat.get())) //
+				.doOnSubscribe(subscription -> subscribers.incrementAndGet()) //
+				.doFinally(signal -> subscribers.decrementAndGet());
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("subscribers", subscribers.get());
+		snapshot.put("polls", polls.sum());
+		snapshot.put("failedPolls", failedPolls.sum());
+		snapshot.put("published", published.sum());
+		snapshot.put("dropped", dropped.sum());
+		return snapshot;
+	}
+}
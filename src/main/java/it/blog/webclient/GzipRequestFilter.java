@@ -0,0 +1,214 @@
+package it.blog.webclient;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/*
+ * Request bodies sent with Content-Encoding: gzip are inflated while the controller reads them, see
+ * RequestCompressionFilter on the client side. Any other encoding gets 415 with Accept-Encoding: gzip,
+ * the client can send it again uncompressed. Response compression is Tomcat's, server.compression.*.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class GzipRequestFilter extends OncePerRequestFilter {
+
+	private static final String GZIP = "gzip";
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+		return encoding == null || encoding.isBlank() || "identity".equalsIgnoreCase(encoding.trim());
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+
+		if (!GZIP.equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING).trim())) {
+			response.setHeader(HttpHeaders.ACCEPT_ENCODING, GZIP);
+			response.sendError(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value());
+			return;
+		}
+		chain.doFilter(new Inflated(request), response);
+	}
+
+	/*
+	 * The body length is unknown once inflated, Content-Encoding and Content-Length are hidden
+	 */
+	private static class Inflated extends HttpServletRequestWrapper {
+
+		private ServletInputStream body;
+
+		Inflated(HttpServletRequest request) {
+			super(request);
+		}
+
+		@Override
+		public ServletInputStream getInputStream() throws IOException {
+			if (body == null) {
+				body = new InflatedInputStream(super.getInputStream());
+			}
+			return body;
+		}
+
+		@Override
+		public BufferedReader getReader() throws IOException {
+			String charset = getCharacterEncoding();
+			return new BufferedReader(new InputStreamReader(getInputStream(),
+					charset == null ? StandardCharsets.ISO_8859_1.name() : charset));
+		}
+
+		@Override
+		public int getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return -1;
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return hidden(name) ? null : super.getHeader(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String name) {
+			return hidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+		}
+
+		private static boolean hidden(String name) {
+			return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+					|| HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+		}
+	}
+
+	/*
+	 * Blocking reads inflate the body as they go, as the controllers read it. A ReadListener gets the body once
+	 * it is all there, inflated in memory: a gzip stream can't be inflated a chunk at a time without blocking
+	 * on the next one, and the request bodies of the clients are bounded, batches at most.
+	 */
+	private static class InflatedInputStream extends ServletInputStream {
+
+		private final ServletInputStream raw;
+		private InputStream in;
+		private boolean finished;
+		private boolean async;
+		private volatile ByteArrayInputStream inflated;
+
+		InflatedInputStream(ServletInputStream raw) {
+			this.raw = raw;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = stream().read();
+			finished = b < 0;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = stream().read(buffer, offset, length);
+			finished = read < 0;
+			return read;
+		}
+
+		/*
+		 * Blocking, the gzip header is read on the first read and not before
+		 */
+		private InputStream stream() throws IOException {
+			if (async) {
+				if (inflated == null) {
+					throw new IllegalStateException("Read before onDataAvailable");
+				}
+				return inflated;
+			}
+			if (in == null) {
+				in = new GZIPInputStream(raw);
+			}
+			return in;
+		}
+
+		@Override
+		public boolean isFinished() {
+			return finished || inflated != null && inflated.available() == 0;
+		}
+
+		@Override
+		public boolean isReady() {
+			return !async || inflated != null;
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			async = true;
+			raw.setReadListener(new ReadListener() {
+
+				@Override
+				public void onDataAvailable() throws IOException {
+					byte[] chunk = new byte[8192];
+					while (raw.isReady()) {
+						int read = raw.read(chunk);
+						if (read < 0) {
+							return;
+						}
+						compressed.write(chunk, 0, read);
+					}
+				}
+
+				@Override
+				public void onAllDataRead() throws IOException {
+					try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+						inflated = new ByteArrayInputStream(gzip.readAllBytes());
+					} catch (IOException e) {
+						readListener.onError(e);
+						return;
+					}
+					readListener.onDataAvailable();
+					if (isFinished()) {
+						readListener.onAllDataRead();
+					}
+				}
+
+				@Override
+				public void onError(Throwable t) {
+					readListener.onError(t);
+				}
+			});
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (in != null) {
+				in.close();
+			}
+			raw.close();
+		}
+	}
+}
@@ -1,26 +1,52 @@
 package it.blog.webclient;
 
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import javax.annotation.PostConstruct;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.UnknownHttpStatusCodeException;
-import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientRequestException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import it.blog.webclient.component.AggregateResult;
+import it.blog.webclient.component.Deadline;
+import it.blog.webclient.component.ErrorType;
+import it.blog.webclient.component.FanOutAggregator;
+import it.blog.webclient.component.GreetingHttpMessageConverter;
+import it.blog.webclient.component.Staleness;
+import it.blog.webclient.component.UpstreamResource;
+import it.blog.webclient.component.WebClientException;
+import it.blog.webclient.component.WebClientGreeting;
+import it.blog.webclient.component.WebClientRegistry;
+
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
@@ -30,29 +56,64 @@ public class HttpDao {
 
 	@Autowired
 	ObjectMapper objectMapper;
+
+	@Autowired
+	WebClientRegistry webClients;
+
+	@Autowired
+	FanOutAggregator aggregator;
+
+	@Value("${greeting.aggregate.concurrency:8}")
+	int aggregateConcurrency;
+
+	@Value("${greeting.aggregate.deadline:2s}")
+	Duration aggregateDeadline;
+
+	/*
+	 * Relative to the base url of the "greeting" upstream
+	 */
+	final static String urlMessage = "/message";
+	final static String urlFrom = "/from";
+
+	/*
+	 * Upstream headers copied by passthrough, hop-by-hop headers stay on the upstream connection
+	 */
+	final static List<String> passthroughHeaders = List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_LENGTH,
+			HttpHeaders.CONTENT_ENCODING, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL,
+			HttpHeaders.EXPIRES, HttpHeaders.VARY, HttpHeaders.AGE, HttpHeaders.WARNING);
+
+	@Autowired
+	GreetingHttpMessageConverter greetingConverter;
+
+	private final RestTemplate restTemplate = new RestTemplate();
+
+	@PostConstruct
+	public void init() {
+		/*
+		 * Greetings with GreetingCodec, like the WebClients and the controllers
+		 */
+		restTemplate.getMessageConverters().add(0, greetingConverter);
+	}
 	
-	final static String urlMessage = "http://localhost:8080/message";
-	final static String urlFrom = "http://localhost:8080/from";
-	
-	
-	public Greeting getGreetingNoReactiveMessage() throws JsonMappingException, JsonProcessingException {
+	/*
+	 * Bounded by the deadline of the inbound request, when there is one: see exchange
+	 */
+	public Greeting getGreetingNoReactiveMessage(Deadline deadline)
+			throws JsonMappingException, JsonProcessingException, WebClientException {
 		
-		final RestTemplate restTemplate = new RestTemplate();
+		String baseUrl = webClients.baseUrl(WebClientRegistry.GREETING);
 		
 		HttpHeaders headers = new HttpHeaders();
 		headers.setContentType(MediaType.APPLICATION_JSON);
 		
-
-		HttpEntity<String> entity = new HttpEntity<String>(headers);
-		
 		try {
 			// http://localhost:8080/message
-			ResponseEntity<Greeting> message = restTemplate.exchange(urlMessage, HttpMethod.GET, entity, Greeting.class);
+			ResponseEntity<Greeting> message = exchange(baseUrl + urlMessage, headers, deadline);
 
 			log.info("{} - {}", message.getStatusCode(), message.getBody());
 			
 			// http://localhost:8080/from
-			ResponseEntity<Greeting> from = restTemplate.exchange(urlFrom, HttpMethod.GET, entity, Greeting.class);
+			ResponseEntity<Greeting> from = exchange(baseUrl + urlFrom, headers, deadline);
 
 			log.info("{} - {}", from.getStatusCode(), from.getBody());						
 
@@ -66,8 +127,6 @@ public class HttpDao {
 		 */
 		catch (HttpClientErrorException | HttpServerErrorException | UnknownHttpStatusCodeException errorException) {
 
-			ObjectMapper objectMapper = new ObjectMapper();
-
 			log.error(errorException.getResponseBodyAsString());
 
 			Greeting response = objectMapper.readValue(errorException.getResponseBodyAsString(),
@@ -77,45 +136,39 @@ public class HttpDao {
 		}
 	}
 	
-	public Greeting getGreetingReactiveBlockMessage() throws JsonMappingException, JsonProcessingException {
-		try {
-			log.info("Starting Message resource");
-			Greeting greetingMono = WebClient.create().get().uri(urlMessage).retrieve()
-					.bodyToMono(Greeting.class).log().block();
-
-			log.info("End Message resource");
-			log.info("Starting From resource");
-			
-			Greeting greetingFrom = WebClient.create().get().uri(urlFrom).retrieve()
-					.bodyToMono(Greeting.class).log().block();
-			log.info("End From resource");
-			
-			greetingMono.setFrom(greetingFrom.getFrom());
-
-			return greetingMono;
-		} catch (WebClientResponseException we) {
-			log.info("Exception {} - {}", we.getRawStatusCode(), we.getMessage());
-			return objectMapper.readValue(we.getResponseBodyAsString(), Greeting.class);
-		} catch (WebClientRequestException we) {
-			log.info("Exception {}", we.getMessage());
-			return new Greeting(we.getMessage());
-		}
+	/*
+	 * onStale gets the age and the Warning values of the stale cached responses served instead of calling the
+	 * upstream. Each call is bound to the deadline, when there is one: it is cancelled when the time is up.
+	 */
+	public Greeting getGreetingReactiveBlockMessage(Deadline deadline, BiConsumer<Duration, Set<String>> onStale)
+			throws WebClientException {
+		log.info("Starting Message resource");
+		Greeting greetingMono = block(deadline, Staleness.report(webClients.get(WebClientRegistry.GREETING).get()
+				.uri(urlMessage).retrieve().bodyToMono(Greeting.class), onStale));
+
+		log.info("End Message resource");
+		log.info("Starting From resource");
+		
+		Greeting greetingFrom = block(deadline, Staleness.report(webClients.get(WebClientRegistry.GREETING).get()
+				.uri(urlFrom).retrieve().bodyToMono(Greeting.class), onStale));
+		log.info("End From resource");
+		
+		return greetingMono.withFrom(greetingFrom.getFrom());
 	}
 
 	public Mono<Greeting> getGreetingReactiveMessage() {
 
 		log.info("Starting Reactive Method!");
-		Mono<Greeting> greetingMono = WebClient.create().get().uri(urlMessage).retrieve()
-				.bodyToMono(Greeting.class).log()
+		Mono<Greeting> greetingMono = webClients.get(WebClientRegistry.GREETING).get().uri(urlMessage).retrieve()
+				.bodyToMono(Greeting.class)
 				/*
-				 * doOnNext is just callback that says what to do when Mono above completed
-				 * successfully, usually we log something or update some value, but it is not
-				 * used to return something or throw exception
+				 * Greeting is immutable, map returns the changed copy. doOnNext is just callback
+				 * that says what to do when Mono above completed successfully, usually we log
+				 * something, but it is not used to return something or throw exception
 				 */
-				.doOnNext(greeting -> this.addedWord(greeting))
+				.map(greeting -> this.addedWord(greeting))
 				.flatMap(greeting -> this.getGreetingFromReactive(greeting))
-				.onErrorResume(WebClientResponseException.class, wcre -> this.getNotFoundGreeting(wcre))
-				.onErrorResume(WebClientRequestException.class, wcre -> this.getNotFoundGreeting(wcre));
+				.onErrorMap(HttpDao::toWebClientException);
 
 		log.info("Exiting Reactive Method!");
 		return greetingMono;
@@ -124,7 +177,7 @@ public class HttpDao {
 
 	public Mono<Greeting> getGreetingMessageReactiveExchange() {
 
-		return WebClient.create().get().uri(urlMessage).accept(MediaType.APPLICATION_JSON)
+		return webClients.get(WebClientRegistry.GREETING).get().uri(urlMessage).accept(MediaType.APPLICATION_JSON)
 				.exchangeToMono(response -> {
 					if (response.statusCode().equals(HttpStatus.OK)) {
 						return response.bodyToMono(Greeting.class).flatMap(greeting -> this.getGreetingFromReactive(greeting));
@@ -135,9 +188,8 @@ public class HttpDao {
 						// Turn to error
 						return response.createException().flatMap(Mono::error);
 					}
-				}).log()
-				.onErrorResume(WebClientResponseException.class, wcre -> this.getNotFoundGreeting(wcre))
-				.onErrorResume(WebClientRequestException.class, wcre -> this.getNotFoundGreeting(wcre));
+				})
+				.onErrorMap(HttpDao::toWebClientException);
 
 	}
 
@@ -150,17 +202,64 @@ public class HttpDao {
 
 	}
 
-	private Mono<Greeting> addedWord(Greeting greeting) {
-		greeting.setMessage(greeting.getMessage() + " - Reactive!");
-		return Mono.fromCallable(() -> greeting);
+	/*
+	 * Same resources of getGreetingMessageReactiveParallel, through the aggregator: a source missing the
+	 * deadline leaves its field empty and is reported with its status
+	 */
+	public Mono<AggregateResult<Greeting>> getGreetingAggregated() {
+
+		List<UpstreamResource<? extends Greeting>> resources = List.of(
+				new UpstreamResource<>("message", WebClientRegistry.GREETING, urlMessage, Greeting.class),
+				new UpstreamResource<>("from", WebClientRegistry.GREETING, urlFrom, Greeting.class));
+
+		return aggregator.aggregate(resources, this::mergeAll, aggregateConcurrency, aggregateDeadline);
+	}
+
+	/*
+	 * Nothing to merge: status, selected headers and body bytes of the upstream are forwarded as they are,
+	 * error statuses included, without Jackson on either side
+	 */
+	public Mono<ResponseEntity<StreamingResponseBody>> getPassthrough(String path) {
+
+		return webClients.get(WebClientRegistry.GREETING).get().uri(path).accept(MediaType.APPLICATION_JSON)
+				.retrieve()
+				.onRawStatus(status -> true, response -> Mono.empty())
+				.toEntityFlux(DataBuffer.class)
+				.map(upstream -> ResponseEntity.status(upstream.getStatusCodeValue())
+						.headers(headers -> passthroughHeaders.forEach(name -> {
+							List<String> values = upstream.getHeaders().get(name);
+							if (values != null) {
+								headers.put(name, values);
+							}
+						}))
+						.<StreamingResponseBody>body(new PassthroughBody(upstream.getBody())))
+				.onErrorMap(Predicate.not(WebClientException.class::isInstance), WebClientGreeting::toWebClientException);
+	}
+
+	private Greeting mergeAll(Map<String, Greeting> greetings) {
+		String message = null;
+		String from = null;
+		for (Greeting greeting : greetings.values()) {
+			if (greeting.getMessage() != null) {
+				message = greeting.getMessage();
+			}
+			if (greeting.getFrom() != null) {
+				from = greeting.getFrom();
+			}
+		}
+		return new Greeting(message, from);
+	}
+
+	private Greeting addedWord(Greeting greeting) {
+		return greeting.withMessage(greeting.getMessage() + " - Reactive!");
 	}
 
 	private Mono<Greeting> getGreetingFromReactive() {
 
 		log.info("getGreetingFromReactive!");
-		Mono<Greeting> greetingMono = WebClient.create().get().uri(urlFrom).retrieve()
-				.bodyToMono(Greeting.class).log()
-				.onErrorResume(WebClientResponseException.class, wcre -> this.getNotFoundGreeting(wcre));
+		Mono<Greeting> greetingMono = webClients.get(WebClientRegistry.GREETING).get().uri(urlFrom).retrieve()
+				.bodyToMono(Greeting.class)
+				.onErrorMap(HttpDao::toWebClientException);
 
 		log.info("Exiting getGreetingFromReactive!");
 		return greetingMono;
@@ -170,9 +269,9 @@ public class HttpDao {
 	private Mono<Greeting> getGreetingFromReactive(Greeting greeting) {
 
 		log.info("getGreetingFromReactive!");
-		Mono<Greeting> greetingMono = WebClient.create().get().uri(urlFrom).retrieve()
-				.bodyToMono(Greeting.class).log().map(from -> this.mergeMessageWithFrom(greeting, from))
-				.onErrorResume(WebClientResponseException.class, wcre -> this.getNotFoundGreeting(wcre));
+		Mono<Greeting> greetingMono = webClients.get(WebClientRegistry.GREETING).get().uri(urlFrom).retrieve()
+				.bodyToMono(Greeting.class).map(from -> this.mergeMessageWithFrom(greeting, from))
+				.onErrorMap(HttpDao::toWebClientException);
 
 		log.info("Exiting getGreetingFromReactive!");
 		return greetingMono;
@@ -182,35 +281,96 @@ public class HttpDao {
 	private Mono<Greeting> getGreetingMsgReactive() {
 
 		log.info("Starting getGreetingMsgReactive!");
-		Mono<Greeting> greetingMono = WebClient.create().get().uri(urlMessage).retrieve()
-				.bodyToMono(Greeting.class).log()
+		Mono<Greeting> greetingMono = webClients.get(WebClientRegistry.GREETING).get().uri(urlMessage).retrieve()
+				.bodyToMono(Greeting.class)
 				/*
-				 * doOnNext is just callback that says what to do when Mono above completed
-				 * successfully, usually we log something or update some value, but it is not
-				 * used to return something or throw exception
+				 * Greeting is immutable, map returns the changed copy. doOnNext is just callback
+				 * that says what to do when Mono above completed successfully, usually we log
+				 * something, but it is not used to return something or throw exception
 				 */
-				.doOnNext(greeting -> this.addedWord(greeting))
-				.onErrorResume(WebClientResponseException.class, wcre -> this.getNotFoundGreeting(wcre))
-				.onErrorResume(WebClientRequestException.class, wcre -> this.getNotFoundGreeting(wcre));
+				.map(greeting -> this.addedWord(greeting))
+				.onErrorMap(HttpDao::toWebClientException);
 
 		log.info("Exiting getGreetingMsgReactive!");
 		return greetingMono;
 
 	}
 
-	private Mono<Greeting> getNotFoundGreeting(WebClientResponseException wcre) {
-		log.info("Exception {} - {}", wcre.getRawStatusCode(), wcre.getMessage());
-		return Mono.fromCallable(() -> objectMapper.readValue(wcre.getResponseBodyAsString(), Greeting.class));
+	/*
+	 * No Greeting made up from an error body or an exception message: the failure reaches the controller,
+	 * the only fallback is a stale cached response (webclient.upstreams.<name>.cache.stale-if-error)
+	 */
+	private static <T> T block(Deadline deadline, Mono<T> call) throws WebClientException {
+		try {
+			return Deadline.bound(deadline, call).block();
+		} catch (WebClientResponseException | WebClientRequestException we) {
+			throw toWebClientException(we);
+		} catch (RuntimeException e) {
+			/*
+			 * block() wraps the checked WebClientException, DEADLINE_EXCEEDED among them
+			 */
+			if (Exceptions.unwrap(e) instanceof WebClientException) {
+				throw (WebClientException) Exceptions.unwrap(e);
+			}
+			throw e;
+		}
+	}
+
+	/*
+	 * RestTemplate GET sending X-Request-Timeout with the time left, as the WebClients do. The connect and read
+	 * timeouts of the call are the time left: an upstream still silent at the deadline is left with
+	 * DEADLINE_EXCEEDED. A caller gone away is not noticed, its Tomcat thread waits for the call anyway.
+	 */
+	private ResponseEntity<Greeting> exchange(String url, HttpHeaders headers, Deadline deadline)
+			throws WebClientException {
+		if (deadline == null) {
+			return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<String>(headers), Greeting.class);
+		}
+		Duration remaining = deadline.remaining();
+		if (remaining.isZero()) {
+			throw new WebClientException("Deadline exceeded", ErrorType.DEADLINE_EXCEEDED);
+		}
+		HttpHeaders bounded = new HttpHeaders();
+		bounded.addAll(headers);
+		bounded.set(Deadline.HEADER, String.valueOf(remaining.toMillis()));
+		try {
+			return restTemplate(remaining).exchange(url, HttpMethod.GET, new HttpEntity<String>(bounded),
+					Greeting.class);
+		} catch (ResourceAccessException e) {
+			if (e.getCause() instanceof SocketTimeoutException) {
+				throw new WebClientException("Deadline exceeded", ErrorType.DEADLINE_EXCEEDED);
+			}
+			throw e;
+		}
+	}
 
+	/*
+	 * The timeouts of the RestTemplate are fixed, a call with its own needs its own: the converters are shared
+	 */
+	private RestTemplate restTemplate(Duration timeout) {
+		int millis = (int) Math.max(1, timeout.toMillis());
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout(millis);
+		requestFactory.setReadTimeout(millis);
+		RestTemplate bounded = new RestTemplate(restTemplate.getMessageConverters());
+		bounded.setRequestFactory(requestFactory);
+		return bounded;
 	}
 
-	private Mono<Greeting> getNotFoundGreeting(WebClientRequestException wcre) {
-		log.info("Exception {}", wcre.getMessage());
-		return Mono.fromCallable(() -> new Greeting(wcre.getMessage()));
+	private static WebClientException toWebClientException(Throwable error) {
+		if (error instanceof WebClientException) {
+			return (WebClientException) error;
+		}
+		if (error instanceof WebClientResponseException) {
+			WebClientResponseException wcre = (WebClientResponseException) error;
+			log.info("Exception {} - {}", wcre.getRawStatusCode(), wcre.getMessage());
+			ErrorType type = ErrorType.of(wcre.getRawStatusCode());
+			return new WebClientException(wcre.getMessage(), type == null ? ErrorType.HTTPSTATUS5XX : type);
+		}
+		return WebClientGreeting.toWebClientException(error);
 	}
 
 	private Greeting mergeMessageWithFrom(Greeting greeting, Greeting from) {
-		greeting.setFrom(from.getFrom());
-		return greeting;
+		return greeting.withFrom(from.getFrom());
 	}
 }
\ No newline at end of file
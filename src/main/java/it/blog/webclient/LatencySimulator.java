@@ -0,0 +1,42 @@
+package it.blog.webclient;
+
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Component
+public class LatencySimulator {
+
+	private final GreetingServerProperties properties;
+
+	private final Scheduler timer;
+
+	public LatencySimulator(GreetingServerProperties properties) {
+		this.properties = properties;
+		this.timer = Schedulers.newParallel("greeting-delay", properties.getDelayThreads(), true);
+	}
+
+	/*
+	 * Emits the value after the configured latency, blocking the subscribing thread only in BLOCKING mode
+	 */
+	public <T> Mono<T> delay(Supplier<T> value) {
+		if (properties.getMode() == ServerMode.BLOCKING) {
+			return Mono.fromCallable(() -> {
+				Thread.sleep(properties.getLatency().toMillis());
+				return value.get();
+			});
+		}
+		return Mono.delay(properties.getLatency(), timer).map(tick -> value.get());
+	}
+
+	@PreDestroy
+	public void destroy() {
+		timer.dispose();
+	}
+}
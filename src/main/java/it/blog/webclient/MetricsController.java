@@ -0,0 +1,112 @@
+package it.blog.webclient;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import it.blog.webclient.component.CircuitBreakerFilter;
+import it.blog.webclient.component.CoalescingFilter;
+import it.blog.webclient.component.ConcurrencyLimitFilter;
+import it.blog.webclient.component.ConnectionPools;
+import it.blog.webclient.component.HedgingFilter;
+import it.blog.webclient.component.HttpMetricsFilter;
+import it.blog.webclient.component.LoadBalancerFilter;
+import it.blog.webclient.component.ResponseCacheFilter;
+import it.blog.webclient.component.RetryFilter;
+
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+	@Autowired
+	ResponseCacheFilter responseCache;
+
+	@Autowired
+	CoalescingFilter coalescing;
+
+	@Autowired
+	HedgingFilter hedging;
+
+	@Autowired
+	CircuitBreakerFilter breakers;
+
+	@Autowired
+	RetryFilter retries;
+
+	@Autowired
+	ConcurrencyLimitFilter limiters;
+
+	@Autowired
+	HttpMetricsFilter http;
+
+	@Autowired
+	LoadBalancerFilter balancers;
+
+	@Autowired
+	ConnectionPools pools;
+
+	@Autowired
+	GreetingStream stream;
+
+	@Autowired
+	AdmissionFilter admission;
+
+	@GetMapping(value = "/cache", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Long>> cache() {
+		return responseCache.snapshot();
+	}
+
+	@GetMapping(value = "/coalescing", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Object>> coalescing() {
+		return coalescing.snapshot();
+	}
+
+	@GetMapping(value = "/hedging", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Object>> hedging() {
+		return hedging.snapshot();
+	}
+
+	@GetMapping(value = "/breakers", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Object>> breakers() {
+		return breakers.snapshot();
+	}
+
+	@GetMapping(value = "/retries", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Object>> retries() {
+		return retries.snapshot();
+	}
+
+	@GetMapping(value = "/limiters", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Object>> limiters() {
+		return limiters.snapshot();
+	}
+
+	@GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Object> stream() {
+		return stream.snapshot();
+	}
+
+	@GetMapping(value = "/http", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Object>> http() {
+		return http.snapshot();
+	}
+
+	@GetMapping(value = "/balancers", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Object>> balancers() {
+		return balancers.snapshot();
+	}
+
+	@GetMapping(value = "/pools", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Object>> pools() {
+		return pools.snapshot();
+	}
+
+	@GetMapping(value = "/admission", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Map<String, Map<String, Object>> admission() {
+		return admission.snapshot();
+	}
+}
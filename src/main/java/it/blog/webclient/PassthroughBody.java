@@ -0,0 +1,118 @@
+package it.blog.webclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Signal;
+
+/*
+ * Upstream DataBuffers written to the servlet response as they arrive, no decoding.
+ * Buffers are pulled one at a time by the writing thread: a slow client holds back the upstream connection
+ * instead of piling buffers up, and the Netty event loop never blocks on the servlet output stream.
+ * Every buffer is released once written, or when the copy is abandoned.
+ */
+public class PassthroughBody implements StreamingResponseBody {
+
+	private final Flux<DataBuffer> body;
+
+	public PassthroughBody(Flux<DataBuffer> body) {
+		this.body = body;
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+
+		Puller puller = body.subscribeWith(new Puller());
+
+		try {
+			for (;;) {
+				Signal<DataBuffer> signal = puller.signals.take();
+				if (signal.isOnComplete()) {
+					return;
+				}
+				if (signal.isOnError()) {
+					throw Exceptions.propagate(signal.getThrowable());
+				}
+				DataBuffer buffer = signal.get();
+				try {
+					write(buffer, out);
+				} finally {
+					DataBufferUtils.release(buffer);
+				}
+				puller.request(1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} finally {
+			puller.dispose();
+			puller.releaseQueued();
+		}
+	}
+
+	/*
+	 * Tomcat copies straight from the ByteBuffer view of the Netty buffer into its output buffer
+	 */
+	private static void write(DataBuffer buffer, OutputStream out) throws IOException {
+		ByteBuffer bytes = buffer.asByteBuffer();
+		if (out instanceof CoyoteOutputStream) {
+			((CoyoteOutputStream) out).write(bytes);
+		} else if (bytes.hasArray()) {
+			out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+		} else {
+			byte[] copy = new byte[bytes.remaining()];
+			bytes.get(copy);
+			out.write(copy);
+		}
+	}
+
+	private static class Puller extends BaseSubscriber<DataBuffer> {
+
+		final BlockingQueue<Signal<DataBuffer>> signals = new LinkedBlockingQueue<>();
+
+		@Override
+		protected void hookOnSubscribe(Subscription subscription) {
+			subscription.request(1);
+		}
+
+		@Override
+		protected void hookOnNext(DataBuffer buffer) {
+			signals.add(Signal.next(buffer));
+			if (isDisposed()) {
+				releaseQueued();
+			}
+		}
+
+		@Override
+		protected void hookOnComplete() {
+			signals.add(Signal.complete());
+		}
+
+		@Override
+		protected void hookOnError(Throwable throwable) {
+			signals.add(Signal.error(throwable));
+		}
+
+		void releaseQueued() {
+			Signal<DataBuffer> signal;
+			while ((signal = signals.poll()) != null) {
+				if (signal.hasValue()) {
+					DataBufferUtils.release(signal.get());
+				}
+			}
+		}
+	}
+}
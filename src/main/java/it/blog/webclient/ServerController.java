@@ -1,31 +1,52 @@
 package it.blog.webclient;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import it.blog.webclient.component.AggregateResult;
+import it.blog.webclient.component.Deadline;
 import it.blog.webclient.component.ErrorType;
+import it.blog.webclient.component.GreetingCodec;
+import it.blog.webclient.component.Staleness;
 import it.blog.webclient.component.WebClientException;
 import it.blog.webclient.component.WebClientGreeting;
+import it.blog.webclient.component.WebClientRegistry;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @RestController
@@ -39,62 +60,147 @@ public class ServerController {
 	@Autowired
 	ObjectMapper objectMapper;
 
+	@Autowired
+	WebClientRegistry webClients;
+
+	@Autowired
+	LatencySimulator latency;
+
+	@Autowired
+	GreetingStream stream;
+
+	@Autowired
+	GreetingCodec codec;
+
+	@Value("${greeting.batch.flush-every:64}")
+	int batchFlushEvery;
+
+	/*
+	 * The bodies of /message, /from, /ko404 and /ko500 never change: constants, written from their encoded
+	 * bytes by CachedResponseHandler
+	 */
+	private static final Greeting MESSAGE = new Greeting("Hello World");
+	private static final Greeting MILAN = new Greeting(null, "Milan");
+
+	private static final ResponseEntity<Greeting> NOT_FOUND = new ResponseEntity<>(MESSAGE, HttpStatus.NOT_FOUND);
+	private static final ResponseEntity<Greeting> INTERNAL_SERVER_ERROR = new ResponseEntity<>(MESSAGE,
+			HttpStatus.INTERNAL_SERVER_ERROR);
+
+	private String messageETag;
+	private String fromETag;
+	private long lastModified;
+	private ResponseEntity<Greeting> messageResponse;
+	private ResponseEntity<Greeting> fromResponse;
+
+	@PostConstruct
+	public void init() throws IOException {
+		/*
+		 * /message and /from never change: the ETags are computed once from their payload
+		 */
+		messageETag = eTag(MESSAGE);
+		fromETag = eTag(MILAN);
+		lastModified = System.currentTimeMillis();
+		messageResponse = ResponseEntity.ok().eTag(messageETag).lastModified(lastModified).body(MESSAGE);
+		fromResponse = ResponseEntity.ok().eTag(fromETag).lastModified(lastModified).body(MILAN);
+	}
+
+	@CachedResponse
 	@GetMapping(value = "/message", produces = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<Greeting> ok200() throws InterruptedException {
+	public Mono<ResponseEntity<Greeting>> ok200(WebRequest request) {
 
 		log.info("/message");
-		
-		Greeting greeting = new Greeting("Hello World");
-
-		Thread.sleep(1000);
 
-		return new ResponseEntity<>(greeting, HttpStatus.OK);
+		/*
+		 * A client with the current version gets 304 without waiting for the latency
+		 */
+		if (request.checkNotModified(messageETag, lastModified)) {
+			return null;
+		}
+		
+		return latency.delay(() -> messageResponse);
 	}
 
 	@PostMapping(value = "/greeting/{from}", produces = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<Greeting> greetingFrom(@PathVariable("from") String from, @RequestBody Greeting payload) throws InterruptedException {
 
 		log.info("/greeting/{}", from);
-		
-		Greeting greeting = new Greeting();
-		greeting.setFrom(from);
-		greeting.setMessage(payload.getMessage());
 
-		return new ResponseEntity<>(greeting, HttpStatus.OK);
+		return new ResponseEntity<>(greeting(from, payload), HttpStatus.OK);
+	}
+
+	/*
+	 * Many greetings in one round-trip: the request is an NDJSON stream or a JSON array, read one greeting at
+	 * a time and answered one NDJSON line at a time, memory stays constant whatever the batch size
+	 */
+	@PostMapping(value = "/greeting/{from}/batch", consumes = { MediaType.APPLICATION_NDJSON_VALUE,
+			MediaType.APPLICATION_JSON_VALUE }, produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> greetingFromBatch(@PathVariable("from") String from,
+			HttpServletRequest request) {
+
+		log.info("/greeting/{}/batch", from);
+
+		StreamingResponseBody body = out -> {
+			try (JsonParser payloads = codec.parser(request.getInputStream());
+					JsonGenerator generator = codec.generator(out)) {
+
+				generator.setRootValueSeparator(null);
+
+				/*
+				 * NDJSON is a sequence of root objects, a JSON array is skipped into
+				 */
+				JsonToken token = payloads.nextToken();
+				if (token == JsonToken.START_ARRAY) {
+					token = payloads.nextToken();
+				}
+
+				int count = 0;
+				for (; token == JsonToken.START_OBJECT; token = payloads.nextToken()) {
+					codec.write(greeting(from, codec.read(payloads)), generator);
+					generator.writeRaw('\n');
+					/*
+					 * The client sees the first results while the rest of the batch is still uploading
+					 */
+					if (++count % batchFlushEvery == 0) {
+						generator.flush();
+					}
+				}
+				log.debug("/greeting/{}/batch: {} greetings", from, count);
+			}
+		};
+
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
 	}
 
 	
+	@CachedResponse
 	@GetMapping(value = "/from", produces = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<Greeting> from() throws InterruptedException {
+	public Mono<ResponseEntity<Greeting>> from(WebRequest request) {
 
 		log.info("/from");
-		
-		Greeting greeting = new Greeting();
-		greeting.setFrom("Milan");
-
-		Thread.sleep(1000);
 
-		return new ResponseEntity<>(greeting, HttpStatus.OK);
+		if (request.checkNotModified(fromETag, lastModified)) {
+			return null;
+		}
+		
+		return latency.delay(() -> fromResponse);
 	}
 
+	@CachedResponse
 	@GetMapping(value = "/ko404", produces = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<Greeting> ko404() {
 
 		log.info("/ko404");
-		
-		Greeting greeting = new Greeting("Hello World");
 
-		return new ResponseEntity<>(greeting, HttpStatus.NOT_FOUND);
+		return NOT_FOUND;
 	}
 
+	@CachedResponse
 	@GetMapping(value = "/ko500", produces = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<Greeting> ko500() {
 		
 		log.info("/ko500");
-		
-		Greeting greeting = new Greeting("Hello World");
 
-		return new ResponseEntity<>(greeting, HttpStatus.INTERNAL_SERVER_ERROR);
+		return INTERNAL_SERVER_ERROR;
 	}
 
 	@PostMapping(value = "/ok201", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -108,11 +214,14 @@ public class ServerController {
 	}
 
 	@GetMapping(value = "/clientReactiveBlock", produces = MediaType.APPLICATION_JSON_VALUE)
-	public Greeting client(HttpServletResponse response) throws JsonMappingException, JsonProcessingException {
+	public Greeting client(HttpServletResponse response,
+			@RequestAttribute(name = DeadlineRequestFilter.ATTRIBUTE, required = false) Deadline deadline)
+			throws WebClientException {
 
 		log.info("/clientReactiveBlock");
 		
-		Greeting greeting = client.getGreetingReactiveBlockMessage();
+		Greeting greeting = client.getGreetingReactiveBlockMessage(deadline,
+				(age, warnings) -> stale(response, age, warnings));
 
 //		response.setStatus(HttpStatus.NOT_FOUND.value());
 
@@ -120,12 +229,14 @@ public class ServerController {
 	}
 	
 	@GetMapping(value = "/clientReactive", produces = MediaType.APPLICATION_JSON_VALUE)
-	public Mono<Greeting> clientReactive(HttpServletResponse response)
+	public Mono<Greeting> clientReactive(HttpServletResponse response,
+			@RequestAttribute(name = DeadlineRequestFilter.ATTRIBUTE, required = false) Deadline deadline)
 			throws JsonMappingException, JsonProcessingException {
 
 		log.info("/clientReactive");
 		
-		Mono<Greeting> greeting = client.getGreetingReactiveMessage();
+		Mono<Greeting> greeting = Staleness.report(Deadline.bound(deadline, client.getGreetingReactiveMessage()),
+				(age, warnings) -> stale(response, age, warnings));
 
 //		response.setStatus(HttpStatus.NOT_FOUND.value());
 
@@ -133,11 +244,13 @@ public class ServerController {
 	}
 
 	@GetMapping(value = "/clientNoReactive", produces = MediaType.APPLICATION_JSON_VALUE)
-	public Greeting clientNoReactive(HttpServletResponse response) throws JsonMappingException, JsonProcessingException {
+	public Greeting clientNoReactive(HttpServletResponse response,
+			@RequestAttribute(name = DeadlineRequestFilter.ATTRIBUTE, required = false) Deadline deadline)
+			throws JsonMappingException, JsonProcessingException, WebClientException {
 
 		log.info("/clientNoReactive");
 		
-		Greeting greeting = client.getGreetingNoReactiveMessage();
+		Greeting greeting = client.getGreetingNoReactiveMessage(deadline);
 
 //		response.setStatus(HttpStatus.NOT_FOUND.value());
 
@@ -145,12 +258,14 @@ public class ServerController {
 	}
 
 	@GetMapping(value = "/clientExchange", produces = MediaType.APPLICATION_JSON_VALUE)
-	public Mono<Greeting> clientReactiveExchange(HttpServletResponse response)
+	public Mono<Greeting> clientReactiveExchange(HttpServletResponse response,
+			@RequestAttribute(name = DeadlineRequestFilter.ATTRIBUTE, required = false) Deadline deadline)
 			throws JsonMappingException, JsonProcessingException {
 
 		log.info("/clientExchange");
 		
-		Mono<Greeting> greeting = client.getGreetingMessageReactiveExchange();
+		Mono<Greeting> greeting = Staleness.report(Deadline.bound(deadline, client.getGreetingMessageReactiveExchange()),
+				(age, warnings) -> stale(response, age, warnings));
 
 //		response.setStatus(HttpStatus.NOT_FOUND.value());
 
@@ -158,29 +273,74 @@ public class ServerController {
 	}
 
 	@GetMapping(value = "/clientReactiveParallel", produces = MediaType.APPLICATION_JSON_VALUE)
-	public Mono<Greeting> clientReactiveParallel(HttpServletResponse response)
+	public Mono<Greeting> clientReactiveParallel(HttpServletResponse response,
+			@RequestAttribute(name = DeadlineRequestFilter.ATTRIBUTE, required = false) Deadline deadline)
 			throws JsonMappingException, JsonProcessingException {
 
 		log.info("/clientReactiveParallel");
 		
-		Mono<Greeting> greeting = client.getGreetingMessageReactiveParallel();
+		Mono<Greeting> greeting = Staleness.report(Deadline.bound(deadline, client.getGreetingMessageReactiveParallel()),
+				(age, warnings) -> stale(response, age, warnings));
 
 //		response.setStatus(HttpStatus.NOT_FOUND.value());
 
 		return greeting;
 	}
 	
+	/*
+	 * /message and /from of the upstream byte for byte, the merge of /clientReactiveParallel is the only
+	 * reason to decode them
+	 */
+	@GetMapping(value = "/proxy/{resource:message|from}")
+	public Mono<ResponseEntity<StreamingResponseBody>> proxy(@PathVariable("resource") String resource,
+			@RequestAttribute(name = DeadlineRequestFilter.ATTRIBUTE, required = false) Deadline deadline) {
+
+		log.info("/proxy/{}", resource);
+
+		return Deadline.bound(deadline, client.getPassthrough("/" + resource));
+	}
+	
+	@GetMapping(value = "/clientAggregate", produces = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<AggregateResult<Greeting>> clientAggregate(HttpServletResponse response,
+			@RequestAttribute(name = DeadlineRequestFilter.ATTRIBUTE, required = false) Deadline deadline) {
+
+		log.info("/clientAggregate");
+
+		return Staleness.report(Deadline.bound(deadline, client.getGreetingAggregated()), (age, warnings) -> stale(response, age, warnings));
+	}
+	
+	/*
+	 * Live greetings for dashboards: every subscriber shares the same upstream polling
+	 */
+	@GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public Flux<ServerSentEvent<Greeting>> streamEvents() {
+
+		log.info("/stream");
+
+		return stream.subscribe(greeting -> ServerSentEvent.builder(greeting).event("greeting").build(),
+				() -> ServerSentEvent.<Greeting>builder().comment("heartbeat").build());
+	}
+
+	/*
+	 * Heartbeats are empty lines, skipped by NDJSON readers
+	 */
+	@GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<Object> streamLines() {
+
+		log.info("/stream");
+
+		return stream.subscribe(Object.class::cast, () -> "");
+	}
+	
 	@GetMapping(value = "/handleAllPossibleException", produces = MediaType.APPLICATION_JSON_VALUE)
 	public Mono<Greeting> clientHandleAllPossibleException(HttpServletResponse response)
 			throws JsonMappingException, JsonProcessingException {
 
 		log.info("/handleAllPossibleException");
 		
-		Greeting payload = new Greeting();
-		payload.setFrom("Milan");
-		payload.setMessage("Have a nice day");
+		Greeting payload = new Greeting("Have a nice day", "Milan");
 		
-		Mono<Greeting> greeting = WebClientGreeting.handleAllPossibleException(WebClientGreeting.getWebClientWithTimeout(), payload);
+		Mono<Greeting> greeting = WebClientGreeting.handleAllPossibleException(webClients.get(WebClientRegistry.BACKEND), payload);
 
 
 		return greeting;
@@ -192,16 +352,38 @@ public class ServerController {
 
 		log.info("/handleAllPossibleException");
 		
-		Greeting payload = new Greeting();
-		payload.setFrom("Milan");
-		payload.setMessage("Have a nice day");
+		Greeting payload = new Greeting("Have a nice day", "Milan");
 		
-		Mono<Greeting> greeting = WebClientGreeting.handleAllPossibleExceptionPost(WebClientGreeting.getWebClientWithTimeout(), payload);
+		Mono<Greeting> greeting = WebClientGreeting.handleAllPossibleExceptionPost(webClients.get(WebClientRegistry.BACKEND), payload);
 
 
 		return greeting;
 	}
 
+	private Greeting greeting(String from, Greeting payload) {
+		return new Greeting(payload.getMessage(), from);
+	}
+
+	/*
+	 * Part of the greeting comes from the cache past its TTL: Age of the oldest part, the header is set again
+	 * only by an older one. One Warning for each kind, 110 stale or 111 served because the upstream failed.
+	 */
+	private void stale(HttpServletResponse response, Duration age, Set<String> warnings) {
+		String current = response.getHeader(HttpHeaders.AGE);
+		if (current == null || Long.parseLong(current) < age.toSeconds()) {
+			response.setHeader(HttpHeaders.AGE, String.valueOf(age.toSeconds()));
+		}
+		for (String warning : warnings) {
+			if (!response.getHeaders(HttpHeaders.WARNING).contains(warning)) {
+				response.addHeader(HttpHeaders.WARNING, warning);
+			}
+		}
+	}
+
+	private String eTag(Greeting greeting) throws IOException {
+		return "\"" + DigestUtils.md5DigestAsHex(codec.toBytes(greeting)) + "\"";
+	}
+
 	/*
 	 * Fields missing
 	 */
@@ -222,6 +404,15 @@ public class ServerController {
 				return new ResponseEntity<Greeting>(new Greeting(ex.getMessage()), HttpStatus.BAD_REQUEST);
 		if (ex.getType()==ErrorType.HTTPSTATUS5XX)
 			return new ResponseEntity<Greeting>(new Greeting(ex.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+		if (ex.getType()==ErrorType.DEADLINE_EXCEEDED)
+			return new ResponseEntity<Greeting>(new Greeting(ex.getMessage()), HttpStatus.GATEWAY_TIMEOUT);
+		/*
+		 * Load shed: the caller can come back when the upstream has room again
+		 */
+		if (ex.getType()==ErrorType.SATURATED && ex.getRetryAfter()!=null)
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, ex.getRetryAfter().toSeconds())))
+					.body(new Greeting(ex.getMessage()));
 		
 		return new ResponseEntity<Greeting>(new Greeting(ex.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
 
@@ -0,0 +1,19 @@
+package it.blog.webclient;
+
+/*
+ * How /message and /from simulate the latency of a slow service
+ */
+public enum ServerMode {
+	/*
+	 * Thread.sleep on the Tomcat request thread, sized by server.tomcat.max-threads
+	 */
+	BLOCKING,
+	/*
+	 * Non-blocking delay, the Tomcat thread is released until the delay expires
+	 */
+	DELAYED,
+	/*
+	 * DELAYED on Tomcat, plus the same resources served by a Reactor Netty server on its own port
+	 */
+	NETTY
+}
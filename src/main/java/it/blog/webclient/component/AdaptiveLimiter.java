@@ -0,0 +1,199 @@
+package it.blog.webclient.component;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/*
+ * AIMD concurrency limit of one upstream, found from the observed latency.
+ * Every call holding a permit faster than latency-tolerance times the minimum latency grows the limit by
+ * 1/limit, about one permit per round of calls. A slower call, or a failure, is queueing upstream: the limit
+ * is multiplied by backoff-ratio, at most once per minimum latency so that one burst counts once.
+ * Calls beyond the limit wait in a bounded FIFO queue for at most max-queue-wait, then fail with SATURATED.
+ */
+public class AdaptiveLimiter {
+
+	private final UpstreamProperties.Limiter config;
+
+	private final ArrayDeque<Permit> queue = new ArrayDeque<>();
+
+	private double limit;
+	private int inFlight;
+
+	private long minLatency = Long.MAX_VALUE;
+	private long windowMinLatency = Long.MAX_VALUE;
+	private long windowEnd;
+	private long lastDecrease;
+
+	private long granted;
+	private long queued;
+	private long rejected;
+	private long timedOut;
+	private long decreases;
+
+	public AdaptiveLimiter(UpstreamProperties.Limiter config) {
+		this.config = config;
+		this.limit = config.getInitialLimit();
+		this.windowEnd = System.nanoTime() + config.getLatencyWindow().toNanos();
+	}
+
+	/*
+	 * The permit is emitted as soon as the call can go, it must be released exactly once
+	 */
+	public Mono<Permit> acquire() {
+		Mono<Permit> permit = Mono.create(sink -> {
+			Permit candidate = new Permit(sink);
+			boolean now;
+			synchronized (this) {
+				if (inFlight < (int) limit && queue.isEmpty()) {
+					inFlight++;
+					granted++;
+					now = true;
+				} else if (queue.size() < config.getMaxQueue()) {
+					queue.add(candidate);
+					queued++;
+					now = false;
+				} else {
+					rejected++;
+					sink.error(saturated());
+					return;
+				}
+			}
+			sink.onCancel(candidate::abandon);
+			if (now) {
+				candidate.grant();
+			}
+		});
+		return permit.timeout(config.getMaxQueueWait(), Mono.defer(() -> {
+			synchronized (this) {
+				timedOut++;
+			}
+			return Mono.error(saturated());
+		}));
+	}
+
+	/*
+	 * Outcome of a call that held a permit, cancelled calls don't say anything about the upstream
+	 */
+	public void onSample(long latencyNanos, boolean failed) {
+		synchronized (this) {
+			long now = System.nanoTime();
+			windowMinLatency = Math.min(windowMinLatency, latencyNanos);
+			minLatency = Math.min(minLatency, latencyNanos);
+			if (now - windowEnd > 0) {
+				minLatency = windowMinLatency;
+				windowMinLatency = Long.MAX_VALUE;
+				windowEnd = now + config.getLatencyWindow().toNanos();
+			}
+
+			if (failed || latencyNanos > minLatency * config.getLatencyTolerance()) {
+				if (now - lastDecrease > minLatency) {
+					limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+					lastDecrease = now;
+					decreases++;
+				}
+			} else if (inFlight * 2 >= (int) limit) {
+				/*
+				 * The limit grows only while it is being used
+				 */
+				limit = Math.min(config.getMaxLimit(), limit + 1 / limit);
+			}
+		}
+		drain();
+	}
+
+	public synchronized Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("limit", (int) limit);
+		snapshot.put("inFlight", inFlight);
+		snapshot.put("queueDepth", queue.size());
+		snapshot.put("minLatencyMillis", minLatency == Long.MAX_VALUE ? null : minLatency / 1_000_000.0);
+		snapshot.put("granted", granted);
+		snapshot.put("queued", queued);
+		snapshot.put("rejected", rejected);
+		snapshot.put("queueTimeouts", timedOut);
+		snapshot.put("decreases", decreases);
+		return snapshot;
+	}
+
+	private WebClientException saturated() {
+		return new WebClientException("Concurrency limit reached", ErrorType.SATURATED, config.getRetryAfter());
+	}
+
+	private void release() {
+		synchronized (this) {
+			inFlight--;
+		}
+		drain();
+	}
+
+	/*
+	 * Queued calls are granted outside the lock, a call abandoned meanwhile gives its permit back
+	 */
+	private void drain() {
+		for (;;) {
+			Permit next;
+			synchronized (this) {
+				if (inFlight >= (int) limit || queue.isEmpty()) {
+					return;
+				}
+				next = queue.poll();
+				inFlight++;
+				granted++;
+			}
+			if (!next.grant()) {
+				synchronized (this) {
+					inFlight--;
+					granted--;
+				}
+			}
+		}
+	}
+
+	private synchronized void dequeue(Permit permit) {
+		queue.remove(permit);
+	}
+
+	public class Permit {
+
+		private static final int WAITING = 0;
+		private static final int GRANTED = 1;
+		private static final int DONE = 2;
+
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+		private final MonoSink<Permit> sink;
+
+		Permit(MonoSink<Permit> sink) {
+			this.sink = sink;
+		}
+
+		/*
+		 * Idempotent, cancellation and completion of the call may both release
+		 */
+		public void release() {
+			if (state.compareAndSet(GRANTED, DONE)) {
+				AdaptiveLimiter.this.release();
+			}
+		}
+
+		boolean grant() {
+			if (!state.compareAndSet(WAITING, GRANTED)) {
+				return false;
+			}
+			sink.success(this);
+			return true;
+		}
+
+		void abandon() {
+			if (state.compareAndSet(WAITING, DONE)) {
+				dequeue(this);
+			} else {
+				release();
+			}
+		}
+	}
+}
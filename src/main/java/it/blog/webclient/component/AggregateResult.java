@@ -0,0 +1,32 @@
+package it.blog.webclient.component;
+
+import java.util.Collection;
+
+/*
+ * Merged value of the sources answering before the deadline, with the outcome of every source
+ */
+public class AggregateResult<R> {
+
+	private final R value;
+	private final Collection<SourceResult<?>> sources;
+
+	public AggregateResult(R value, Collection<SourceResult<?>> sources) {
+		this.value = value;
+		this.sources = sources;
+	}
+
+	public R getValue() {
+		return value;
+	}
+
+	public Collection<SourceResult<?>> getSources() {
+		return sources;
+	}
+
+	/*
+	 * False when the value was merged from a subset of the sources
+	 */
+	public boolean isComplete() {
+		return sources.stream().allMatch(source -> source.getStatus() == SourceResult.Status.OK);
+	}
+}
@@ -0,0 +1,59 @@
+package it.blog.webclient.component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * LRU map bounded by size, the caller decides what to do with entries older than the TTL
+ */
+public class BoundedTtlCache<K, V> {
+
+	private final Map<K, Entry<V>> entries;
+
+	public BoundedTtlCache(int maxEntries) {
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, BoundedTtlCache.Entry<V>> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public synchronized Entry<V> get(K key) {
+		return entries.get(key);
+	}
+
+	public synchronized void put(K key, V value) {
+		entries.put(key, new Entry<>(value, System.nanoTime()));
+	}
+
+	public synchronized void remove(K key) {
+		entries.remove(key);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public static class Entry<V> {
+
+		private final V value;
+		private final long storedAt;
+
+		Entry(V value, long storedAt) {
+			this.value = value;
+			this.storedAt = storedAt;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public long ageNanos() {
+			return System.nanoTime() - storedAt;
+		}
+	}
+}
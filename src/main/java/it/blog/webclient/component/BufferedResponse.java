@@ -0,0 +1,62 @@
+package it.blog.webclient.component;
+
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Status, headers and body bytes of a ClientResponse, replayable as many times as needed
+ */
+public class BufferedResponse {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final int status;
+	private final HttpHeaders headers;
+	private final byte[] body;
+	private final ExchangeStrategies strategies;
+
+	public BufferedResponse(int status, HttpHeaders headers, byte[] body, ExchangeStrategies strategies) {
+		this.status = status;
+		this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+		this.body = body;
+		this.strategies = strategies;
+	}
+
+	/*
+	 * Consume the body of the response, the connection goes back to the pool
+	 */
+	public static Mono<BufferedResponse> of(ClientResponse response) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.addAll(response.headers().asHttpHeaders());
+		return response.bodyToMono(byte[].class) //
+				.defaultIfEmpty(EMPTY) //
+				.map(body -> new BufferedResponse(response.rawStatusCode(), headers, body, response.strategies()));
+	}
+
+	/*
+	 * Fresh ClientResponse decoded with the codecs of the original one, every caller gets its own copy of the body
+	 */
+	public ClientResponse toClientResponse() {
+		return ClientResponse.create(status, strategies) //
+				.headers(target -> target.addAll(headers)) //
+				.body(Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body)))) //
+				.build();
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+}
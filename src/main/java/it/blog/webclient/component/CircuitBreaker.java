@@ -0,0 +1,129 @@
+package it.blog.webclient.component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Count based circuit breaker: the outcomes of the last window-size calls are kept in a ring.
+ * CLOSED opens when the failure rate reaches the threshold, OPEN refuses every call for open-duration,
+ * then HALF_OPEN lets half-open-probes calls through: all successful closes it, one failure opens it again.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final UpstreamProperties.Breaker config;
+
+	private final boolean[] failures;
+	private int position;
+	private int calls;
+	private int failed;
+
+	private State state = State.CLOSED;
+	private long openedAt;
+	private int probes;
+	private int probeSuccesses;
+
+	private long trips;
+	private long rejected;
+
+	public CircuitBreaker(UpstreamProperties.Breaker config) {
+		this.config = config;
+		this.failures = new boolean[config.getWindowSize()];
+	}
+
+	public synchronized boolean tryAcquire() {
+		if (state == State.OPEN) {
+			if (System.nanoTime() - openedAt < config.getOpenDuration().toNanos()) {
+				rejected++;
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probes = 0;
+			probeSuccesses = 0;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probes >= config.getHalfOpenProbes()) {
+				rejected++;
+				return false;
+			}
+			probes++;
+		}
+		return true;
+	}
+
+	public synchronized void onSuccess() {
+		if (state == State.HALF_OPEN) {
+			if (++probeSuccesses >= config.getHalfOpenProbes()) {
+				close();
+			}
+			return;
+		}
+		record(false);
+	}
+
+	public synchronized void onFailure() {
+		if (state == State.HALF_OPEN) {
+			open();
+			return;
+		}
+		record(true);
+		if (state == State.CLOSED && calls >= config.getMinimumCalls()
+				&& failed * 100.0 / calls >= config.getFailureRateThreshold()) {
+			open();
+		}
+	}
+
+	/*
+	 * Call cancelled before an outcome, its half-open probe can be used by another call
+	 */
+	public synchronized void onCancel() {
+		if (state == State.HALF_OPEN && probes > probeSuccesses) {
+			probes--;
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public synchronized Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("state", state);
+		snapshot.put("failureRate", calls == 0 ? 0.0 : failed * 100.0 / calls);
+		snapshot.put("calls", calls);
+		snapshot.put("trips", trips);
+		snapshot.put("rejected", rejected);
+		return snapshot;
+	}
+
+	private void record(boolean failure) {
+		if (calls == failures.length) {
+			if (failures[position]) {
+				failed--;
+			}
+		} else {
+			calls++;
+		}
+		failures[position] = failure;
+		if (failure) {
+			failed++;
+		}
+		position = (position + 1) % failures.length;
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openedAt = System.nanoTime();
+		trips++;
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		position = 0;
+		calls = 0;
+		failed = 0;
+	}
+}
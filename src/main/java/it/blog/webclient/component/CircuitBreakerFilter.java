@@ -0,0 +1,149 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/*
+ * Circuit breaker and adaptive response timeout for every upstream.
+ * HTTPSTATUS5XX and NETWORK outcomes (timeouts included) count as failures, HTTPSTATUS4XX don't:
+ * the upstream answered, the request was wrong. While the breaker is open calls fail with CIRCUIT_OPEN
+ * without touching the network.
+ */
+@Component
+@Order(800)
+public class CircuitBreakerFilter implements UpstreamFilter {
+
+	private static Logger log = LoggerFactory.getLogger(CircuitBreakerFilter.class);
+
+	/*
+	 * System.nanoTime() when the adaptive timeout of the call runs out, in the context of the inner filters
+	 */
+	private static final String TIMEOUT_AT = CircuitBreakerFilter.class.getName() + ".timeoutAt";
+
+	private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		if (!upstream.getBreaker().isEnabled() && !upstream.getTimeout().getAdaptive().isEnabled()) {
+			return null;
+		}
+
+		Guard guard = guards.computeIfAbsent(name, key -> new Guard(key, upstream));
+		return guard::exchange;
+	}
+
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+		guards.forEach((name, guard) -> snapshot.put(name, guard.snapshot()));
+		return snapshot;
+	}
+
+	public CircuitBreaker.State state(String name) {
+		Guard guard = guards.get(name);
+		return guard == null || guard.breaker == null ? CircuitBreaker.State.CLOSED : guard.breaker.getState();
+	}
+
+	/*
+	 * The adaptive timeout of the call in this context has run out
+	 */
+	static boolean timedOut(ContextView context) {
+		return context.<Long>getOrEmpty(TIMEOUT_AT).map(at -> System.nanoTime() - at >= 0).orElse(false);
+	}
+
+	static class Guard {
+
+		private final String name;
+		private final CircuitBreaker breaker;
+		private final UpstreamProperties.Adaptive adaptive;
+		private final WindowedLatency latency;
+
+		Guard(String name, UpstreamProperties.Upstream upstream) {
+			this.name = name;
+			this.breaker = upstream.getBreaker().isEnabled() ? new CircuitBreaker(upstream.getBreaker()) : null;
+			this.adaptive = upstream.getTimeout().getAdaptive();
+			this.latency = new WindowedLatency(adaptive.getWindow());
+		}
+
+		Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next) {
+			if (breaker != null && !breaker.tryAcquire()) {
+				return Mono.error(new WebClientException("Circuit breaker open for upstream " + name,
+						ErrorType.CIRCUIT_OPEN));
+			}
+
+			return Mono.defer(() -> {
+				long start = System.nanoTime();
+				Mono<ClientResponse> exchange = next.exchange(request);
+				if (adaptive.isEnabled()) {
+					Duration timeout = timeout();
+					exchange = exchange.timeout(timeout).contextWrite(context -> context.put(TIMEOUT_AT,
+							start + timeout.toNanos()));
+				}
+				return exchange //
+						.doOnNext(response -> {
+							latency.record(System.nanoTime() - start);
+							onOutcome(ErrorType.of(response.rawStatusCode()));
+						}) //
+						.doOnError(error -> {
+							log.info("Upstream {} failed: {}", name, error.toString());
+							onOutcome(ErrorType.NETWORK);
+						}) //
+						.doOnCancel(() -> {
+							if (breaker != null) {
+								breaker.onCancel();
+							}
+						});
+			});
+		}
+
+		/*
+		 * percentile of the recent latency times multiplier, within min and max
+		 */
+		Duration timeout() {
+			if (latency.count() < adaptive.getMinSamples()) {
+				return adaptive.getMax();
+			}
+			Duration timeout = Duration.ofNanos(
+					(long) (latency.percentile(adaptive.getPercentile()).toNanos() * adaptive.getMultiplier()));
+			if (timeout.compareTo(adaptive.getMin()) < 0) {
+				return adaptive.getMin();
+			}
+			return timeout.compareTo(adaptive.getMax()) > 0 ? adaptive.getMax() : timeout;
+		}
+
+		private void onOutcome(ErrorType type) {
+			if (breaker == null) {
+				return;
+			}
+			if (type == ErrorType.HTTPSTATUS5XX || type == ErrorType.NETWORK) {
+				breaker.onFailure();
+			} else {
+				breaker.onSuccess();
+			}
+		}
+
+		Map<String, Object> snapshot() {
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			if (breaker != null) {
+				snapshot.putAll(breaker.snapshot());
+			}
+			if (adaptive.isEnabled()) {
+				snapshot.put("timeoutMillis", timeout().toMillis());
+			}
+			return snapshot;
+		}
+	}
+}
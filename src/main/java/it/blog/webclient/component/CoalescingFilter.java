@@ -0,0 +1,169 @@
+package it.blog.webclient.component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/*
+ * Single-flight for GET: concurrent requests with the same method, URI and key headers share one upstream call.
+ * The body is buffered once and every subscriber decodes its own copy, so callers can modify their Greeting.
+ * A subscriber cancelling leaves the others untouched, the upstream call is cancelled with the last one.
+ * The call belongs to no caller: it runs without the Deadline of the first one, each caller is bounded by its
+ * own in DeadlineFilter. Once it ends the next request starts a new one.
+ */
+@Component
+@Order(500)
+public class CoalescingFilter implements UpstreamFilter {
+
+	private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		UpstreamProperties.Coalescing config = upstream.getCoalescing();
+		if (!config.isEnabled()) {
+			return null;
+		}
+
+		Map<String, Flight> inflight = new ConcurrentHashMap<>();
+		Stats counters = stats.computeIfAbsent(name, key -> new Stats());
+
+		return (request, next) -> {
+			if (request.method() != HttpMethod.GET) {
+				return next.exchange(request);
+			}
+
+			counters.requests.increment();
+
+			String key = key(request, config.getKeyHeaders());
+			return Mono.deferContextual(context -> {
+				Flight[] started = new Flight[1];
+				Flight flight = inflight.compute(key, (k, current) -> {
+					if (current != null && current.join()) {
+						return current;
+					}
+					started[0] = new Flight();
+					return started[0];
+				});
+
+				if (started[0] != null) {
+					ClientRequest shared = ClientRequest.from(request)
+							.headers(headers -> headers.remove(Deadline.HEADER)).build();
+					flight.started(Mono.defer(() -> {
+						counters.upstream.increment();
+						return next.exchange(shared);
+					}) //
+							.flatMap(BufferedResponse::of) //
+							.doOnEach(signal -> flight.end(() -> inflight.remove(key, flight))) //
+							.contextWrite(Deadline.without(context)) //
+							.subscribe(flight.response::tryEmitValue, flight.response::tryEmitError,
+									flight.response::tryEmitEmpty));
+				}
+
+				return flight.response.asMono() //
+						.doOnCancel(() -> flight.leave(() -> inflight.remove(key, flight)));
+			}).map(BufferedResponse::toClientResponse);
+		};
+	}
+
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+		stats.forEach((name, counters) -> snapshot.put(name, counters.snapshot()));
+		return snapshot;
+	}
+
+	private String key(ClientRequest request, List<String> keyHeaders) {
+		StringBuilder key = new StringBuilder(request.method().name()).append(' ').append(request.url());
+		for (String header : keyHeaders) {
+			key.append('\n').append(header).append(':').append(request.headers().get(header));
+		}
+		return key.toString();
+	}
+
+	/*
+	 * One upstream call and its subscribers. Over once it ends or its last subscriber cancels: no one joins
+	 * it afterwards.
+	 */
+	private static class Flight {
+
+		private final Sinks.One<BufferedResponse> response = Sinks.one();
+		private int subscribers = 1;
+		private boolean over;
+		private Disposable call;
+
+		synchronized boolean join() {
+			if (over) {
+				return false;
+			}
+			subscribers++;
+			return true;
+		}
+
+		void started(Disposable call) {
+			boolean cancelled;
+			synchronized (this) {
+				cancelled = over;
+				this.call = call;
+			}
+			if (cancelled) {
+				call.dispose();
+			}
+		}
+
+		void leave(Runnable forget) {
+			Disposable cancel;
+			synchronized (this) {
+				if (over || --subscribers > 0) {
+					return;
+				}
+				over = true;
+				cancel = call;
+			}
+			forget.run();
+			if (cancel != null) {
+				cancel.dispose();
+			}
+		}
+
+		/*
+		 * Forgotten before the subscribers get the outcome: a request arriving afterwards starts a new call
+		 */
+		void end(Runnable forget) {
+			synchronized (this) {
+				over = true;
+			}
+			forget.run();
+		}
+	}
+
+	static class Stats {
+
+		final LongAdder requests = new LongAdder();
+		final LongAdder upstream = new LongAdder();
+
+		Map<String, Object> snapshot() {
+			long requestCount = requests.sum();
+			long upstreamCount = upstream.sum();
+
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("requests", requestCount);
+			snapshot.put("upstreamCalls", upstreamCount);
+			/*
+			 * Requests served by each upstream call, 1.0 means nothing was coalesced
+			 */
+			snapshot.put("fanInRatio", upstreamCount == 0 ? 1.0 : (double) requestCount / upstreamCount);
+			return snapshot;
+		}
+	}
+}
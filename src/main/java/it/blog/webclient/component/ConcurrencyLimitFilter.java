@@ -0,0 +1,60 @@
+package it.blog.webclient.component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.publisher.Mono;
+
+/*
+ * Bulkhead of every upstream, see AdaptiveLimiter. Inside retries and hedging, every attempt needs a permit;
+ * outside the circuit breaker, so the queue wait doesn't count against the adaptive timeout.
+ * HTTPSTATUS5XX and NETWORK outcomes shrink the limit, like latency beyond tolerance. The permit is held
+ * until the response headers.
+ */
+@Component
+@Order(750)
+public class ConcurrencyLimitFilter implements UpstreamFilter {
+
+	private final Map<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		if (!upstream.getLimiter().isEnabled()) {
+			return null;
+		}
+
+		AdaptiveLimiter limiter = limiters.computeIfAbsent(name, key -> new AdaptiveLimiter(upstream.getLimiter()));
+
+		return (request, next) -> limiter.acquire().flatMap(permit -> Mono.defer(() -> {
+			long start = System.nanoTime();
+			return next.exchange(request) //
+					.doOnNext(response -> limiter.onSample(System.nanoTime() - start,
+							ErrorType.of(response.rawStatusCode()) == ErrorType.HTTPSTATUS5XX)) //
+					.doOnError(error -> {
+						if (!isRefused(error)) {
+							limiter.onSample(System.nanoTime() - start, true);
+						}
+					}) //
+					.doFinally(signal -> permit.release());
+		}));
+	}
+
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+		limiters.forEach((name, limiter) -> snapshot.put(name, limiter.snapshot()));
+		return snapshot;
+	}
+
+	/*
+	 * An open breaker refuses the call before the network, its latency says nothing about the upstream
+	 */
+	private static boolean isRefused(Throwable error) {
+		return error instanceof WebClientException
+				&& ((WebClientException) error).getType() == ErrorType.CIRCUIT_OPEN;
+	}
+}
@@ -0,0 +1,286 @@
+package it.blog.webclient.component;
+
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpResponse;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+/*
+ * The ConnectionProvider of every upstream, behind a connector that can be swapped: resize builds a new pool
+ * with the new limits and the WebClient, with its filters, stays the same. The next calls acquire from the new
+ * pool, the old one is disposed once its pending acquisitions had pending-acquire-timeout to complete: the
+ * connections still in use are closed when released.
+ * Pool gauges come from the MeterRegistrar of Reactor Netty, one for each replica, without Micrometer.
+ */
+@Component
+public class ConnectionPools {
+
+	private static Logger log = LoggerFactory.getLogger(ConnectionPools.class);
+
+	private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+	/*
+	 * customizer completes the HttpClient of each new pool: protocols, timeouts, instrumentation
+	 */
+	public ClientHttpConnector register(String name, UpstreamProperties.Upstream upstream,
+			UnaryOperator<HttpClient> customizer) {
+		UpstreamProperties.Pool pool = upstream.getPool();
+		UpstreamProperties.Http http = upstream.getHttp();
+
+		Limits limits = new Limits();
+		limits.setMaxConnections(h2(upstream) ? http.getH2MaxConnections() : pool.getMaxConnections());
+		limits.setPendingAcquireMaxCount(pool.getPendingAcquireMaxCount());
+
+		return pools.computeIfAbsent(name, key -> new Pool(key, upstream, customizer, limits)).connector;
+	}
+
+	public Limits limits(String name) {
+		Pool pool = pools.get(name);
+		return pool == null ? null : pool.current.limits;
+	}
+
+	/*
+	 * false for an unknown upstream, IllegalArgumentException for limits below 1
+	 */
+	public boolean resize(String name, Limits limits) {
+		Pool pool = pools.get(name);
+		if (pool == null) {
+			return false;
+		}
+		if (limits.getMaxConnections() < 1 || limits.getPendingAcquireMaxCount() < 1) {
+			throw new IllegalArgumentException("maxConnections and pendingAcquireMaxCount must be 1 or more");
+		}
+		pool.resize(limits);
+		return true;
+	}
+
+	/*
+	 * Acquisitions since the previous call, for PoolTuner
+	 */
+	LatencyHistogram recentAcquire(String name) {
+		Pool pool = pools.get(name);
+		if (pool == null) {
+			return new LatencyHistogram();
+		}
+		LatencyHistogram recent = pool.recentAcquire;
+		pool.recentAcquire = new LatencyHistogram();
+		return recent;
+	}
+
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+		pools.forEach((name, pool) -> snapshot.put(name, pool.snapshot()));
+		return snapshot;
+	}
+
+	@PreDestroy
+	public void destroy() {
+		pools.values().forEach(pool -> pool.generations.forEach(generation -> generation.provider.dispose()));
+	}
+
+	private static boolean h2(UpstreamProperties.Upstream upstream) {
+		return upstream.getHttp().getProtocols().contains(HttpProtocol.H2C);
+	}
+
+	/*
+	 * Connection limits of a pool, the body of PUT /admin/upstreams/{name}/pool
+	 */
+	@Data
+	public static class Limits {
+
+		/*
+		 * h2-max-connections with H2C
+		 */
+		private int maxConnections;
+
+		private int pendingAcquireMaxCount;
+	}
+
+	private static class Pool {
+
+		private final String name;
+		private final UpstreamProperties.Upstream upstream;
+		private final UnaryOperator<HttpClient> customizer;
+		private final SwappableConnector connector;
+
+		private volatile Generation current;
+		private final Set<Generation> generations = ConcurrentHashMap.newKeySet();
+
+		private final LatencyHistogram acquire = new LatencyHistogram();
+		private volatile LatencyHistogram recentAcquire = new LatencyHistogram();
+		private final LatencyHistogram lifetime = new LatencyHistogram();
+		private final LongAdder opened = new LongAdder();
+		private final LongAdder closed = new LongAdder();
+		private final LongAdder resizes = new LongAdder();
+
+		Pool(String name, UpstreamProperties.Upstream upstream, UnaryOperator<HttpClient> customizer, Limits limits) {
+			this.name = name;
+			this.upstream = upstream;
+			this.customizer = customizer;
+			this.current = generation(limits);
+			this.connector = new SwappableConnector(current.connector);
+		}
+
+		synchronized void resize(Limits limits) {
+			Generation previous = current;
+			current = generation(limits);
+			connector.delegate = current.connector;
+			resizes.increment();
+
+			Mono.delay(upstream.getPool().getPendingAcquireTimeout()) //
+					.then(previous.provider.disposeLater()) //
+					.doFinally(signal -> generations.remove(previous)) //
+					.subscribe(null, error -> log.debug("Disposal of a pool of {} failed: {}", name, error.toString()));
+
+			log.info("Pool of {} resized: {} max connections, {} pending acquisitions", name,
+					limits.getMaxConnections(), limits.getPendingAcquireMaxCount());
+		}
+
+		private Generation generation(Limits limits) {
+			UpstreamProperties.Pool pool = upstream.getPool();
+			UpstreamProperties.Http http = upstream.getHttp();
+			Generation generation = new Generation(limits);
+
+			ConnectionProvider.Builder builder = ConnectionProvider.builder(name) //
+					.maxConnections(h2(upstream) ? pool.getMaxConnections() : limits.getMaxConnections()) //
+					.pendingAcquireMaxCount(limits.getPendingAcquireMaxCount()) //
+					.pendingAcquireTimeout(pool.getPendingAcquireTimeout()) //
+					.maxIdleTime(pool.getMaxIdleTime()) //
+					.maxLifeTime(pool.getMaxLifeTime()) //
+					.evictInBackground(pool.getEvictInBackground()) //
+					.metrics(true, () -> generation);
+			/*
+			 * Without it the HTTP/2 pool opens a connection for each call arriving before the first one is up
+			 */
+			if (h2(upstream)) {
+				builder.allocationStrategy(Http2AllocationStrategy.builder() //
+						.maxConnections(limits.getMaxConnections()) //
+						.maxConcurrentStreams(http.getH2MaxConcurrentStreams()) //
+						.build());
+			}
+			generation.provider = builder.build();
+
+			HttpClient httpClient = customizer.apply(HttpClient.create(generation.provider)) //
+					.doOnChannelInit((observer, channel, address) -> {
+						long start = System.nanoTime();
+						opened.increment();
+						channel.closeFuture().addListener(future -> {
+							closed.increment();
+							lifetime.record(System.nanoTime() - start);
+						});
+					}) //
+					.doOnRequest((request, connection) -> request.currentContextView()
+							.<Long>getOrEmpty(HttpMetricsFilter.ACQUIRE_START).ifPresent(start -> {
+								long nanos = System.nanoTime() - start;
+								acquire.record(nanos);
+								recentAcquire.record(nanos);
+							}));
+			generation.connector = new ReactorClientHttpConnector(httpClient);
+
+			generations.add(generation);
+			return generation;
+		}
+
+		Map<String, Object> snapshot() {
+			int active = 0;
+			int idle = 0;
+			int allocated = 0;
+			int pending = 0;
+			for (Generation generation : generations) {
+				for (ConnectionPoolMetrics metrics : generation.metrics.values()) {
+					active += metrics.acquiredSize();
+					idle += metrics.idleSize();
+					allocated += metrics.allocatedSize();
+					pending += metrics.pendingAcquireSize();
+				}
+			}
+
+			Map<String, Object> connections = new LinkedHashMap<>();
+			connections.put("opened", opened.sum());
+			connections.put("closed", closed.sum());
+			connections.put("lifetime", UpstreamMetrics.summary(lifetime));
+
+			Limits limits = current.limits;
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("maxConnections", limits.getMaxConnections());
+			snapshot.put("pendingAcquireMaxCount", limits.getPendingAcquireMaxCount());
+			snapshot.put("resizes", resizes.sum());
+			snapshot.put("retiringPools", generations.size() - 1);
+			snapshot.put("active", active);
+			snapshot.put("idle", idle);
+			snapshot.put("allocated", allocated);
+			snapshot.put("pendingAcquire", pending);
+			snapshot.put("acquire", UpstreamMetrics.summary(acquire));
+			snapshot.put("connections", connections);
+			return snapshot;
+		}
+	}
+
+	/*
+	 * One ConnectionProvider with its limits, and the gauges of its pools (one for each replica)
+	 */
+	private static class Generation implements ConnectionProvider.MeterRegistrar {
+
+		private final Limits limits;
+		private final Map<String, ConnectionPoolMetrics> metrics = new ConcurrentHashMap<>();
+		private ConnectionProvider provider;
+		private ClientHttpConnector connector;
+
+		Generation(Limits limits) {
+			this.limits = limits;
+		}
+
+		@Override
+		public void registerMetrics(String poolName, String id, SocketAddress remoteAddress,
+				ConnectionPoolMetrics metrics) {
+			this.metrics.put(id, metrics);
+		}
+
+		@Override
+		public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+			metrics.remove(id);
+		}
+	}
+
+	/*
+	 * Every call, each retry and hedge included, goes to the connector of the current pool
+	 */
+	private static class SwappableConnector implements ClientHttpConnector {
+
+		private volatile ClientHttpConnector delegate;
+
+		SwappableConnector(ClientHttpConnector delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Mono<ClientHttpResponse> connect(HttpMethod method, URI uri,
+				Function<? super ClientHttpRequest, Mono<Void>> requestCallback) {
+			return Mono.defer(() -> delegate.connect(method, uri, requestCallback));
+		}
+	}
+}
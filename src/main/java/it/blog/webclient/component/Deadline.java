@@ -0,0 +1,75 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/*
+ * Time left to answer an inbound request, shared by all its upstream calls through the Reactor context.
+ * When it runs out the calls fail with DEADLINE_EXCEEDED, when the caller goes away they are cancelled:
+ * either way their pooled connections are released at once instead of at the upstream timeouts.
+ */
+public class Deadline {
+
+	/*
+	 * Milliseconds left, read from the inbound requests and sent with every upstream call
+	 */
+	public static final String HEADER = "X-Request-Timeout";
+
+	private static final Class<Deadline> KEY = Deadline.class;
+
+	private final long expiresAt;
+
+	private final Sinks.One<Boolean> abandoned = Sinks.one();
+
+	private Deadline(long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
+	public static Deadline after(Duration timeout) {
+		return new Deadline(System.nanoTime() + timeout.toNanos());
+	}
+
+	public Duration remaining() {
+		return Duration.ofNanos(Math.max(0, expiresAt - System.nanoTime()));
+	}
+
+	/*
+	 * The caller is gone: the calls still running are cancelled, the next ones are not started
+	 */
+	public void abandon() {
+		abandoned.tryEmitValue(Boolean.TRUE);
+	}
+
+	/*
+	 * source with the deadline in its context, failing when the time is up and cancelled when the caller goes
+	 * away. A null deadline leaves the source as it is
+	 */
+	public static <T> Mono<T> bound(Deadline deadline, Mono<T> source) {
+		if (deadline == null) {
+			return source;
+		}
+		return Mono.defer(() -> source.timeout(deadline.remaining(), Mono.error(Deadline::exceeded))) //
+				.takeUntilOther(deadline.abandoned.asMono()) //
+				.contextWrite(Context.of(KEY, deadline));
+	}
+
+	static Optional<Deadline> of(ContextView context) {
+		return context.getOrEmpty(KEY);
+	}
+
+	/*
+	 * context without the deadline, for a call shared by callers with their own
+	 */
+	static Context without(ContextView context) {
+		return Context.of(context).delete(KEY);
+	}
+
+	static WebClientException exceeded() {
+		return new WebClientException("Deadline exceeded", ErrorType.DEADLINE_EXCEEDED);
+	}
+}
@@ -0,0 +1,37 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.publisher.Mono;
+
+/*
+ * Outermost: the Deadline of the caller bounds the call with its retries and hedges, and is sent to the
+ * upstream as the milliseconds left. A call without time left is not sent at all.
+ * Calls outside Deadline.bound are left as they are.
+ */
+@Component
+@Order(100)
+public class DeadlineFilter implements UpstreamFilter {
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		return (request, next) -> Mono.deferContextual(context -> {
+			Deadline deadline = Deadline.of(context).orElse(null);
+			if (deadline == null) {
+				return next.exchange(request);
+			}
+			Duration remaining = deadline.remaining();
+			if (remaining.isZero()) {
+				return Mono.error(Deadline.exceeded());
+			}
+			ClientRequest bounded = ClientRequest.from(request)
+					.headers(headers -> headers.set(Deadline.HEADER, String.valueOf(remaining.toMillis()))).build();
+			return next.exchange(bounded).timeout(remaining, Mono.error(Deadline::exceeded));
+		});
+	}
+}
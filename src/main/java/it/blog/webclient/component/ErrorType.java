@@ -1,5 +1,30 @@
 package it.blog.webclient.component;
 
 public enum ErrorType {
-	HTTPSTATUS4XX, HTTPSTATUS5XX, NETWORK
+	HTTPSTATUS4XX, HTTPSTATUS5XX, NETWORK,
+	/*
+	 * Call refused without reaching the upstream, its circuit breaker is open
+	 */
+	CIRCUIT_OPEN,
+	/*
+	 * Call refused without reaching the upstream, its concurrency limit and wait queue are full
+	 */
+	SATURATED,
+	/*
+	 * Call refused or cancelled, the Deadline of the inbound request ran out
+	 */
+	DEADLINE_EXCEEDED;
+
+	/*
+	 * null for the status codes that are not errors
+	 */
+	public static ErrorType of(int status) {
+		if (status >= 500) {
+			return HTTPSTATUS5XX;
+		}
+		if (status >= 400) {
+			return HTTPSTATUS4XX;
+		}
+		return null;
+	}
 }
@@ -0,0 +1,77 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Calls N upstream resources with at most concurrency calls in flight.
+ * When the deadline expires the calls still running are cancelled, and the sources answered so far are merged.
+ */
+@Component
+public class FanOutAggregator {
+
+	private static Logger log = LoggerFactory.getLogger(FanOutAggregator.class);
+
+	@Autowired
+	WebClientRegistry webClients;
+
+	/*
+	 * merge receives the values of the successful sources by name, in the order of resources
+	 */
+	public <T, R> Mono<AggregateResult<R>> aggregate(List<UpstreamResource<? extends T>> resources,
+			Function<Map<String, T>, R> merge, int concurrency, Duration deadline) {
+
+		return Flux.fromIterable(resources) //
+				.flatMap(this::<T>call, concurrency) //
+				.take(deadline) //
+				.collectMap(SourceResult::getName) //
+				.map(results -> {
+					Map<String, T> values = new LinkedHashMap<>();
+					List<SourceResult<?>> sources = new ArrayList<>();
+
+					for (UpstreamResource<? extends T> resource : resources) {
+						SourceResult<T> result = results.get(resource.getName());
+						if (result == null) {
+							log.info("Source {} missed the deadline of {}", resource.getName(), deadline);
+							result = SourceResult.timedOut(resource.getName());
+						}
+						if (result.getStatus() == SourceResult.Status.OK) {
+							values.put(resource.getName(), result.getValue());
+						}
+						sources.add(result);
+					}
+
+					return new AggregateResult<>(merge.apply(values), sources);
+				});
+	}
+
+	private <T> Mono<SourceResult<T>> call(UpstreamResource<? extends T> resource) {
+		return Mono.defer(() -> {
+			long start = System.nanoTime();
+			return webClients.get(resource.getUpstream()).get().uri(resource.getPath()).retrieve() //
+					.bodyToMono(resource.getType()) //
+					.<SourceResult<T>>map(value -> SourceResult.ok(resource.getName(), value, elapsed(start))) //
+					.switchIfEmpty(Mono.fromSupplier(() -> SourceResult.ok(resource.getName(), null, elapsed(start)))) //
+					.onErrorResume(error -> {
+						log.info("Source {} failed: {}", resource.getName(), error.getMessage());
+						return Mono.just(SourceResult.failed(resource.getName(), error, elapsed(start)));
+					});
+		});
+	}
+
+	private static long elapsed(long start) {
+		return Duration.ofNanos(System.nanoTime() - start).toMillis();
+	}
+}
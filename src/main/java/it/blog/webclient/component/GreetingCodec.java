@@ -0,0 +1,128 @@
+package it.blog.webclient.component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.http.codec.CodecConfigurer;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.blog.webclient.Greeting;
+
+/*
+ * Greeting to and from JSON with the Jackson streaming API: field names are serialized once, no reflection
+ * and no databinding. Same JSON as databinding, nulls included, unknown fields skipped.
+ * Registered as WebClient codec here, and as MVC converter by GreetingHttpMessageConverter.
+ */
+@Component
+public class GreetingCodec implements CodecCustomizer {
+
+	static final String MESSAGE_NAME = "message";
+	static final String FROM_NAME = "from";
+
+	private static final SerializedString MESSAGE = new SerializedString(MESSAGE_NAME);
+	private static final SerializedString FROM = new SerializedString(FROM_NAME);
+
+	private final JsonFactory factory;
+
+	public GreetingCodec(ObjectMapper objectMapper) {
+		this.factory = objectMapper.getFactory();
+	}
+
+	@Override
+	public void customize(CodecConfigurer configurer) {
+		configurer.customCodecs().registerWithDefaultConfig(new GreetingEncoder(this));
+		configurer.customCodecs().registerWithDefaultConfig(new GreetingDecoder(this));
+	}
+
+	public void write(Greeting greeting, JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeFieldName(MESSAGE);
+		generator.writeString(greeting.getMessage());
+		generator.writeFieldName(FROM);
+		generator.writeString(greeting.getFrom());
+		generator.writeEndObject();
+	}
+
+	/*
+	 * The parser is on the START_OBJECT of the greeting, and is left on its END_OBJECT
+	 */
+	public Greeting read(JsonParser parser) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			throw new JsonParseException(parser, "Greeting expected, found " + parser.currentToken());
+		}
+		String message = null;
+		String from = null;
+		String name;
+		while ((name = parser.nextFieldName()) != null) {
+			JsonToken value = parser.nextToken();
+			if (MESSAGE_NAME.equals(name)) {
+				message = text(parser, value);
+			} else if (FROM_NAME.equals(name)) {
+				from = text(parser, value);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return new Greeting(message, from);
+	}
+
+	public void write(Greeting greeting, OutputStream out) throws IOException {
+		try (JsonGenerator generator = generator(out)) {
+			write(greeting, generator);
+		}
+	}
+
+	public Greeting read(InputStream in) throws IOException {
+		try (JsonParser parser = parser(in)) {
+			parser.nextToken();
+			return read(parser);
+		}
+	}
+
+	public byte[] toBytes(Greeting greeting) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+		write(greeting, out);
+		return out.toByteArray();
+	}
+
+	public Greeting fromBytes(byte[] bytes) throws IOException {
+		try (JsonParser parser = factory.createParser(bytes)) {
+			parser.nextToken();
+			return read(parser);
+		}
+	}
+
+	/*
+	 * Parsers and generators leave the stream open, its owner closes it
+	 */
+	public JsonParser parser(InputStream in) throws IOException {
+		return factory.createParser(in).disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+	}
+
+	public JsonGenerator generator(OutputStream out) throws IOException {
+		return factory.createGenerator(out, JsonEncoding.UTF8).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	}
+
+	/*
+	 * Scalars are coerced to text as databinding does, objects and arrays are skipped
+	 */
+	private static String text(JsonParser parser, JsonToken value) throws IOException {
+		if (value.isScalarValue()) {
+			return parser.getValueAsString();
+		}
+		parser.skipChildren();
+		return null;
+	}
+}
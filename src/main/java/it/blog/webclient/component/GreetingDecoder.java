@@ -0,0 +1,74 @@
+package it.blog.webclient.component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import it.blog.webclient.Greeting;
+import reactor.core.publisher.Flux;
+
+/*
+ * application/json only: the body is joined up to maxInMemorySize, then read as one object or an array.
+ * NDJSON streams are left to the Jackson decoder.
+ */
+public class GreetingDecoder extends AbstractDataBufferDecoder<Greeting> {
+
+	private final GreetingCodec codec;
+
+	public GreetingDecoder(GreetingCodec codec) {
+		super(MimeTypeUtils.APPLICATION_JSON);
+		this.codec = codec;
+	}
+
+	@Override
+	public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+		return Greeting.class == elementType.toClass() && super.canDecode(elementType, mimeType);
+	}
+
+	@Override
+	public Flux<Greeting> decode(Publisher<DataBuffer> input, ResolvableType elementType, MimeType mimeType,
+			Map<String, Object> hints) {
+		return DataBufferUtils.join(input, getMaxInMemorySize()).flatMapIterable(this::decodeAll);
+	}
+
+	@Override
+	public Greeting decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType,
+			Map<String, Object> hints) {
+		try (InputStream in = buffer.asInputStream(true)) {
+			return codec.read(in);
+		} catch (IOException e) {
+			throw new DecodingException("Could not decode Greeting", e);
+		}
+	}
+
+	private List<Greeting> decodeAll(DataBuffer buffer) {
+		List<Greeting> greetings = new ArrayList<>();
+		try (InputStream in = buffer.asInputStream(true); JsonParser parser = codec.parser(in)) {
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.START_ARRAY) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					greetings.add(codec.read(parser));
+				}
+			} else if (token != null) {
+				greetings.add(codec.read(parser));
+			}
+			return greetings;
+		} catch (IOException e) {
+			throw new DecodingException("Could not decode Greeting", e);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package it.blog.webclient.component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import it.blog.webclient.Greeting;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * application/json only: a Mono is one object, a Flux is a JSON array
+ */
+public class GreetingEncoder extends AbstractEncoder<Greeting> {
+
+	private final GreetingCodec codec;
+
+	public GreetingEncoder(GreetingCodec codec) {
+		super(MimeTypeUtils.APPLICATION_JSON);
+		this.codec = codec;
+	}
+
+	@Override
+	public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+		return Greeting.class == elementType.toClass() && super.canEncode(elementType, mimeType);
+	}
+
+	@Override
+	public Flux<DataBuffer> encode(Publisher<? extends Greeting> inputStream, DataBufferFactory bufferFactory,
+			ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+
+		if (inputStream instanceof Mono) {
+			return Mono.from(inputStream).map(greeting -> encode(greeting, bufferFactory, null)).flux();
+		}
+		return Flux.from(inputStream).index()
+				.map(indexed -> encode(indexed.getT2(), bufferFactory, indexed.getT1() == 0 ? '[' : ','))
+				.switchIfEmpty(Mono.fromSupplier(() -> bytes(bufferFactory, '[')))
+				.concatWith(Mono.fromSupplier(() -> bytes(bufferFactory, ']')));
+	}
+
+	@Override
+	public DataBuffer encodeValue(Greeting greeting, DataBufferFactory bufferFactory, ResolvableType valueType,
+			MimeType mimeType, Map<String, Object> hints) {
+		return encode(greeting, bufferFactory, null);
+	}
+
+	/*
+	 * before is the array opening or separator, if any
+	 */
+	private DataBuffer encode(Greeting greeting, DataBufferFactory bufferFactory, Character before) {
+		DataBuffer buffer = bufferFactory.allocateBuffer(64);
+		boolean release = true;
+		try (OutputStream out = buffer.asOutputStream()) {
+			if (before != null) {
+				out.write(before);
+			}
+			codec.write(greeting, out);
+			release = false;
+			return buffer;
+		} catch (IOException e) {
+			throw new EncodingException("Could not encode " + greeting, e);
+		} finally {
+			if (release) {
+				DataBufferUtils.release(buffer);
+			}
+		}
+	}
+
+	private static DataBuffer bytes(DataBufferFactory bufferFactory, char c) {
+		return bufferFactory.allocateBuffer(1).write((byte) c);
+	}
+}
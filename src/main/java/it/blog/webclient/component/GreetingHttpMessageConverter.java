@@ -0,0 +1,50 @@
+package it.blog.webclient.component;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import it.blog.webclient.Greeting;
+
+/*
+ * GreetingCodec for Spring MVC and RestTemplate. As a bean it is placed by Spring Boot ahead of the
+ * Jackson converter, which still serves every other type.
+ */
+@Component
+public class GreetingHttpMessageConverter extends AbstractHttpMessageConverter<Greeting> {
+
+	private final GreetingCodec codec;
+
+	public GreetingHttpMessageConverter(GreetingCodec codec) {
+		super(MediaType.APPLICATION_JSON);
+		this.codec = codec;
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return Greeting.class == clazz;
+	}
+
+	@Override
+	protected Greeting readInternal(Class<? extends Greeting> clazz, HttpInputMessage inputMessage)
+			throws IOException {
+		try {
+			return codec.read(inputMessage.getBody());
+		} catch (JsonProcessingException e) {
+			throw new HttpMessageNotReadableException("Could not read Greeting: " + e.getOriginalMessage(), e,
+					inputMessage);
+		}
+	}
+
+	@Override
+	protected void writeInternal(Greeting greeting, HttpOutputMessage outputMessage) throws IOException {
+		codec.write(greeting, outputMessage.getBody());
+	}
+}
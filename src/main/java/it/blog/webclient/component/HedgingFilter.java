@@ -0,0 +1,182 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/*
+ * Hedged GETs: when the upstream hasn't answered within the configured percentile of its recent latency,
+ * a second identical request is sent and the first response wins. The other request is not cancelled, a cancel
+ * racing its response can leak the response buffers: it runs to the end (or to its timeout) and its body is
+ * released. Both are cancelled only with the caller. A failed request leaves the outcome to the other one, the
+ * error goes downstream only when both failed. Hedges are capped by a token budget.
+ * The delay is recomputed from the latency every REFRESH, not on every request.
+ */
+@Component
+@Order(700)
+public class HedgingFilter implements UpstreamFilter {
+
+	static final Duration REFRESH = Duration.ofMillis(100);
+
+	private final Map<String, Hedger> hedgers = new ConcurrentHashMap<>();
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		UpstreamProperties.Hedging config = upstream.getHedging();
+		if (!config.isEnabled()) {
+			return null;
+		}
+
+		Hedger hedger = hedgers.computeIfAbsent(name, key -> new Hedger(config));
+		return hedger::exchange;
+	}
+
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+		hedgers.forEach((name, hedger) -> snapshot.put(name, hedger.snapshot()));
+		return snapshot;
+	}
+
+	static class Hedger {
+
+		private final UpstreamProperties.Hedging config;
+		private final WindowedLatency latency;
+		private final TokenBudget budget;
+
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder fired = new LongAdder();
+		private final LongAdder won = new LongAdder();
+
+		private final AtomicLong refreshed = new AtomicLong(System.nanoTime() - REFRESH.toNanos());
+		private volatile Duration delay;
+
+		Hedger(UpstreamProperties.Hedging config) {
+			this.config = config;
+			this.latency = new WindowedLatency(config.getWindow());
+			this.budget = new TokenBudget(config.getBudgetPercent() / 100.0, config.getBudgetBurst());
+			this.delay = config.getMaxDelay();
+		}
+
+		Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next) {
+			if (request.method() != HttpMethod.GET) {
+				return next.exchange(request);
+			}
+
+			requests.increment();
+			budget.deposit();
+
+			AtomicBoolean decided = new AtomicBoolean();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Sinks.One<Boolean> failed = Sinks.one();
+			Sinks.One<Boolean> cancelled = Sinks.one();
+
+			Mono<ClientResponse> primary = timed(next.exchange(request)) //
+					.flatMap(response -> decide(response, decided)) //
+					.onErrorResume(error -> {
+						failure.set(error);
+						failed.tryEmitValue(true);
+						return Mono.empty();
+					});
+
+			Mono<ClientResponse> hedge = Mono.delay(delay()) //
+					/*
+					 * No hedge after a failed primary request, retries are up to the RetryFilter
+					 */
+					.takeUntilOther(failed.asMono()) //
+					.flatMap(tick -> {
+						if (decided.get() || !budget.tryAcquire()) {
+							return Mono.empty();
+						}
+						fired.increment();
+						return timed(next.exchange(request)) //
+								.flatMap(response -> decide(response, decided)) //
+								.doOnNext(response -> won.increment()) //
+								.onErrorResume(error -> {
+									failure.compareAndSet(null, error);
+									return Mono.empty();
+								});
+					});
+
+			/*
+			 * Neither request answered: the error of the primary one, or of the hedge when the primary is
+			 * still to fail
+			 */
+			return Mono.firstWithValue(detached(primary, cancelled), detached(hedge, cancelled)) //
+					.onErrorResume(NoSuchElementException.class,
+							error -> Mono.error(failure.get() != null ? failure.get() : error))
+					.doOnCancel(() -> cancelled.tryEmitValue(true));
+		}
+
+		/*
+		 * The request goes on when firstWithValue drops it for the other one, and stops when the caller cancels
+		 */
+		private static Mono<ClientResponse> detached(Mono<ClientResponse> request, Sinks.One<Boolean> cancelled) {
+			return request.takeUntilOther(cancelled.asMono()).cache();
+		}
+
+		Duration delay() {
+			long last = refreshed.get();
+			long now = System.nanoTime();
+			if (now - last >= REFRESH.toNanos() && refreshed.compareAndSet(last, now)) {
+				delay = percentileDelay();
+			}
+			return delay;
+		}
+
+		private Duration percentileDelay() {
+			if (latency.count() < config.getMinSamples()) {
+				return config.getMaxDelay();
+			}
+			Duration percentile = latency.percentile(config.getPercentile());
+			if (percentile.compareTo(config.getMinDelay()) < 0) {
+				return config.getMinDelay();
+			}
+			return percentile.compareTo(config.getMaxDelay()) > 0 ? config.getMaxDelay() : percentile;
+		}
+
+		private Mono<ClientResponse> timed(Mono<ClientResponse> exchange) {
+			return Mono.defer(() -> {
+				long start = System.nanoTime();
+				return exchange.doOnNext(response -> latency.record(System.nanoTime() - start));
+			});
+		}
+
+		/*
+		 * Only the first response goes downstream, a late one gives its connection back
+		 */
+		private Mono<ClientResponse> decide(ClientResponse response, AtomicBoolean decided) {
+			if (decided.compareAndSet(false, true)) {
+				return Mono.just(response);
+			}
+			return response.releaseBody().then(Mono.empty());
+		}
+
+		Map<String, Object> snapshot() {
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("requests", requests.sum());
+			snapshot.put("hedgesFired", fired.sum());
+			snapshot.put("hedgesWon", won.sum());
+			snapshot.put("hedgeRate", requests.sum() == 0 ? 0.0 : (double) fired.sum() / requests.sum());
+			snapshot.put("delayMillis", delay().toMillis());
+			snapshot.put("budgetTokens", budget.available());
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package it.blog.webclient.component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+/*
+ * Latency of the calls that reach the network, by upstream, method, status class and ErrorType.
+ * Sits inside cache, coalescing, retries, hedging and circuit breaker: every attempt is one call,
+ * cache hits and calls refused by an open breaker are not.
+ */
+@Component
+@Order(950)
+public class HttpMetricsFilter implements UpstreamFilter {
+
+	/*
+	 * Reactor context key of the System.nanoTime() when the call asked the pool for a connection
+	 */
+	static final String ACQUIRE_START = HttpMetricsFilter.class.getName() + ".acquireStart";
+
+	/*
+	 * Reactor context key of the AtomicLong receiving the acquisition time of the call, 0 until it has a connection
+	 */
+	static final String ACQUIRE_NANOS = HttpMetricsFilter.class.getName() + ".acquireNanos";
+
+	private final Map<String, UpstreamMetrics> upstreams = new ConcurrentHashMap<>();
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		UpstreamMetrics metrics = metrics(name);
+
+		return (request, next) -> Mono.defer(() -> {
+			long start = System.nanoTime();
+			AtomicLong acquired = new AtomicLong();
+			metrics.started();
+			return next.exchange(request) //
+					.doOnNext(response -> metrics.record(request.method(), response.rawStatusCode(),
+							ErrorType.of(response.rawStatusCode()), System.nanoTime() - start, acquired.get())) //
+					.doOnError(error -> metrics.record(request.method(), 0, errorType(error), System.nanoTime() - start,
+							acquired.get())) //
+					.doOnCancel(metrics::cancelled) //
+					.doFinally(signal -> metrics.finished()) //
+					.contextWrite(context -> context.put(ACQUIRE_START, System.nanoTime()).put(ACQUIRE_NANOS, acquired));
+		});
+	}
+
+	/*
+	 * Records the pool acquisition time when the request is about to be written on the acquired connection
+	 */
+	public HttpClient instrument(String name, HttpClient httpClient) {
+		UpstreamMetrics metrics = metrics(name);
+		return httpClient.doOnRequest((request, connection) -> request.currentContextView()
+				.<Long>getOrEmpty(ACQUIRE_START).ifPresent(start -> {
+					long nanos = System.nanoTime() - start;
+					metrics.recordAcquire(nanos);
+					request.currentContextView().<AtomicLong>getOrEmpty(ACQUIRE_NANOS)
+							.ifPresent(acquired -> acquired.set(nanos));
+				}));
+	}
+
+	public UpstreamMetrics metrics(String name) {
+		return upstreams.computeIfAbsent(name, key -> new UpstreamMetrics());
+	}
+
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+		upstreams.forEach((name, metrics) -> snapshot.put(name, metrics.snapshot()));
+		return snapshot;
+	}
+
+	private static ErrorType errorType(Throwable error) {
+		return error instanceof WebClientException ? ((WebClientException) error).getType() : ErrorType.NETWORK;
+	}
+}
@@ -0,0 +1,86 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Log-linear histogram of latencies in microseconds, 8 sub-buckets per power of two (12.5% precision).
+ * Recording is lock and allocation free, so it can run on the event loop for every response.
+ */
+public class LatencyHistogram {
+
+	private static final int LINEAR = 16;
+	private static final int SUB_BUCKETS = 8;
+	private static final int BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		buckets.incrementAndGet(index(micros));
+		count.increment();
+		sum.add(micros);
+	}
+
+	public long count() {
+		return count.sum();
+	}
+
+	public Duration mean() {
+		long samples = count.sum();
+		return samples == 0 ? Duration.ZERO : Duration.ofNanos(sum.sum() * 1000 / samples);
+	}
+
+	/*
+	 * Upper bound of the bucket holding the given percentile, ZERO without samples
+	 */
+	public Duration percentile(double percentile) {
+		long samples = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			samples += buckets.get(i);
+		}
+		if (samples == 0) {
+			return Duration.ZERO;
+		}
+
+		long rank = (long) Math.ceil(samples * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Duration.ofNanos(upperBound(i) * 1000);
+			}
+		}
+		return Duration.ofNanos(upperBound(BUCKETS - 1) * 1000);
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+	}
+
+	static int index(long micros) {
+		if (micros < LINEAR) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+		return LINEAR + (exponent - 4) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int exponent = (index - LINEAR) / SUB_BUCKETS + 4;
+		int sub = (index - LINEAR) % SUB_BUCKETS;
+		long lower = (long) (SUB_BUCKETS + sub) << (exponent - 3);
+		return lower + (1L << (exponent - 3)) - 1;
+	}
+}
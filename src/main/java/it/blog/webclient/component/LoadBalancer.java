@@ -0,0 +1,231 @@
+package it.blog.webclient.component;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Replicas of one upstream. Every call draws two replicas at random and takes the cheaper one, the peak EWMA
+ * of its latency times its calls outstanding plus one (power of two choices): a slow or busy replica gets
+ * less traffic without scanning all of them.
+ * consecutive-failures NETWORK (timeouts included) or HTTPSTATUS5XX outcomes in a row eject a replica for base-ejection-time times
+ * its ejections since the last success, never more than max-ejection-percent of the replicas. With all of
+ * them ejected the calls go on anyway.
+ * The replicas can be replaced while calls are running, the ones kept keep their statistics.
+ */
+public class LoadBalancer {
+
+	private static Logger log = LoggerFactory.getLogger(LoadBalancer.class);
+
+	private final String name;
+	private final UpstreamProperties.Balancer config;
+
+	private volatile List<Endpoint> endpoints = List.of();
+
+	private final LongAdder ejections = new LongAdder();
+
+	public LoadBalancer(String name, UpstreamProperties.Balancer config, List<String> urls) {
+		this.name = name;
+		this.config = config;
+		update(urls);
+	}
+
+	/*
+	 * Replicas as scheme://host:port, IllegalArgumentException for an empty list or a malformed URL
+	 */
+	public synchronized void update(List<String> urls) {
+		if (urls == null || urls.isEmpty()) {
+			throw new IllegalArgumentException("No endpoints for upstream " + name);
+		}
+		Map<URI, Endpoint> current = new HashMap<>();
+		endpoints.forEach(endpoint -> current.put(endpoint.uri, endpoint));
+
+		Map<URI, Endpoint> updated = new LinkedHashMap<>();
+		for (String url : urls) {
+			URI uri = parse(url);
+			updated.putIfAbsent(uri, current.getOrDefault(uri, new Endpoint(uri)));
+		}
+		endpoints = List.copyOf(updated.values());
+		log.info("Upstream {} endpoints {}", name, updated.keySet());
+	}
+
+	public Endpoint choose() {
+		List<Endpoint> all = endpoints;
+		int size = all.size();
+		if (size == 1) {
+			return all.get(0);
+		}
+
+		long now = System.nanoTime();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(size);
+		int second = random.nextInt(size - 1);
+		if (second >= first) {
+			second++;
+		}
+		Endpoint a = all.get(first);
+		Endpoint b = all.get(second);
+		boolean aUp = !a.isEjected(now);
+		boolean bUp = !b.isEjected(now);
+
+		if (aUp && bUp) {
+			return a.cost() <= b.cost() ? a : b;
+		}
+		if (aUp || bUp) {
+			return aUp ? a : b;
+		}
+		for (int i = 1; i < size; i++) {
+			Endpoint endpoint = all.get((first + i) % size);
+			if (!endpoint.isEjected(now)) {
+				return endpoint;
+			}
+		}
+		return a;
+	}
+
+	/*
+	 * Outcome of a call on the endpoint. Latencies of failed calls are not averaged: a replica failing fast
+	 * would look like the fastest one.
+	 */
+	public void onResult(Endpoint endpoint, long latencyNanos, boolean failed) {
+		long now = System.nanoTime();
+		if (!failed) {
+			endpoint.consecutiveFailures.set(0);
+			endpoint.ejections.set(0);
+			endpoint.sample(latencyNanos, now, config.getLatencyDecay().toNanos());
+			return;
+		}
+
+		endpoint.failures.increment();
+		if (endpoint.consecutiveFailures.incrementAndGet() < config.getConsecutiveFailures()) {
+			return;
+		}
+		synchronized (this) {
+			if (endpoint.isEjected(now) || endpoint.consecutiveFailures.get() < config.getConsecutiveFailures()) {
+				return;
+			}
+			List<Endpoint> all = endpoints;
+			long ejected = all.stream().filter(other -> other.isEjected(now)).count();
+			if ((ejected + 1) * 100.0 > all.size() * config.getMaxEjectionPercent()) {
+				return;
+			}
+			long base = config.getBaseEjectionTime().toNanos();
+			long duration = Math.min(config.getMaxEjectionTime().toNanos(), base * endpoint.ejections.incrementAndGet());
+			endpoint.ejectedUntil = now + duration;
+			endpoint.consecutiveFailures.set(0);
+			ejections.increment();
+			log.warn("Upstream {} endpoint {} ejected for {} ms", name, endpoint.uri, duration / 1_000_000);
+		}
+	}
+
+	/*
+	 * A call cut by a timeout: a failure, and its time so far a lower bound of the replica latency
+	 */
+	public void onTimeout(Endpoint endpoint, long elapsedNanos) {
+		endpoint.sample(elapsedNanos, System.nanoTime(), config.getLatencyDecay().toNanos());
+		onResult(endpoint, elapsedNanos, true);
+	}
+
+	public Map<String, Object> snapshot() {
+		long now = System.nanoTime();
+		List<Map<String, Object>> replicas = new ArrayList<>();
+		for (Endpoint endpoint : endpoints) {
+			replicas.add(endpoint.snapshot(now));
+		}
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("ejections", ejections.sum());
+		snapshot.put("endpoints", replicas);
+		return snapshot;
+	}
+
+	private static URI parse(String url) {
+		URI uri = URI.create(url.trim());
+		if (!("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())) || uri.getHost() == null) {
+			throw new IllegalArgumentException("Endpoint must be http(s)://host[:port]: " + url);
+		}
+		return URI.create(uri.getScheme() + "://" + uri.getHost() + (uri.getPort() < 0 ? "" : ":" + uri.getPort()));
+	}
+
+	public static class Endpoint {
+
+		private final URI uri;
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final AtomicInteger consecutiveFailures = new AtomicInteger();
+		private final AtomicInteger ejections = new AtomicInteger();
+
+		private volatile long ejectedUntil = System.nanoTime();
+
+		/*
+		 * Guarded by this
+		 */
+		private double latency;
+		private long lastSample;
+		private boolean sampled;
+
+		Endpoint(URI uri) {
+			this.uri = uri;
+		}
+
+		public URI getUri() {
+			return uri;
+		}
+
+		public void start() {
+			outstanding.incrementAndGet();
+			calls.increment();
+		}
+
+		public void end() {
+			outstanding.decrementAndGet();
+		}
+
+		boolean isEjected(long now) {
+			return ejectedUntil - now > 0;
+		}
+
+		/*
+		 * A replica without samples costs only its outstanding calls, so a new one gets traffic at once
+		 */
+		synchronized double cost() {
+			return (latency + 1) * (outstanding.get() + 1);
+		}
+
+		/*
+		 * Peak EWMA: a slower call raises the average at once, faster ones lower it with the time constant
+		 */
+		synchronized void sample(long latencyNanos, long now, long decayNanos) {
+			if (!sampled || latencyNanos > latency) {
+				latency = latencyNanos;
+			} else {
+				double weight = Math.exp(-(now - lastSample) / (double) decayNanos);
+				latency = latency * weight + latencyNanos * (1 - weight);
+			}
+			lastSample = now;
+			sampled = true;
+		}
+
+		synchronized Map<String, Object> snapshot(long now) {
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("url", uri.toString());
+			snapshot.put("outstanding", outstanding.get());
+			snapshot.put("calls", calls.sum());
+			snapshot.put("failures", failures.sum());
+			snapshot.put("latencyMillis", sampled ? latency / 1_000_000 : null);
+			snapshot.put("ejected", isEjected(now));
+			snapshot.put("ejectedForMillis", Math.max(0, (ejectedUntil - now) / 1_000_000));
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package it.blog.webclient.component;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/*
+ * Sends every call to a replica of the upstream chosen by its LoadBalancer, rewriting scheme, host and port.
+ * Innermost: each retry and each hedge chooses again, cache and coalescing keys don't depend on the replica.
+ * A call cut by the adaptive timeout or the Deadline is a failure of its replica, a hung replica is ejected
+ * like one refusing connections. Calls cancelled otherwise, a hedge that lost or a caller gone away, say
+ * nothing about the replica.
+ */
+@Component
+@Order(1000)
+public class LoadBalancerFilter implements UpstreamFilter {
+
+	private final Map<String, LoadBalancer> balancers = new ConcurrentHashMap<>();
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		List<String> endpoints = upstream.getEndpoints().isEmpty() && upstream.getBaseUrl() != null
+				? List.of(upstream.getBaseUrl())
+				: upstream.getEndpoints();
+		if (endpoints.isEmpty()) {
+			return null;
+		}
+
+		LoadBalancer balancer = balancers.computeIfAbsent(name,
+				key -> new LoadBalancer(key, upstream.getBalancer(), endpoints));
+
+		return (request, next) -> Mono.deferContextual(context -> {
+			LoadBalancer.Endpoint endpoint = balancer.choose();
+			ClientRequest routed = ClientRequest.from(request).url(route(request.url(), endpoint.getUri())).build();
+			endpoint.start();
+			long start = System.nanoTime();
+			return next.exchange(routed) //
+					.doOnNext(response -> balancer.onResult(endpoint, System.nanoTime() - start,
+							ErrorType.of(response.rawStatusCode()) == ErrorType.HTTPSTATUS5XX)) //
+					.doOnError(error -> balancer.onResult(endpoint, System.nanoTime() - start, true)) //
+					.doOnCancel(() -> {
+						if (timedOut(context)) {
+							balancer.onTimeout(endpoint, System.nanoTime() - start);
+						}
+					}) //
+					.doFinally(signal -> endpoint.end());
+		});
+	}
+
+	/*
+	 * Base URL for the callers outside the WebClients (RestTemplate): a replica chosen the same way, the
+	 * outcome of the call is not recorded. null for an upstream without replicas.
+	 */
+	public String choose(String name) {
+		LoadBalancer balancer = balancers.get(name);
+		return balancer == null ? null : balancer.choose().getUri().toString();
+	}
+
+	/*
+	 * Replaces the replicas of an upstream, the WebClient stays the same.
+	 * false for an unknown upstream, IllegalArgumentException for invalid endpoints
+	 */
+	public boolean update(String name, List<String> endpoints) {
+		LoadBalancer balancer = balancers.get(name);
+		if (balancer == null) {
+			return false;
+		}
+		balancer.update(endpoints);
+		return true;
+	}
+
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+		balancers.forEach((name, balancer) -> snapshot.put(name, balancer.snapshot()));
+		return snapshot;
+	}
+
+	private static boolean timedOut(ContextView context) {
+		return CircuitBreakerFilter.timedOut(context)
+				|| Deadline.of(context).map(deadline -> deadline.remaining().isZero()).orElse(false);
+	}
+
+	private static URI route(URI url, URI endpoint) {
+		if (endpoint.getHost().equals(url.getHost()) && endpoint.getPort() == url.getPort()
+				&& endpoint.getScheme().equals(url.getScheme())) {
+			return url;
+		}
+		return UriComponentsBuilder.fromUri(url).scheme(endpoint.getScheme()).host(endpoint.getHost())
+				.port(endpoint.getPort()).build(true).toUri();
+	}
+}
@@ -0,0 +1,144 @@
+package it.blog.webclient.component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+/*
+ * Resizes the pools of the upstreams with pool.tuning.enabled every interval, through ConnectionPools.resize.
+ * The connections needed are calls per second x mean upstream latency (Little's law) plus headroom:
+ * - acquisitions waiting more than max-acquire-wait grow the pool by half when it needs more connections than
+ *   it has, unless the upstream latency is beyond max-latency-ratio x its baseline: a saturated upstream needs
+ *   fewer calls, not more connections
+ * - a pool needing less than half of its connections shrinks by a quarter
+ * An idle interval changes nothing, idle connections are closed by max-idle-time anyway.
+ * A resize is not free: the new pool starts empty, the next calls pay the connects (and handshakes) again while
+ * the warm connections of the old one are closed. At most one resize every min-resize-interval, the intervals in
+ * between only follow the latency baseline.
+ */
+@Component
+public class PoolTuner {
+
+	private static Logger log = LoggerFactory.getLogger(PoolTuner.class);
+
+	@Autowired
+	UpstreamProperties properties;
+
+	@Autowired
+	ConnectionPools pools;
+
+	@Autowired
+	HttpMetricsFilter httpMetrics;
+
+	private final List<Disposable> tuners = new ArrayList<>();
+
+	@PostConstruct
+	public void init() {
+		properties.getUpstreams().forEach((name, upstream) -> {
+			UpstreamProperties.Tuning tuning = upstream.getPool().getTuning();
+			if (tuning.isEnabled()) {
+				Tuner tuner = new Tuner(name, tuning);
+				tuners.add(Flux.interval(tuning.getInterval(), tuning.getInterval()).subscribe(tick -> tuner.tune()));
+			}
+		});
+	}
+
+	@PreDestroy
+	public void destroy() {
+		tuners.forEach(Disposable::dispose);
+	}
+
+	private class Tuner {
+
+		private final String name;
+		private final UpstreamProperties.Tuning tuning;
+		private final UpstreamMetrics metrics;
+
+		private long lastTime = System.nanoTime();
+		private long lastCalls;
+		private long lastNanos;
+		private long lastAcquireNanos;
+		private double baselineNanos;
+		private long lastResize;
+
+		Tuner(String name, UpstreamProperties.Tuning tuning) {
+			this.name = name;
+			this.tuning = tuning;
+			this.metrics = httpMetrics.metrics(name);
+		}
+
+		void tune() {
+			long now = System.nanoTime();
+			long calls = metrics.calls();
+			long nanos = metrics.callNanos();
+			long acquireNanos = metrics.callAcquireNanos();
+			double seconds = (now - lastTime) / 1e9;
+			long intervalCalls = calls - lastCalls;
+			long intervalNanos = nanos - lastNanos;
+			long intervalAcquireNanos = acquireNanos - lastAcquireNanos;
+			lastTime = now;
+			lastCalls = calls;
+			lastNanos = nanos;
+			lastAcquireNanos = acquireNanos;
+
+			LatencyHistogram acquire = pools.recentAcquire(name);
+			ConnectionPools.Limits limits = pools.limits(name);
+			if (limits == null || intervalCalls == 0) {
+				return;
+			}
+
+			/*
+			 * The call latency includes the wait for a connection, the upstream latency doesn't: the waits of the
+			 * same calls are taken off (not the acquisitions of the interval, those of callers still waiting too).
+			 * The baseline forgets its minimum by 1% every interval, to follow a slower upstream.
+			 */
+			double latencyNanos = Math.max(1, (intervalNanos - intervalAcquireNanos) / (double) intervalCalls);
+			baselineNanos = baselineNanos == 0 ? latencyNanos : Math.min(latencyNanos, baselineNanos * 1.01);
+
+			int current = limits.getMaxConnections();
+			int needed = (int) Math.ceil(intervalCalls / seconds * latencyNanos / 1e9 * tuning.getHeadroom());
+			long acquireWait = acquire.percentile(99).toNanos();
+
+			int target = current;
+			if (acquireWait > tuning.getMaxAcquireWait().toNanos()) {
+				/*
+				 * A pool big enough for the load waits on connects or a busy event loop, not on its limit
+				 */
+				if (needed > current && latencyNanos <= baselineNanos * tuning.getMaxLatencyRatio()) {
+					target = Math.max(needed, current + Math.max(1, current / 2));
+				}
+			} else if (needed < current / 2) {
+				target = Math.max(needed, current * 3 / 4);
+			}
+			target = Math.max(tuning.getMinConnections(), Math.min(tuning.getMaxConnections(), target));
+			if (target == current) {
+				return;
+			}
+			if (lastResize != 0 && now - lastResize < tuning.getMinResizeInterval().toNanos()) {
+				log.debug("Pool of {} not resized to {} connections, resized {} s ago", name, target,
+						(now - lastResize) / 1_000_000_000);
+				return;
+			}
+			lastResize = now;
+
+			ConnectionPools.Limits next = new ConnectionPools.Limits();
+			next.setMaxConnections(target);
+			next.setPendingAcquireMaxCount(Math.max(1, (int) Math.ceil(target * tuning.getPendingPerConnection())));
+
+			log.info("Tuning pool of {}: {} calls/s, upstream latency {} ms (baseline {} ms), acquire p99 {} ms",
+					name, String.format("%.1f", intervalCalls / seconds), String.format("%.1f", latencyNanos / 1e6),
+					String.format("%.1f", baselineNanos / 1e6), String.format("%.1f", acquireWait / 1e6));
+			pools.resize(name, next);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package it.blog.webclient.component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Request bodies of request-compression-min-size or more are sent with Content-Encoding: gzip.
+ * An upstream refusing it answers 415 without gzip in Accept-Encoding (RFC 7694): the request is sent again
+ * uncompressed, and so are the next ones of the upstream. Enable it for upstreams known to accept it, like
+ * this application (GzipRequestFilter). The body is joined to know its size, NDJSON included: the request
+ * bodies of these clients are bounded, batches at most.
+ * Innermost but the metrics: every attempt compresses its own copy of the body.
+ */
+@Component
+@Order(900)
+public class RequestCompressionFilter implements UpstreamFilter {
+
+	private static Logger log = LoggerFactory.getLogger(RequestCompressionFilter.class);
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		if (!upstream.getHttp().isRequestCompression()) {
+			return null;
+		}
+
+		long minSize = upstream.getHttp().getRequestCompressionMinSize().toBytes();
+		AtomicBoolean refused = new AtomicBoolean();
+
+		return (request, next) -> {
+			if (refused.get()) {
+				return next.exchange(request);
+			}
+			AtomicBoolean compressed = new AtomicBoolean();
+			return next.exchange(ClientRequest.from(request) //
+					.body((outputMessage, context) -> request.body()
+							.insert(new Gzip(outputMessage, minSize, compressed), context)) //
+					.build()) //
+					.flatMap(response -> {
+						if (!compressed.get() || !refusesGzip(response)) {
+							return Mono.just(response);
+						}
+						if (refused.compareAndSet(false, true)) {
+							log.warn("Upstream {} refuses gzipped request bodies, they are sent uncompressed", name);
+						}
+						return response.releaseBody().then(next.exchange(request));
+					});
+		};
+	}
+
+	private static boolean refusesGzip(ClientResponse response) {
+		if (response.rawStatusCode() != HttpStatus.UNSUPPORTED_MEDIA_TYPE.value()) {
+			return false;
+		}
+		String accepted = response.headers().asHttpHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING);
+		return accepted == null || !accepted.toLowerCase().contains("gzip");
+	}
+
+	private static class Gzip extends ClientHttpRequestDecorator {
+
+		private final long minSize;
+		private final AtomicBoolean compressed;
+
+		Gzip(ClientHttpRequest delegate, long minSize, AtomicBoolean compressed) {
+			super(delegate);
+			this.minSize = minSize;
+			this.compressed = compressed;
+		}
+
+		@Override
+		public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+			return writeWith(Flux.from(body).concatMap(Flux::from));
+		}
+
+		@Override
+		public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+			if (getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+				return super.writeWith(body);
+			}
+			return DataBufferUtils.join(body).flatMap(joined -> {
+				if (joined.readableByteCount() < minSize) {
+					return super.writeWith(Mono.just(joined));
+				}
+				DataBuffer gzipped = gzip(joined);
+				compressed.set(true);
+				getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+				getHeaders().setContentLength(gzipped.readableByteCount());
+				return super.writeWith(Mono.just(gzipped));
+			});
+		}
+
+		/*
+		 * The plain body is released either way, the gzipped one on failure
+		 */
+		private DataBuffer gzip(DataBuffer plain) {
+			DataBuffer gzipped = bufferFactory().allocateBuffer(Math.max(64, plain.readableByteCount() / 2));
+			try (OutputStream out = new GZIPOutputStream(gzipped.asOutputStream())) {
+				plain.asInputStream().transferTo(out);
+			} catch (IOException e) {
+				DataBufferUtils.release(gzipped);
+				throw new UncheckedIOException(e);
+			} finally {
+				DataBufferUtils.release(plain);
+			}
+			return gzipped;
+		}
+	}
+}
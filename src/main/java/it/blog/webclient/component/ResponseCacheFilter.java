@@ -0,0 +1,287 @@
+package it.blog.webclient.component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import reactor.core.publisher.Mono;
+
+/*
+ * Client side cache of upstream GET responses.
+ * Entries younger than the TTL are served without calling the upstream, older ones are revalidated
+ * with If-None-Match / If-Modified-Since and served again when the upstream answers 304.
+ * Past the TTL, for stale-while-revalidate an entry is served at once and refreshed in background by one call,
+ * for stale-if-error it replaces the error of a failed call. Stale responses carry Age and Warning, and are
+ * reported to the Staleness of the caller.
+ * The key is the URI, the key-headers and the request headers named by the Vary of the last response stored
+ * for them; a response with Vary: * is never stored.
+ */
+@Component
+@Order(400)
+public class ResponseCacheFilter implements UpstreamFilter {
+
+	private static Logger log = LoggerFactory.getLogger(ResponseCacheFilter.class);
+
+	static final String RESPONSE_IS_STALE = "110 - \"Response is Stale\"";
+	static final String REVALIDATION_FAILED = "111 - \"Revalidation Failed\"";
+
+	private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		UpstreamProperties.Cache config = upstream.getCache();
+		if (!config.isEnabled()) {
+			return null;
+		}
+
+		BoundedTtlCache<String, BufferedResponse> cache = new BoundedTtlCache<>(config.getMaxEntries());
+		Variants variants = new Variants(config.getKeyHeaders(), config.getMaxEntries());
+		Stats counters = stats.computeIfAbsent(name, key -> new Stats());
+		long ttl = config.getTtl().toNanos();
+		long staleWhileRevalidate = ttl + config.getStaleWhileRevalidate().toNanos();
+		long staleIfError = ttl + config.getStaleIfError().toNanos();
+		Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+		return (request, next) -> {
+			if (!isCacheable(request)) {
+				return next.exchange(request);
+			}
+
+			String key = variants.key(request);
+			BoundedTtlCache.Entry<BufferedResponse> entry = cache.get(key);
+
+			long age = entry == null ? 0 : entry.ageNanos();
+
+			if (entry != null && age < ttl) {
+				counters.hits.increment();
+				return Mono.just(entry.getValue().toClientResponse());
+			}
+
+			if (entry != null && age < staleWhileRevalidate) {
+				counters.stale.increment();
+				if (refreshing.add(key)) {
+					refresh(request, next, entry.getValue(), key, variants, cache, counters) //
+							.flatMap(ClientResponse::releaseBody) //
+							.doFinally(signal -> refreshing.remove(key)) //
+							.subscribe(null, error -> log.debug("Refresh of {} failed: {}", key, error.toString()));
+				}
+				return stale(entry.getValue(), age, RESPONSE_IS_STALE);
+			}
+
+			if (entry != null && !hasValidator(entry.getValue()) && age >= staleIfError) {
+				cache.remove(key);
+				entry = null;
+			}
+
+			Mono<ClientResponse> call = entry == null ? fetch(request, next, variants, cache, counters)
+					: refresh(request, next, entry.getValue(), key, variants, cache, counters);
+
+			if (entry == null || age >= staleIfError) {
+				return call;
+			}
+
+			/*
+			 * 5xx and failures that never got a response, the breaker and the limiter refusing included
+			 */
+			BufferedResponse cached = entry.getValue();
+			return call.flatMap(response -> ErrorType.of(response.rawStatusCode()) == ErrorType.HTTPSTATUS5XX
+					? response.releaseBody().then(staleOnError(cached, age, counters))
+					: Mono.just(response))
+					.onErrorResume(error -> staleOnError(cached, age, counters));
+		};
+	}
+
+	public Map<String, Map<String, Long>> snapshot() {
+		Map<String, Map<String, Long>> snapshot = new LinkedHashMap<>();
+		stats.forEach((name, counters) -> snapshot.put(name, counters.snapshot()));
+		return snapshot;
+	}
+
+	private Mono<ClientResponse> refresh(ClientRequest request, ExchangeFunction next, BufferedResponse cached,
+			String key, Variants variants, BoundedTtlCache<String, BufferedResponse> cache, Stats counters) {
+
+		return hasValidator(cached) ? revalidate(request, next, cached, key, variants, cache, counters)
+				: fetch(request, next, variants, cache, counters);
+	}
+
+	private Mono<ClientResponse> fetch(ClientRequest request, ExchangeFunction next, Variants variants,
+			BoundedTtlCache<String, BufferedResponse> cache, Stats counters) {
+
+		counters.misses.increment();
+		return next.exchange(request).flatMap(response -> store(request, response, variants, cache));
+	}
+
+	private Mono<ClientResponse> staleOnError(BufferedResponse cached, long age, Stats counters) {
+		return Mono.defer(() -> {
+			counters.staleOnError.increment();
+			return stale(cached, age, REVALIDATION_FAILED);
+		});
+	}
+
+	private Mono<ClientResponse> stale(BufferedResponse cached, long age, String warning) {
+		return Mono.deferContextual(context -> {
+			Staleness.record(context, age, warning);
+			return Mono.just(cached.toClientResponse().mutate().headers(headers -> {
+				headers.set(HttpHeaders.AGE, String.valueOf(TimeUnit.NANOSECONDS.toSeconds(age)));
+				headers.add(HttpHeaders.WARNING, warning);
+			}).build());
+		});
+	}
+
+	private Mono<ClientResponse> revalidate(ClientRequest request, ExchangeFunction next, BufferedResponse cached,
+			String key, Variants variants, BoundedTtlCache<String, BufferedResponse> cache, Stats counters) {
+
+		HttpHeaders validators = cached.getHeaders();
+		ClientRequest conditional = ClientRequest.from(request).headers(headers -> {
+			if (validators.getETag() != null) {
+				headers.setIfNoneMatch(validators.getETag());
+			}
+			if (validators.getLastModified() > 0) {
+				headers.setIfModifiedSince(validators.getLastModified());
+			}
+		}).build();
+
+		return next.exchange(conditional).flatMap(response -> {
+			if (response.rawStatusCode() == HttpStatus.NOT_MODIFIED.value()) {
+				counters.revalidated.increment();
+				cache.put(key, cached);
+				return response.releaseBody().thenReturn(cached.toClientResponse());
+			}
+			counters.misses.increment();
+			return store(request, response, variants, cache);
+		});
+	}
+
+	private Mono<ClientResponse> store(ClientRequest request, ClientResponse response, Variants variants,
+			BoundedTtlCache<String, BufferedResponse> cache) {
+
+		if (response.rawStatusCode() != HttpStatus.OK.value() || isNoStore(response)) {
+			return Mono.just(response);
+		}
+		String key = variants.key(request, response);
+		if (key == null) {
+			return Mono.just(response);
+		}
+
+		return BufferedResponse.of(response).map(buffered -> {
+			cache.put(key, buffered);
+			return buffered.toClientResponse();
+		});
+	}
+
+	private boolean isCacheable(ClientRequest request) {
+		/*
+		 * Callers sending their own conditional headers get the upstream answer as is
+		 */
+		HttpHeaders headers = request.headers();
+		return request.method() == HttpMethod.GET && !headers.containsKey(HttpHeaders.IF_NONE_MATCH)
+				&& !headers.containsKey(HttpHeaders.IF_MODIFIED_SINCE);
+	}
+
+	private boolean hasValidator(BufferedResponse response) {
+		return response.getHeaders().getETag() != null || response.getHeaders().getLastModified() > 0;
+	}
+
+	private boolean isNoStore(ClientResponse response) {
+		return response.headers().header(HttpHeaders.CACHE_CONTROL).stream()
+				.anyMatch(value -> value.contains(CacheControl.noStore().getHeaderValue()));
+	}
+
+	/*
+	 * Keys of the variants of a URI: the request headers named by Vary are learnt from the responses stored
+	 */
+	private static class Variants {
+
+		private final List<String> keyHeaders;
+		private final BoundedTtlCache<String, List<String>> vary;
+
+		Variants(List<String> keyHeaders, int maxEntries) {
+			this.keyHeaders = keyHeaders;
+			this.vary = new BoundedTtlCache<>(maxEntries);
+		}
+
+		String key(ClientRequest request) {
+			String primary = primary(request);
+			BoundedTtlCache.Entry<List<String>> varied = vary.get(primary);
+			return varied == null ? primary : append(new StringBuilder(primary), request, varied.getValue());
+		}
+
+		/*
+		 * null when the response can't be stored, Vary: * means it depends on more than the request headers
+		 */
+		String key(ClientRequest request, ClientResponse response) {
+			List<String> varied = new ArrayList<>();
+			for (String value : response.headers().header(HttpHeaders.VARY)) {
+				for (String header : value.split(",")) {
+					if (header.trim().equals("*")) {
+						return null;
+					}
+					if (!header.isBlank()) {
+						varied.add(header.trim());
+					}
+				}
+			}
+
+			String primary = primary(request);
+			if (varied.isEmpty()) {
+				vary.remove(primary);
+				return primary;
+			}
+			vary.put(primary, varied);
+			return append(new StringBuilder(primary), request, varied);
+		}
+
+		private String primary(ClientRequest request) {
+			return append(new StringBuilder(request.url().toString()), request, keyHeaders);
+		}
+
+		private static String append(StringBuilder key, ClientRequest request, List<String> headers) {
+			for (String header : headers) {
+				key.append('\n').append(header).append(':').append(request.headers().get(header));
+			}
+			return key.toString();
+		}
+	}
+
+	static class Stats {
+
+		final LongAdder hits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+		final LongAdder revalidated = new LongAdder();
+		final LongAdder stale = new LongAdder();
+		final LongAdder staleOnError = new LongAdder();
+
+		Map<String, Long> snapshot() {
+			Map<String, Long> snapshot = new LinkedHashMap<>();
+			snapshot.put("hits", hits.sum());
+			snapshot.put("misses", misses.sum());
+			snapshot.put("revalidated", revalidated.sum());
+			snapshot.put("stale", stale.sum());
+			snapshot.put("staleOnError", staleOnError.sum());
+			/*
+			 * Hits skip the upstream entirely, 304s skip the body and the upstream work behind it, stale entries
+			 * skip the wait for the refresh
+			 */
+			snapshot.put("roundTripsSaved", hits.sum() + revalidated.sum() + stale.sum());
+			return snapshot;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import reactor.core.publisher.Mono;
+
+/*
+ * Retries NETWORK and HTTPSTATUS5XX failures, never HTTPSTATUS4XX, CIRCUIT_OPEN or SATURATED.
+ * Attempts are spaced by exponential backoff with full jitter, and paid from a token budget
+ * refilled by the traffic: during an outage retries can't multiply the load on the upstream.
+ */
+@Component
+@Order(600)
+public class RetryFilter implements UpstreamFilter {
+
+	private static Logger log = LoggerFactory.getLogger(RetryFilter.class);
+
+	private static final Set<ErrorType> RETRYABLE = EnumSet.of(ErrorType.NETWORK, ErrorType.HTTPSTATUS5XX);
+
+	private static final Set<HttpMethod> IDEMPOTENT = EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS,
+			HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.TRACE);
+
+	private final Map<String, Retrier> retriers = new ConcurrentHashMap<>();
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		UpstreamProperties.Retry config = upstream.getRetry();
+		if (!config.isEnabled()) {
+			return null;
+		}
+
+		Retrier retrier = retriers.computeIfAbsent(name, key -> new Retrier(key, config));
+		return retrier::exchange;
+	}
+
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+		retriers.forEach((name, retrier) -> snapshot.put(name, retrier.snapshot()));
+		return snapshot;
+	}
+
+	static class Retrier {
+
+		private final String name;
+		private final UpstreamProperties.Retry config;
+		private final TokenBudget budget;
+		private final LatencyHistogram attemptLatency = new LatencyHistogram();
+
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final LongAdder budgetExhausted = new LongAdder();
+
+		Retrier(String name, UpstreamProperties.Retry config) {
+			this.name = name;
+			this.config = config;
+			this.budget = new TokenBudget(config.getBudgetPercent() / 100.0, config.getBudgetBurst());
+		}
+
+		Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next) {
+			if (!IDEMPOTENT.contains(request.method()) && !config.isAllowNonIdempotent()) {
+				return next.exchange(request);
+			}
+
+			requests.increment();
+			budget.deposit();
+			return attempt(request, next, 1);
+		}
+
+		private Mono<ClientResponse> attempt(ClientRequest request, ExchangeFunction next, int attempt) {
+			return Mono.defer(() -> {
+				long start = System.nanoTime();
+				return next.exchange(request) //
+						.doOnEach(signal -> {
+							if (signal.isOnNext() || signal.isOnError()) {
+								attemptLatency.record(System.nanoTime() - start);
+							}
+						});
+			}) //
+					.map(Outcome::response) //
+					.onErrorResume(error -> Mono.just(Outcome.error(error))) //
+					.flatMap(outcome -> {
+						if (!shouldRetry(outcome.type, attempt)) {
+							return outcome.toMono();
+						}
+
+						retries.increment();
+						Duration backoff = backoff(attempt);
+						log.info("Retrying {} {} on upstream {} in {} ms, attempt {} failed with {}", request.method(),
+								request.url(), name, backoff.toMillis(), attempt, outcome.type);
+
+						Mono<Void> release = outcome.response != null ? outcome.response.releaseBody() : Mono.empty();
+						return release.then(Mono.delay(backoff)).then(attempt(request, next, attempt + 1));
+					});
+		}
+
+		private boolean shouldRetry(ErrorType type, int attempt) {
+			if (type == null || !RETRYABLE.contains(type) || attempt >= config.getMaxAttempts()) {
+				return false;
+			}
+			if (!budget.tryAcquire()) {
+				budgetExhausted.increment();
+				return false;
+			}
+			return true;
+		}
+
+		/*
+		 * Full jitter: uniform between 0 and min(max-backoff, base-backoff * 2^(attempt - 1))
+		 */
+		private Duration backoff(int attempt) {
+			long ceiling = Math.min(config.getMaxBackoff().toNanos(),
+					config.getBaseBackoff().toNanos() << Math.min(attempt - 1, 30));
+			return Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceiling + 1));
+		}
+
+		Map<String, Object> snapshot() {
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("requests", requests.sum());
+			snapshot.put("retries", retries.sum());
+			snapshot.put("retryRate", requests.sum() == 0 ? 0.0 : (double) retries.sum() / requests.sum());
+			snapshot.put("budgetExhausted", budgetExhausted.sum());
+			snapshot.put("budgetTokens", budget.available());
+			snapshot.put("attemptP50Millis", attemptLatency.percentile(50).toMillis());
+			snapshot.put("attemptP99Millis", attemptLatency.percentile(99).toMillis());
+			return snapshot;
+		}
+	}
+
+	/*
+	 * Response or error of one attempt, with its classification
+	 */
+	static class Outcome {
+
+		final ClientResponse response;
+		final Throwable error;
+		final ErrorType type;
+
+		private Outcome(ClientResponse response, Throwable error, ErrorType type) {
+			this.response = response;
+			this.error = error;
+			this.type = type;
+		}
+
+		static Outcome response(ClientResponse response) {
+			return new Outcome(response, null, ErrorType.of(response.rawStatusCode()));
+		}
+
+		static Outcome error(Throwable error) {
+			ErrorType type = error instanceof WebClientException ? ((WebClientException) error).getType()
+					: ErrorType.NETWORK;
+			return new Outcome(null, error, type);
+		}
+
+		Mono<ClientResponse> toMono() {
+			return response != null ? Mono.just(response) : Mono.error(error);
+		}
+	}
+}
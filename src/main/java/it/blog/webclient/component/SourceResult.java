@@ -0,0 +1,60 @@
+package it.blog.webclient.component;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/*
+ * Outcome of one source of an aggregation
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SourceResult<T> {
+
+	public enum Status {
+		OK, FAILED, TIMED_OUT
+	}
+
+	private final String name;
+	private final Status status;
+	private final T value;
+	private final String error;
+	private final Long latencyMillis;
+
+	private SourceResult(String name, Status status, T value, String error, Long latencyMillis) {
+		this.name = name;
+		this.status = status;
+		this.value = value;
+		this.error = error;
+		this.latencyMillis = latencyMillis;
+	}
+
+	public static <T> SourceResult<T> ok(String name, T value, long latencyMillis) {
+		return new SourceResult<>(name, Status.OK, value, null, latencyMillis);
+	}
+
+	public static <T> SourceResult<T> failed(String name, Throwable error, long latencyMillis) {
+		return new SourceResult<>(name, Status.FAILED, null, error.getMessage(), latencyMillis);
+	}
+
+	public static <T> SourceResult<T> timedOut(String name) {
+		return new SourceResult<>(name, Status.TIMED_OUT, null, null, null);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public T getValue() {
+		return value;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public Long getLatencyMillis() {
+		return latencyMillis;
+	}
+}
@@ -0,0 +1,47 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/*
+ * Age of the oldest stale response ResponseCacheFilter served to the upstream calls of one Mono, and the Warning
+ * of each kind served: 110 for an entry past its TTL, 111 for an entry in place of a failed call. The caller
+ * can tell its own client that the result is stale, and why.
+ */
+public class Staleness {
+
+	private static final Class<Staleness> KEY = Staleness.class;
+
+	private final AtomicLong maxAgeNanos = new AtomicLong(-1);
+	private final Set<String> warnings = new ConcurrentSkipListSet<>();
+
+	/*
+	 * onStale gets the age and the Warning values, before the value is emitted and only if a stale response
+	 * was served
+	 */
+	public static <T> Mono<T> report(Mono<T> source, BiConsumer<Duration, Set<String>> onStale) {
+		return Mono.defer(() -> {
+			Staleness staleness = new Staleness();
+			return source.doOnSuccess(value -> {
+				long age = staleness.maxAgeNanos.get();
+				if (age >= 0) {
+					onStale.accept(Duration.ofNanos(age), staleness.warnings);
+				}
+			}).contextWrite(Context.of(KEY, staleness));
+		});
+	}
+
+	static void record(ContextView context, long ageNanos, String warning) {
+		context.<Staleness>getOrEmpty(KEY).ifPresent(staleness -> {
+			staleness.warnings.add(warning);
+			staleness.maxAgeNanos.accumulateAndGet(ageNanos, Math::max);
+		});
+	}
+}
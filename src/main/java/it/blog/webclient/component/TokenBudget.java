@@ -0,0 +1,41 @@
+package it.blog.webclient.component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Token bucket refilled by traffic: every request deposits ratio tokens, every extra request (retry, hedge) spends one.
+ * Extra requests stay below ratio of the traffic, plus a small burst of maxTokens.
+ */
+public class TokenBudget {
+
+	private static final long SCALE = 1000;
+
+	private final long deposit;
+	private final long max;
+	private final AtomicLong tokens;
+
+	public TokenBudget(double ratio, double maxTokens) {
+		this.deposit = Math.round(ratio * SCALE);
+		this.max = Math.round(maxTokens * SCALE);
+		this.tokens = new AtomicLong(max);
+	}
+
+	public void deposit() {
+		tokens.accumulateAndGet(deposit, (current, add) -> Math.min(max, current + add));
+	}
+
+	public boolean tryAcquire() {
+		long current;
+		do {
+			current = tokens.get();
+			if (current < SCALE) {
+				return false;
+			}
+		} while (!tokens.compareAndSet(current, current - SCALE));
+		return true;
+	}
+
+	public double available() {
+		return (double) tokens.get() / SCALE;
+	}
+}
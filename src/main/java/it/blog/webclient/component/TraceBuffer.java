@@ -0,0 +1,40 @@
+package it.blog.webclient.component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Fixed size ring of the last sampled exchanges, writers never wait and the oldest record is overwritten
+ */
+public class TraceBuffer {
+
+	private final AtomicReferenceArray<TraceRecord> records;
+	private final AtomicLong sequence = new AtomicLong();
+
+	public TraceBuffer(int capacity) {
+		this.records = new AtomicReferenceArray<>(capacity);
+	}
+
+	public void add(TraceRecord record) {
+		long slot = sequence.getAndIncrement();
+		records.set((int) (slot % records.length()), record);
+	}
+
+	/*
+	 * Newest first
+	 */
+	public List<TraceRecord> recent() {
+		long last = sequence.get();
+		int size = (int) Math.min(last, records.length());
+		List<TraceRecord> recent = new ArrayList<>(size);
+		for (long slot = last - 1; slot >= last - size; slot--) {
+			TraceRecord record = records.get((int) (slot % records.length()));
+			if (record != null) {
+				recent.add(record);
+			}
+		}
+		return recent;
+	}
+}
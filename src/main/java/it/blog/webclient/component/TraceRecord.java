@@ -0,0 +1,97 @@
+package it.blog.webclient.component;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/*
+ * Summary of one sampled exchange with an upstream
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TraceRecord {
+
+	private final Instant start;
+	private final String upstream;
+	private final String method;
+	private final String uri;
+	private final String requestContentType;
+	private final Integer status;
+	private final String responseContentType;
+	private final Long responseContentLength;
+	private final ErrorType errorType;
+	private final String error;
+	private final boolean cancelled;
+	private final long durationMicros;
+
+	public TraceRecord(Instant start, String upstream, String method, String uri, String requestContentType,
+			Integer status, String responseContentType, Long responseContentLength, ErrorType errorType, String error,
+			boolean cancelled, long durationMicros) {
+		this.start = start;
+		this.upstream = upstream;
+		this.method = method;
+		this.uri = uri;
+		this.requestContentType = requestContentType;
+		this.status = status;
+		this.responseContentType = responseContentType;
+		this.responseContentLength = responseContentLength;
+		this.errorType = errorType;
+		this.error = error;
+		this.cancelled = cancelled;
+		this.durationMicros = durationMicros;
+	}
+
+	public Instant getStart() {
+		return start;
+	}
+
+	public String getUpstream() {
+		return upstream;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public String getRequestContentType() {
+		return requestContentType;
+	}
+
+	public Integer getStatus() {
+		return status;
+	}
+
+	public String getResponseContentType() {
+		return responseContentType;
+	}
+
+	public Long getResponseContentLength() {
+		return responseContentLength;
+	}
+
+	public ErrorType getErrorType() {
+		return errorType;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public long getDurationMicros() {
+		return durationMicros;
+	}
+
+	@Override
+	public String toString() {
+		return "TraceRecord [upstream=" + upstream + ", " + method + " " + uri + ", status=" + status + ", errorType="
+				+ errorType + ", error=" + error + ", cancelled=" + cancelled + ", durationMicros=" + durationMicros
+				+ "]";
+	}
+}
@@ -0,0 +1,90 @@
+package it.blog.webclient.component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+import reactor.core.publisher.Mono;
+
+/*
+ * Head-based sampling of the upstream exchanges: the decision is taken when the request starts, exchanges
+ * not sampled go through untouched. Sampled ones are summarised in a ring buffer and written to the
+ * "it.blog.webclient.trace" logger, bound to an async appender in logback-spring.xml: the event loop
+ * never waits for the log I/O.
+ */
+@Component
+@Order(200)
+public class TracingFilter implements UpstreamFilter {
+
+	private static Logger traceLog = LoggerFactory.getLogger("it.blog.webclient.trace");
+
+	@Autowired
+	UpstreamProperties properties;
+
+	private TraceBuffer buffer;
+
+	@PostConstruct
+	public void init() {
+		buffer = new TraceBuffer(properties.getTracing().getBufferSize());
+	}
+
+	@Override
+	public ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream) {
+		double sampleRate = properties.getTracing().getSampleRate();
+		if (sampleRate <= 0) {
+			return null;
+		}
+
+		return (request, next) -> {
+			if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+				return next.exchange(request);
+			}
+
+			return Mono.defer(() -> {
+				Instant start = Instant.now();
+				long started = System.nanoTime();
+				return next.exchange(request) //
+						.doOnNext(response -> trace(name, request, start, started, response, null, false)) //
+						.doOnError(error -> trace(name, request, start, started, null, error, false)) //
+						.doOnCancel(() -> trace(name, request, start, started, null, null, true));
+			});
+		};
+	}
+
+	public List<TraceRecord> recent() {
+		return buffer.recent();
+	}
+
+	private void trace(String upstream, ClientRequest request, Instant start, long started, ClientResponse response,
+			Throwable error, boolean cancelled) {
+
+		MediaType requestContentType = request.headers().getContentType();
+		MediaType responseContentType = response != null ? response.headers().contentType().orElse(null) : null;
+		ErrorType errorType = response != null ? ErrorType.of(response.rawStatusCode())
+				: error instanceof WebClientException ? ((WebClientException) error).getType()
+						: error != null ? ErrorType.NETWORK : null;
+
+		TraceRecord record = new TraceRecord(start, upstream, request.method().name(), request.url().toString(),
+				requestContentType != null ? requestContentType.toString() : null,
+				response != null ? response.rawStatusCode() : null,
+				responseContentType != null ? responseContentType.toString() : null,
+				response != null && response.headers().contentLength().isPresent()
+						? response.headers().contentLength().getAsLong() : null,
+				errorType, error != null ? error.toString() : null, cancelled, (System.nanoTime() - started) / 1000);
+
+		buffer.add(record);
+		traceLog.info("{}", record);
+	}
+}
@@ -0,0 +1,16 @@
+package it.blog.webclient.component;
+
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+
+/*
+ * Filter added by WebClientRegistry to the WebClient of every upstream.
+ * Beans are applied by @Order, the lowest order is the outermost filter of the chain.
+ */
+public interface UpstreamFilter {
+
+	/*
+	 * Return null to leave the upstream without this filter
+	 */
+	ExchangeFilterFunction forUpstream(String name, UpstreamProperties.Upstream upstream);
+
+}
@@ -0,0 +1,139 @@
+package it.blog.webclient.component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.http.HttpMethod;
+
+/*
+ * Outbound calls to one upstream: a latency histogram for every method, status class and ErrorType,
+ * the calls in flight and the time spent acquiring a pooled connection.
+ * Histograms are indexed by ordinals and created on first use, recording doesn't allocate.
+ */
+public class UpstreamMetrics {
+
+	private static final HttpMethod[] METHODS = HttpMethod.values();
+	private static final ErrorType[] ERROR_TYPES = ErrorType.values();
+
+	/*
+	 * 0 when there is no status (network error), 1xx to 5xx otherwise
+	 */
+	private static final int STATUS_CLASSES = 6;
+	/*
+	 * 0 when the call succeeded, ErrorType ordinal + 1 otherwise
+	 */
+	private static final int ERRORS = ERROR_TYPES.length + 1;
+
+	private final AtomicReferenceArray<LatencyHistogram> timers = new AtomicReferenceArray<>(
+			METHODS.length * STATUS_CLASSES * ERRORS);
+
+	private final LongAdder inFlight = new LongAdder();
+	private final LongAdder cancelled = new LongAdder();
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder callNanos = new LongAdder();
+	private final LongAdder callAcquireNanos = new LongAdder();
+	private final LatencyHistogram acquire = new LatencyHistogram();
+
+	public void started() {
+		inFlight.increment();
+	}
+
+	public void finished() {
+		inFlight.decrement();
+	}
+
+	public void cancelled() {
+		cancelled.increment();
+	}
+
+	public void record(HttpMethod method, int status, ErrorType type, long nanos) {
+		record(method, status, type, nanos, 0);
+	}
+
+	/*
+	 * acquireNanos: the part of nanos spent waiting for a pooled connection
+	 */
+	public void record(HttpMethod method, int status, ErrorType type, long nanos, long acquireNanos) {
+		int statusClass = status >= 100 && status < 600 ? status / 100 : 0;
+		int error = type == null ? 0 : type.ordinal() + 1;
+		int index = (method.ordinal() * STATUS_CLASSES + statusClass) * ERRORS + error;
+
+		LatencyHistogram timer = timers.get(index);
+		if (timer == null) {
+			timers.compareAndSet(index, null, new LatencyHistogram());
+			timer = timers.get(index);
+		}
+		timer.record(nanos);
+		calls.increment();
+		callNanos.add(nanos);
+		callAcquireNanos.add(acquireNanos);
+	}
+
+	public void recordAcquire(long nanos) {
+		acquire.record(nanos);
+	}
+
+	public long inFlight() {
+		return inFlight.sum();
+	}
+
+	/*
+	 * Calls completed and their total latency since the start, the difference between two readings gives
+	 * throughput and mean latency in between
+	 */
+	public long calls() {
+		return calls.sum();
+	}
+
+	public long callNanos() {
+		return callNanos.sum();
+	}
+
+	/*
+	 * Of callNanos, the time the same calls waited for a connection
+	 */
+	public long callAcquireNanos() {
+		return callAcquireNanos.sum();
+	}
+
+	public Map<String, Object> snapshot() {
+		List<Map<String, Object>> calls = new ArrayList<>();
+		for (int index = 0; index < timers.length(); index++) {
+			LatencyHistogram timer = timers.get(index);
+			if (timer == null) {
+				continue;
+			}
+			int error = index % ERRORS;
+			int statusClass = (index / ERRORS) % STATUS_CLASSES;
+			int method = index / ERRORS / STATUS_CLASSES;
+
+			Map<String, Object> call = new LinkedHashMap<>();
+			call.put("method", METHODS[method]);
+			call.put("status", statusClass == 0 ? "none" : statusClass + "xx");
+			call.put("errorType", error == 0 ? "none" : ERROR_TYPES[error - 1]);
+			call.putAll(summary(timer));
+			calls.add(call);
+		}
+
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("inFlight", inFlight.sum());
+		snapshot.put("cancelled", cancelled.sum());
+		snapshot.put("poolAcquire", summary(acquire));
+		snapshot.put("calls", calls);
+		return snapshot;
+	}
+
+	static Map<String, Object> summary(LatencyHistogram histogram) {
+		Map<String, Object> summary = new LinkedHashMap<>();
+		summary.put("count", histogram.count());
+		summary.put("meanMillis", histogram.mean().toNanos() / 1e6);
+		summary.put("p50Millis", histogram.percentile(50).toNanos() / 1e6);
+		summary.put("p90Millis", histogram.percentile(90).toNanos() / 1e6);
+		summary.put("p99Millis", histogram.percentile(99).toNanos() / 1e6);
+		return summary;
+	}
+}
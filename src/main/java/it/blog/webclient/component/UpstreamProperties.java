@@ -0,0 +1,411 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+import reactor.netty.http.HttpProtocol;
+
+/*
+ * Upstream services called by the WebClients, bound from the "webclient.upstreams.<name>.*" properties
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "webclient")
+public class UpstreamProperties {
+
+	private Map<String, Upstream> upstreams = new LinkedHashMap<>();
+
+	private Tracing tracing = new Tracing();
+
+	/*
+	 * See TracingFilter
+	 */
+	@Data
+	public static class Tracing {
+
+		/*
+		 * Fraction of the exchanges traced, 0 disables the tracing
+		 */
+		private double sampleRate = 0.01;
+
+		private int bufferSize = 256;
+	}
+
+	@Data
+	public static class Upstream {
+
+		private String baseUrl;
+
+		/*
+		 * Replicas of the upstream, each call goes to one of them, see LoadBalancer. Without them base-url is
+		 * the only replica.
+		 */
+		private List<String> endpoints = new ArrayList<>();
+
+		private Balancer balancer = new Balancer();
+
+		private Pool pool = new Pool();
+
+		private Http http = new Http();
+
+		private Timeout timeout = new Timeout();
+
+		private Cache cache = new Cache();
+
+		private Coalescing coalescing = new Coalescing();
+
+		private Hedging hedging = new Hedging();
+
+		private Breaker breaker = new Breaker();
+
+		private Retry retry = new Retry();
+
+		private Limiter limiter = new Limiter();
+	}
+
+	/*
+	 * See LoadBalancer
+	 */
+	@Data
+	public static class Balancer {
+
+		/*
+		 * Consecutive NETWORK or HTTPSTATUS5XX outcomes ejecting a replica
+		 */
+		private int consecutiveFailures = 5;
+
+		/*
+		 * Ejection of a replica, multiplied by the ejections since its last success
+		 */
+		private Duration baseEjectionTime = Duration.ofSeconds(30);
+
+		private Duration maxEjectionTime = Duration.ofMinutes(5);
+
+		/*
+		 * Replicas never ejected beyond this percentage, the others keep serving the upstream
+		 */
+		private double maxEjectionPercent = 50;
+
+		/*
+		 * Time constant of the latency average, older samples weigh less
+		 */
+		private Duration latencyDecay = Duration.ofSeconds(10);
+	}
+
+	/*
+	 * Reactor Netty ConnectionProvider settings, one pool for each upstream
+	 */
+	@Data
+	public static class Pool {
+
+		private int maxConnections = 50;
+
+		private int pendingAcquireMaxCount = 200;
+
+		private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+		private Duration maxIdleTime = Duration.ofSeconds(30);
+
+		private Duration maxLifeTime = Duration.ofMinutes(5);
+
+		private Duration evictInBackground = Duration.ofSeconds(60);
+
+		private Tuning tuning = new Tuning();
+	}
+
+	/*
+	 * See PoolTuner: max-connections (h2-max-connections with H2C) and pending-acquire-max-count follow the
+	 * load, between min-connections and max-connections
+	 */
+	@Data
+	public static class Tuning {
+
+		private boolean enabled = false;
+
+		private Duration interval = Duration.ofSeconds(10);
+
+		/*
+		 * Least time between two resizes: each one closes the warm connections of the old pool
+		 */
+		private Duration minResizeInterval = Duration.ofMinutes(1);
+
+		private int minConnections = 10;
+
+		private int maxConnections = 200;
+
+		/*
+		 * p99 of the pool acquisition over an interval beyond which the pool grows
+		 */
+		private Duration maxAcquireWait = Duration.ofMillis(5);
+
+		/*
+		 * Connections kept on top of calls per second x mean latency (Little's law), more than 1 for the pool
+		 * to grow
+		 */
+		private double headroom = 1.5;
+
+		/*
+		 * pending-acquire-max-count for each connection
+		 */
+		private double pendingPerConnection = 4;
+
+		/*
+		 * No growth while the mean latency exceeds its baseline by this factor: the upstream is the
+		 * bottleneck, more connections would only queue there
+		 */
+		private double maxLatencyRatio = 2;
+	}
+
+	/*
+	 * Protocol and compression on the connections of the upstream
+	 */
+	@Data
+	public static class Http {
+
+		/*
+		 * H2C alone is HTTP/2 with prior knowledge, HTTP11 and H2C upgrade the first request of each connection.
+		 * With H2C the calls are streams multiplexed over h2-max-connections connections, instead of
+		 * pool.max-connections.
+		 */
+		private List<HttpProtocol> protocols = new ArrayList<>(List.of(HttpProtocol.HTTP11));
+
+		private int h2MaxConnections = 2;
+
+		/*
+		 * Streams of one connection, the SETTINGS of the upstream can lower it
+		 */
+		private long h2MaxConcurrentStreams = 100;
+
+		/*
+		 * Accept-Encoding: gzip, compressed responses are inflated by the client
+		 */
+		private boolean compression = false;
+
+		/*
+		 * Request bodies from request-compression-min-size are sent gzipped, the upstream must accept
+		 * Content-Encoding: gzip. See RequestCompressionFilter.
+		 */
+		private boolean requestCompression = false;
+
+		private DataSize requestCompressionMinSize = DataSize.ofKilobytes(1);
+	}
+
+	/*
+	 * Upper bounds of the Netty client, the adaptive timeout below usually fires much earlier
+	 */
+	@Data
+	public static class Timeout {
+
+		private Duration connect = Duration.ofSeconds(2);
+
+		private Duration response = Duration.ofSeconds(10);
+
+		private Duration read = Duration.ofSeconds(10);
+
+		private Duration write = Duration.ofSeconds(10);
+
+		private Adaptive adaptive = new Adaptive();
+	}
+
+	/*
+	 * Response timeout following the recent latency of the upstream, see CircuitBreakerFilter
+	 */
+	@Data
+	public static class Adaptive {
+
+		private boolean enabled = false;
+
+		private double percentile = 99;
+
+		private double multiplier = 2;
+
+		private Duration min = Duration.ofMillis(100);
+
+		/*
+		 * Timeout used until min-samples latencies are recorded, and upper bound afterwards
+		 */
+		private Duration max = Duration.ofSeconds(5);
+
+		private int minSamples = 20;
+
+		private Duration window = Duration.ofSeconds(60);
+	}
+
+	/*
+	 * Client side cache of GET responses, see ResponseCacheFilter
+	 */
+	@Data
+	public static class Cache {
+
+		private boolean enabled = false;
+
+		private int maxEntries = 100;
+
+		private Duration ttl = Duration.ofSeconds(30);
+
+		/*
+		 * Past the TTL an entry is still served at once for this long, while one call refreshes it in background
+		 */
+		private Duration staleWhileRevalidate = Duration.ZERO;
+
+		/*
+		 * Past the TTL an entry replaces a failed call for this long: the max staleness served during an outage
+		 */
+		private Duration staleIfError = Duration.ZERO;
+
+		/*
+		 * Request headers that change the response, part of the key together with the URI and the request
+		 * headers named by the Vary of the cached response
+		 */
+		private List<String> keyHeaders = new ArrayList<>(List.of(HttpHeaders.ACCEPT, HttpHeaders.AUTHORIZATION));
+	}
+
+	/*
+	 * Concurrent identical GETs share one upstream call, see CoalescingFilter
+	 */
+	@Data
+	public static class Coalescing {
+
+		private boolean enabled = false;
+
+		/*
+		 * Request headers that change the response, part of the key together with method and URI
+		 */
+		private List<String> keyHeaders = new ArrayList<>(List.of(HttpHeaders.ACCEPT, HttpHeaders.AUTHORIZATION));
+	}
+
+	/*
+	 * Second GET when the first one is slower than the percentile of the recent latency, see HedgingFilter
+	 */
+	@Data
+	public static class Hedging {
+
+		private boolean enabled = false;
+
+		private double percentile = 95;
+
+		private Duration minDelay = Duration.ofMillis(10);
+
+		/*
+		 * Delay used until min-samples latencies are recorded, and upper bound afterwards
+		 */
+		private Duration maxDelay = Duration.ofSeconds(2);
+
+		private int minSamples = 20;
+
+		/*
+		 * Latencies older than two windows are forgotten
+		 */
+		private Duration window = Duration.ofSeconds(60);
+
+		/*
+		 * Hedges as a percentage of the requests, plus a burst of budget-burst hedges
+		 */
+		private double budgetPercent = 5;
+
+		private double budgetBurst = 10;
+	}
+
+	/*
+	 * See CircuitBreaker
+	 */
+	@Data
+	public static class Breaker {
+
+		private boolean enabled = false;
+
+		private int windowSize = 20;
+
+		/*
+		 * The failure rate is not evaluated before minimum-calls outcomes
+		 */
+		private int minimumCalls = 10;
+
+		private double failureRateThreshold = 50;
+
+		private Duration openDuration = Duration.ofSeconds(10);
+
+		private int halfOpenProbes = 3;
+	}
+
+	/*
+	 * See RetryFilter
+	 */
+	@Data
+	public static class Retry {
+
+		private boolean enabled = false;
+
+		/*
+		 * First call included
+		 */
+		private int maxAttempts = 3;
+
+		private Duration baseBackoff = Duration.ofMillis(50);
+
+		private Duration maxBackoff = Duration.ofSeconds(1);
+
+		/*
+		 * POST and PATCH are retried only when the upstream is known to handle them idempotently
+		 */
+		private boolean allowNonIdempotent = false;
+
+		/*
+		 * Retries as a percentage of the requests, plus a burst of budget-burst retries
+		 */
+		private double budgetPercent = 10;
+
+		private double budgetBurst = 10;
+	}
+
+	/*
+	 * See AdaptiveLimiter
+	 */
+	@Data
+	public static class Limiter {
+
+		private boolean enabled = false;
+
+		private int initialLimit = 20;
+
+		private int minLimit = 2;
+
+		private int maxLimit = 200;
+
+		/*
+		 * A call slower than latency-tolerance times the minimum latency is a sign of queueing upstream
+		 */
+		private double latencyTolerance = 2;
+
+		/*
+		 * Multiplicative decrease of the limit on slow or failed calls
+		 */
+		private double backoffRatio = 0.9;
+
+		/*
+		 * Minimum latency measured over this window, the previous one is forgotten
+		 */
+		private Duration latencyWindow = Duration.ofSeconds(30);
+
+		/*
+		 * Calls waiting for a permit, beyond these the call fails at once
+		 */
+		private int maxQueue = 50;
+
+		private Duration maxQueueWait = Duration.ofMillis(500);
+
+		/*
+		 * Sent as Retry-After to the callers of a saturated upstream
+		 */
+		private Duration retryAfter = Duration.ofSeconds(1);
+	}
+}
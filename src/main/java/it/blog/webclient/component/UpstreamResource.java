@@ -0,0 +1,40 @@
+package it.blog.webclient.component;
+
+/*
+ * A GET of one upstream resource, decoded to type
+ */
+public class UpstreamResource<T> {
+
+	private final String name;
+	private final String upstream;
+	private final String path;
+	private final Class<T> type;
+
+	public UpstreamResource(String name, String upstream, String path, Class<T> type) {
+		this.name = name;
+		this.upstream = upstream;
+		this.path = path;
+		this.type = type;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getUpstream() {
+		return upstream;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		return "UpstreamResource [name=" + name + ", upstream=" + upstream + ", path=" + path + "]";
+	}
+}
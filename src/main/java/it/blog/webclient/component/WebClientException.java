@@ -1,14 +1,26 @@
 package it.blog.webclient.component;
 
+import java.time.Duration;
+
 public class WebClientException extends Exception {
 	
 	private ErrorType type;
+
+	/*
+	 * When the call is worth trying again, null if unknown
+	 */
+	private Duration retryAfter;
 	
 	public WebClientException(String message, ErrorType type) {
 		super(message);
 		this.type = type;		
 	}
 
+	public WebClientException(String message, ErrorType type, Duration retryAfter) {
+		this(message, type);
+		this.retryAfter = retryAfter;
+	}
+
 	public ErrorType getType() {
 		return type;
 	}
@@ -16,6 +28,10 @@ public class WebClientException extends Exception {
 	public void setType(ErrorType type) {
 		this.type = type;
 	}
+
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
 	
 
 }
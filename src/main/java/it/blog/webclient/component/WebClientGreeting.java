@@ -2,7 +2,7 @@ package it.blog.webclient.component;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
@@ -14,7 +14,6 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.ClientRequest;
@@ -30,7 +29,9 @@ import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
 import it.blog.webclient.Greeting;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.client.HttpClient;
 
 public class WebClientGreeting {
@@ -43,14 +44,24 @@ public class WebClientGreeting {
 				.defaultUriVariables(Collections.singletonMap("url", url)).build();
 	}
 
-	public static WebClient getWebClientWithTimeout() {
-		HttpClient httpClient = HttpClient.create().option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 50000)
-				.responseTimeout(Duration.ofMillis(50000))
-				.doOnConnected(conn -> conn.addHandlerLast(new ReadTimeoutHandler(50000, TimeUnit.MILLISECONDS))
-						.addHandlerLast(new WriteTimeoutHandler(50000, TimeUnit.MILLISECONDS)));
-
-		return WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+	/*
+	 * The HttpClient shares the pooled connections of its provider, build it once per upstream
+	 */
+	public static HttpClient withTimeout(HttpClient pooledClient, UpstreamProperties.Timeout timeout) {
+		HttpClient httpClient = pooledClient
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) timeout.getConnect().toMillis())
+				.responseTimeout(timeout.getResponse());
 
+		/*
+		 * An HTTP/2 connection is shared by the streams and idles between the calls: it is closed by
+		 * max-idle-time, every stream is bounded by the response timeout
+		 */
+		if (!Arrays.asList(pooledClient.configuration().protocols()).contains(HttpProtocol.H2C)) {
+			httpClient = httpClient.doOnConnected(conn -> conn
+					.addHandlerLast(new ReadTimeoutHandler(timeout.getRead().toMillis(), TimeUnit.MILLISECONDS))
+					.addHandlerLast(new WriteTimeoutHandler(timeout.getWrite().toMillis(), TimeUnit.MILLISECONDS)));
+		}
+		return httpClient;
 	}
 
 	public static WebClient getWebClientWithHandlerException() {
@@ -97,18 +108,21 @@ public class WebClientGreeting {
 				.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE) //
 				.accept(MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML) //
 				.acceptCharset(StandardCharsets.UTF_8) //
-				.ifNoneMatch("*") //
-				.ifModifiedSince(ZonedDateTime.now()).retrieve();
+				/*
+				 * If-None-Match / If-Modified-Since are sent by ResponseCacheFilter when revalidating
+				 */
+				.retrieve();
 
 		Mono<ResponseEntity<Greeting>> greetingMono = responseSpec.toEntity(Greeting.class);
 
 		return greetingMono;
 	}
 
+	/*
+	 * Exchanges are traced by TracingFilter, sampled and off the event loop
+	 */
 	private static Mono<ClientResponse> exchangeFilterResponseProcessor(ClientResponse clientResponse) {
 
-		log.info("exchangeFilterResponseProcessor {}", clientResponse);
-
 		HttpStatus status = clientResponse.statusCode();
 		if (status.is5xxServerError()) {
 			return clientResponse.bodyToMono(String.class).flatMap(body -> Mono.just(clientResponse));
@@ -119,8 +133,6 @@ public class WebClientGreeting {
 			return Mono.error(new HttpClientErrorException(HttpStatus.NOT_FOUND, "Entity not found."));
 		}
 
-		log.info(String.valueOf(clientResponse.statusCode()));
-
 		// return Mono.just(response);
 		return Mono.just(ClientResponse.create(HttpStatus.BAD_REQUEST).body("Ops...something goes wrong").build());
 		// return Mono.just(clientResponse);
@@ -128,15 +140,7 @@ public class WebClientGreeting {
 
 	private static Mono<ClientRequest> exchangeFilterRequestProcessor(ClientRequest clientRequest) {
 
-		if (log.isDebugEnabled()) {
-			StringBuilder sb = new StringBuilder("Request: \n");
-			// append clientRequest method and url
-			clientRequest.headers().forEach((name, values) -> values.forEach(value -> {
-				sb.append(name);
-				sb.append(values);
-			}));
-			log.debug(sb.toString());
-		}
+		log.debug("Request: {} {}", clientRequest.method(), clientRequest.url());
 		return Mono.just(clientRequest);
 	}
 	
@@ -145,7 +149,7 @@ public class WebClientGreeting {
 		log.info("Calling handleAllPossibleExceptionPost with Greeting {}", greeting);
 
 		Mono<Greeting> result = client.post() //
-				.uri("http://localhost:8081/greeting/{from}", greeting.getFrom())//
+				.uri("/greeting/{from}", greeting.getFrom())//
 				.contentType(MediaType.APPLICATION_JSON) //
 				.bodyValue(greeting) //
 				.retrieve() //
@@ -172,10 +176,7 @@ public class WebClientGreeting {
 				 * Catch all no http error status detected (Connection refused, timeout
 				 * connection, host not found, ...
 				 */
-				.onErrorMap(Predicate.not(WebClientException.class::isInstance), throwable -> {
-					log.error("Failed to send requesto to service", throwable);
-					return new WebClientException("Failed to send requesto to service", ErrorType.NETWORK);
-				})
+				.onErrorMap(Predicate.not(WebClientException.class::isInstance), WebClientGreeting::toWebClientException)
 				/*
 				 * Catch all error above
 				 */
@@ -185,12 +186,47 @@ public class WebClientGreeting {
 
 	}
 
+	/*
+	 * Greetings are posted to /greeting/{from}/batch as NDJSON, batchSize at a time or whatever arrived within
+	 * linger. windowTimeout with fair backpressure only pulls from greetings what the batches in flight can take,
+	 * the batch is collected so that a retry can send it again. Results keep the order of the greetings.
+	 */
+	public static Flux<Greeting> postGreetingsBatch(WebClient client, String from, Flux<Greeting> greetings,
+			int batchSize, Duration linger, int concurrency) {
+
+		return greetings.windowTimeout(batchSize, linger, true) //
+				.concatMap(Flux::collectList, 1) //
+				.filter(batch -> !batch.isEmpty()) //
+				.flatMapSequential(batch -> client.post() //
+						.uri("/greeting/{from}/batch", from) //
+						.contentType(MediaType.APPLICATION_NDJSON) //
+						.accept(MediaType.APPLICATION_NDJSON) //
+						.body(Flux.fromIterable(batch), Greeting.class) //
+						.retrieve() //
+						.onStatus(HttpStatus::isError, response -> Mono.error(new WebClientException(
+								"Service response non 200", ErrorType.of(response.rawStatusCode())))) //
+						.bodyToFlux(Greeting.class), concurrency) //
+				.onErrorMap(Predicate.not(WebClientException.class::isInstance), WebClientGreeting::toWebClientException);
+	}
+
+	/*
+	 * WebClientException raised by the filters (CIRCUIT_OPEN, ...) reach here wrapped in a
+	 * WebClientRequestException, all the rest is a network failure
+	 */
+	public static WebClientException toWebClientException(Throwable throwable) {
+		if (throwable.getCause() instanceof WebClientException) {
+			return (WebClientException) throwable.getCause();
+		}
+		log.error("Failed to send requesto to service", throwable);
+		return new WebClientException("Failed to send requesto to service", ErrorType.NETWORK);
+	}
+
 	// https://medium.com/a-developers-odyssey/spring-web-client-exception-handling-cd93cf05b76
 	// https://www.baeldung.com/spring-webflux-timeout#exception-handling
 	
 	public static Mono<Greeting> handleAllPossibleException(WebClient client, Greeting greeting) {
 		Mono<Greeting> result = client.get() //
-				.uri("http://localhost:8081/message") //
+				.uri("/message") //
 				.retrieve() //
 				/*
 				 * Catch Http error status
@@ -215,10 +251,7 @@ public class WebClientGreeting {
 				 * Catch all no http error status detected (Connection refused, timeout
 				 * connection, host not found, ...
 				 */
-				.onErrorMap(Predicate.not(WebClientException.class::isInstance), throwable -> {
-					log.error("Failed to send requesto to service", throwable);
-					return new WebClientException("Failed to send requesto to service", ErrorType.NETWORK);
-				})
+				.onErrorMap(Predicate.not(WebClientException.class::isInstance), WebClientGreeting::toWebClientException)
 				/*
 				 * Catch all error above
 				 */
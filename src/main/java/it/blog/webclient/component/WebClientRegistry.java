@@ -0,0 +1,112 @@
+package it.blog.webclient.component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.netty.http.HttpProtocol;
+
+/*
+ * Long-lived WebClients, one for each upstream configured in UpstreamProperties.
+ * Every client owns its ConnectionProvider (see ConnectionPools), so keep-alive connections are reused across
+ * calls and a slow upstream can't exhaust the connections of the others.
+ */
+@Component
+public class WebClientRegistry {
+
+	public static final String GREETING = "greeting";
+	public static final String BACKEND = "backend";
+
+	private static Logger log = LoggerFactory.getLogger(WebClientRegistry.class);
+
+	@Autowired
+	UpstreamProperties properties;
+
+	@Autowired
+	WebClient.Builder webClientBuilder;
+
+	@Autowired
+	ObjectProvider<UpstreamFilter> filters;
+
+	@Autowired
+	HttpMetricsFilter httpMetrics;
+
+	@Autowired
+	LoadBalancerFilter loadBalancer;
+
+	@Autowired
+	ConnectionPools pools;
+
+	private final Map<String, WebClient> clients = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() {
+		properties.getUpstreams().forEach(this::register);
+	}
+
+	public WebClient get(String name) {
+		WebClient client = clients.get(name);
+		if (client == null) {
+			throw new IllegalArgumentException("Upstream not configured: " + name);
+		}
+		return client;
+	}
+
+	/*
+	 * One of the replicas of the upstream, for the callers outside its WebClient
+	 */
+	public String baseUrl(String name) {
+		String replica = loadBalancer.choose(name);
+		return replica != null ? replica : upstream(name).getBaseUrl();
+	}
+
+	public UpstreamProperties.Upstream upstream(String name) {
+		UpstreamProperties.Upstream upstream = properties.getUpstreams().get(name);
+		if (upstream == null) {
+			throw new IllegalArgumentException("Upstream not configured: " + name);
+		}
+		return upstream;
+	}
+
+	private void register(String name, UpstreamProperties.Upstream upstream) {
+		UpstreamProperties.Http http = upstream.getHttp();
+
+		WebClient.Builder builder = webClientBuilder.clone();
+		/*
+		 * The replica is chosen by LoadBalancerFilter for every call, the base URL only gives the default
+		 */
+		if (upstream.getBaseUrl() != null) {
+			builder.baseUrl(upstream.getBaseUrl());
+		} else if (!upstream.getEndpoints().isEmpty()) {
+			builder.baseUrl(upstream.getEndpoints().get(0));
+		}
+		filters.orderedStream() //
+				.map(filter -> filter.forUpstream(name, upstream)) //
+				.filter(Objects::nonNull) //
+				.forEach(builder::filter);
+
+		/*
+		 * Applied again to every pool built by ConnectionPools.resize
+		 */
+		ClientHttpConnector connector = pools.register(name, upstream,
+				httpClient -> WebClientGreeting.withTimeout(httpMetrics.instrument(name, httpClient //
+						.protocol(http.getProtocols().toArray(new HttpProtocol[0])) //
+						.compress(http.isCompression())), upstream.getTimeout()));
+
+		clients.put(name, builder.clientConnector(connector).build());
+
+		log.info("Registered upstream {} - {} ({} max connections, {})", name,
+				upstream.getEndpoints().isEmpty() ? upstream.getBaseUrl() : upstream.getEndpoints(),
+				pools.limits(name).getMaxConnections(), http.getProtocols());
+	}
+}
@@ -0,0 +1,49 @@
+package it.blog.webclient.component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Latency of the last one or two windows: two histograms, the older one is reset and reused when a window expires.
+ * Percentiles follow the recent behaviour of the upstream instead of its whole history.
+ */
+public class WindowedLatency {
+
+	private final LatencyHistogram[] histograms = { new LatencyHistogram(), new LatencyHistogram() };
+	private final long window;
+	private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+	private volatile int current = 0;
+
+	public WindowedLatency(Duration window) {
+		this.window = window.toNanos();
+	}
+
+	public void record(long nanos) {
+		rotate();
+		histograms[current].record(nanos);
+	}
+
+	public long count() {
+		return histograms[0].count() + histograms[1].count();
+	}
+
+	public Duration percentile(double percentile) {
+		rotate();
+		/*
+		 * The current window alone until it has enough samples
+		 */
+		LatencyHistogram recent = histograms[current];
+		LatencyHistogram previous = histograms[1 - current];
+		return recent.count() >= previous.count() ? recent.percentile(percentile) : previous.percentile(percentile);
+	}
+
+	private void rotate() {
+		long start = windowStart.get();
+		long now = System.nanoTime();
+		if (now - start >= window && windowStart.compareAndSet(start, now)) {
+			int next = 1 - current;
+			histograms[next].reset();
+			current = next;
+		}
+	}
+}
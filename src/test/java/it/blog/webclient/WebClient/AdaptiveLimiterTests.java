@@ -0,0 +1,125 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import it.blog.webclient.component.AdaptiveLimiter;
+import it.blog.webclient.component.UpstreamProperties;
+
+/*
+ * The limit grows by about one permit per round of fast calls while it is being used, and is multiplied by
+ * backoff-ratio on a slow or failed call, at most once per minimum latency and never below min-limit
+ */
+class AdaptiveLimiterTests {
+
+	static final long FAST = Duration.ofMillis(20).toNanos();
+	static final long SLOW = Duration.ofMillis(200).toNanos();
+
+	@Test
+	void growsWhileUsed() {
+
+		AdaptiveLimiter limiter = limiter(4);
+		List<AdaptiveLimiter.Permit> permits = acquire(limiter, 4);
+
+		/*
+		 * About 4 fast calls per permit at a limit of 4
+		 */
+		for (int i = 0; i < 10; i++) {
+			limiter.onSample(FAST, false);
+		}
+		assertEquals(6, limit(limiter));
+		permits.add(limiter.acquire().block(Duration.ofMillis(100)));
+		assertNotNull(permits.get(4), "a fifth call waits for a permit");
+
+		permits.forEach(AdaptiveLimiter.Permit::release);
+	}
+
+	@Test
+	void idleLimitDoesNotGrow() {
+
+		AdaptiveLimiter limiter = limiter(4);
+		AdaptiveLimiter.Permit permit = limiter.acquire().block();
+
+		for (int i = 0; i < 100; i++) {
+			limiter.onSample(FAST, false);
+		}
+		assertEquals(4, limit(limiter));
+
+		permit.release();
+		assertEquals(0, limiter.snapshot().get("inFlight"));
+	}
+
+	@Test
+	void shrinksOncePerMinimumLatency() {
+
+		AdaptiveLimiter limiter = limiter(20);
+		limiter.onSample(FAST, false);
+
+		limiter.onSample(SLOW, false);
+		assertEquals(18, limit(limiter));
+
+		/*
+		 * The same burst of slow calls counts once
+		 */
+		limiter.onSample(SLOW, false);
+		limiter.onSample(SLOW, true);
+		assertEquals(18, limit(limiter));
+
+		sleep(Duration.ofNanos(FAST * 2));
+		limiter.onSample(FAST, true);
+		assertEquals(16, limit(limiter));
+		assertEquals(2L, limiter.snapshot().get("decreases"));
+	}
+
+	@Test
+	void neverBelowTheMinimum() {
+
+		AdaptiveLimiter limiter = limiter(4);
+		limiter.onSample(Duration.ofMillis(1).toNanos(), false);
+
+		for (int i = 0; i < 10; i++) {
+			sleep(Duration.ofMillis(2));
+			limiter.onSample(SLOW, true);
+		}
+		assertEquals(2, limit(limiter));
+	}
+
+	private AdaptiveLimiter limiter(int initialLimit) {
+		UpstreamProperties.Limiter config = new UpstreamProperties.Limiter();
+		config.setEnabled(true);
+		config.setInitialLimit(initialLimit);
+		config.setMinLimit(2);
+		config.setMaxLimit(100);
+		config.setLatencyTolerance(2);
+		config.setBackoffRatio(0.9);
+		return new AdaptiveLimiter(config);
+	}
+
+	private List<AdaptiveLimiter.Permit> acquire(AdaptiveLimiter limiter, int count) {
+		List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			permits.add(limiter.acquire().block());
+		}
+		assertTrue(permits.stream().allMatch(permit -> permit != null));
+		return permits;
+	}
+
+	private int limit(AdaptiveLimiter limiter) {
+		return (int) limiter.snapshot().get("limit");
+	}
+
+	private void sleep(Duration duration) {
+		try {
+			Thread.sleep(Math.max(1, duration.toMillis()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import javax.servlet.FilterChain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import it.blog.webclient.AdmissionFilter;
+import it.blog.webclient.WebClientApplication;
+
+/*
+ * A request over the concurrency of its class waits for a slot at most max-queue-time, or not at all when
+ * max-queue requests are already waiting, then it is refused with 503. Slots go to the waiting requests in
+ * their order of arrival.
+ */
+class AdmissionTests {
+
+	static final String PATH = "/clientNoReactive";
+	static final Duration QUEUE_TIME = Duration.ofMillis(200);
+
+	@Test
+	void refusedAfterTheQueueTime() throws Exception {
+
+		try (ConfigurableApplicationContext context = context(QUEUE_TIME)) {
+
+			AdmissionFilter filter = context.getBean(AdmissionFilter.class);
+			CountDownLatch done = new CountDownLatch(1);
+			Thread holder = request(filter, (request, response) -> await(done));
+			assertTrue(await(() -> stat(filter, "inFlight") == 1), "slot not taken");
+
+			long start = System.nanoTime();
+			MockHttpServletResponse refused = request(filter);
+			Duration waited = Duration.ofNanos(System.nanoTime() - start);
+
+			assertEquals(503, refused.getStatus());
+			assertEquals("2", refused.getHeader("Retry-After"));
+			assertTrue(waited.compareTo(QUEUE_TIME) >= 0, "refused after " + waited);
+			assertEquals(1, stat(filter, "queueTimeouts"));
+
+			done.countDown();
+			holder.join();
+			assertEquals(200, request(filter).getStatus());
+			assertEquals(0, stat(filter, "inFlight"));
+		}
+	}
+
+	@Test
+	void refusedAtOnceWhenTheQueueIsFull() throws Exception {
+
+		try (ConfigurableApplicationContext context = context(Duration.ofSeconds(5))) {
+
+			AdmissionFilter filter = context.getBean(AdmissionFilter.class);
+			CountDownLatch done = new CountDownLatch(1);
+			Thread holder = request(filter, (request, response) -> await(done));
+			assertTrue(await(() -> stat(filter, "inFlight") == 1), "slot not taken");
+			Thread first = request(filter, (request, response) -> {
+			});
+			Thread second = request(filter, (request, response) -> {
+			});
+			assertTrue(await(() -> stat(filter, "waiting") == 2), "requests not waiting");
+
+			long start = System.nanoTime();
+			MockHttpServletResponse refused = request(filter);
+			Duration waited = Duration.ofNanos(System.nanoTime() - start);
+
+			assertEquals(503, refused.getStatus());
+			assertTrue(waited.compareTo(QUEUE_TIME) < 0, "refused after " + waited);
+			assertEquals(1, stat(filter, "queueFull"));
+
+			done.countDown();
+			holder.join();
+			first.join();
+			second.join();
+			assertEquals(3, stat(filter, "accepted"));
+		}
+	}
+
+	@Test
+	void slotsInOrderOfArrival() throws Exception {
+
+		try (ConfigurableApplicationContext context = context(Duration.ofSeconds(5))) {
+
+			AdmissionFilter filter = context.getBean(AdmissionFilter.class);
+			CountDownLatch done = new CountDownLatch(1);
+			Thread holder = request(filter, (request, response) -> await(done));
+			assertTrue(await(() -> stat(filter, "inFlight") == 1), "slot not taken");
+
+			List<Integer> admitted = new CopyOnWriteArrayList<>();
+			Thread[] waiting = new Thread[2];
+			for (int i = 0; i < waiting.length; i++) {
+				int arrival = i;
+				waiting[i] = request(filter, (request, response) -> admitted.add(arrival));
+				assertTrue(await(() -> stat(filter, "waiting") == arrival + 1), "request not waiting");
+				/*
+				 * Counted as waiting just before it queues on the semaphore
+				 */
+				Thread.sleep(50);
+			}
+
+			done.countDown();
+			holder.join();
+			for (Thread thread : waiting) {
+				thread.join();
+			}
+			assertEquals(List.of(0, 1), admitted);
+		}
+	}
+
+	/*
+	 * The broad pattern of a class listed first doesn't take the requests of a more specific class listed later
+	 */
+	@Test
+	void mostSpecificPatternFirst() throws Exception {
+
+		try (ConfigurableApplicationContext context = context(QUEUE_TIME,
+				"--greeting.admission.classes.blocking.paths=/client*",
+				"--greeting.admission.classes.reactive.paths=" + PATH)) {
+
+			AdmissionFilter filter = context.getBean(AdmissionFilter.class);
+			List<String> classes = new ArrayList<>(filter.snapshot().keySet());
+			assertTrue(classes.indexOf("blocking") < classes.indexOf("reactive"), classes.toString());
+
+			assertEquals(200, request(filter).getStatus());
+			assertEquals(0, stat(filter, "accepted"));
+			assertEquals(1L, filter.snapshot().get("reactive").get("accepted"));
+		}
+	}
+
+	/*
+	 * One slot and two waiting requests for the blocking class
+	 */
+	private ConfigurableApplicationContext context(Duration maxQueueTime, String... properties) {
+		List<String> args = new ArrayList<>(List.of("--greeting.server.netty.port=0", //
+				"--greeting.admission.enabled=true", //
+				"--greeting.admission.classes.blocking.max-concurrent=1", //
+				"--greeting.admission.classes.blocking.max-queue=2", //
+				"--greeting.admission.classes.blocking.max-queue-time=" + maxQueueTime.toMillis() + "ms"));
+		args.addAll(List.of(properties));
+		return new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE)
+				.run(args.toArray(new String[0]));
+	}
+
+	private MockHttpServletResponse request(AdmissionFilter filter) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(new MockHttpServletRequest("GET", PATH), response, (request, ignored) -> {
+		});
+		return response;
+	}
+
+	private Thread request(AdmissionFilter filter, FilterChain chain) {
+		Thread thread = new Thread(() -> {
+			try {
+				filter.doFilter(new MockHttpServletRequest("GET", PATH), new MockHttpServletResponse(), chain);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	private long stat(AdmissionFilter filter, String name) {
+		Map<String, Object> gate = filter.snapshot().get("blocking");
+		return ((Number) gate.get(name)).longValue();
+	}
+
+	private void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (System.nanoTime() < deadline) {
+			if (condition.getAsBoolean()) {
+				return true;
+			}
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return condition.getAsBoolean();
+	}
+}
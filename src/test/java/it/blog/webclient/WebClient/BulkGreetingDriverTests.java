@@ -0,0 +1,132 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationListener;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.WebClientApplication;
+import it.blog.webclient.WebClient.StubUpstream.Latency;
+import it.blog.webclient.WebClient.StubUpstream.Route;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * A replay stopped halfway and started again writes one outcome per record, in the order of the input:
+ * only the records in flight at the stop are posted twice, none is written twice
+ */
+class BulkGreetingDriverTests {
+
+	static final int RECORDS = 200;
+	static final int CONCURRENCY = 4;
+
+	Path directory;
+	Path input;
+	Path output;
+
+	@BeforeEach
+	void files() throws IOException {
+		directory = Files.createTempDirectory("bulk");
+		input = directory.resolve("greetings.ndjson");
+		output = directory.resolve("outcomes.ndjson");
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < RECORDS; i++) {
+			lines.add("{\"message\":\"Hello " + i + "\"}");
+		}
+		Files.write(input, lines);
+	}
+
+	@AfterEach
+	void delete() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	void stopAndResume() throws IOException {
+
+		try (StubUpstream stub = StubUpstream.builder() //
+				.route("/greeting/Milan", new Route().latency(Latency.fixed(Duration.ofMillis(10))) //
+						.body(new Greeting("Hello", "Milan"))) //
+				.start()) {
+
+			/*
+			 * 50 records per second: closed after 2s, more than half of them are left
+			 */
+			replay(stub, Duration.ofSeconds(2), "--greeting.bulk.rate=50");
+
+			long stopped = lines().size();
+			assertTrue(stopped > 0 && stopped < RECORDS, stopped + " outcomes written before the stop");
+			assertTrue(Files.exists(directory.resolve("outcomes.ndjson.checkpoint")));
+
+			replay(stub, null);
+
+			List<String> outcomes = lines();
+			assertEquals(RECORDS, outcomes.size());
+			assertTrue(outcomes.stream().allMatch(line -> line.startsWith("{\"greeting\":{")), outcomes.toString());
+
+			long posts = stub.stats("/greeting/Milan").getRequests();
+			assertTrue(posts >= RECORDS && posts <= RECORDS + CONCURRENCY, posts + " records posted");
+		}
+	}
+
+	@Test
+	void emptyBodiesHaveTheirLine() throws IOException {
+
+		try (StubUpstream stub = StubUpstream.builder() //
+				.route("/greeting/Nowhere", new Route().error(204, 1)) //
+				.start()) {
+
+			replay(stub, null, "--greeting.bulk.from=Nowhere");
+
+			List<String> outcomes = lines();
+			assertEquals(RECORDS, outcomes.size());
+			assertTrue(outcomes.stream().allMatch(line -> line.equals("{\"greeting\":null}")), outcomes.toString());
+		}
+	}
+
+	/*
+	 * The replay runs with the application, closing it after stopAfter stops the replay as a shutdown would
+	 */
+	private void replay(StubUpstream stub, Duration stopAfter, String... properties) {
+		List<String> args = new ArrayList<>(List.of("--greeting.server.netty.port=0", //
+				"--webclient.upstreams.backend.base-url=" + stub.getBaseUrl(), //
+				"--webclient.upstreams.backend.retry.enabled=false", //
+				"--greeting.bulk.enabled=true", //
+				"--greeting.bulk.input=" + input, //
+				"--greeting.bulk.output=" + output, //
+				"--greeting.bulk.checkpoint-every=10", //
+				"--greeting.bulk.concurrency=" + CONCURRENCY));
+		args.addAll(List.of(properties));
+
+		ApplicationListener<ApplicationStartedEvent> stopper = event -> {
+			if (stopAfter != null) {
+				Mono.delay(stopAfter).publishOn(Schedulers.boundedElastic())
+						.subscribe(tick -> event.getApplicationContext().close());
+			}
+		};
+		new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE).listeners(stopper)
+				.run(args.toArray(new String[0])).close();
+	}
+
+	private List<String> lines() throws IOException {
+		return Files.readAllLines(output);
+	}
+}
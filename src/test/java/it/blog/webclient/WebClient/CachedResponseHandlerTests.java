@@ -0,0 +1,115 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.WebApplicationContext;
+
+import it.blog.webclient.CachedResponse;
+import it.blog.webclient.Greeting;
+import it.blog.webclient.WebClientApplication;
+
+/*
+ * A @CachedResponse handler producing two media types: a strong ETag from the bytes, 304 for a matching
+ * If-None-Match, and one encoding for each media type negotiated with the Accept
+ */
+class CachedResponseHandlerTests {
+
+	static final String GREETING_JSON = "application/vnd.greeting+json";
+
+	@Test
+	void strongETagAndNotModified() throws Exception {
+
+		try (ConfigurableApplicationContext context = context()) {
+			MockMvc mvc = mvc(context);
+
+			MvcResult first = mvc.perform(get("/variants").accept(MediaType.APPLICATION_JSON))
+					.andExpect(status().isOk()).andReturn();
+			byte[] bytes = first.getResponse().getContentAsByteArray();
+			String eTag = first.getResponse().getHeader(HttpHeaders.ETAG);
+			assertEquals("\"" + DigestUtils.md5DigestAsHex(bytes) + "\"", eTag);
+
+			mvc.perform(get("/variants").accept(MediaType.APPLICATION_JSON).header(HttpHeaders.IF_NONE_MATCH, eTag))
+					.andExpect(status().isNotModified()).andExpect(header().string(HttpHeaders.ETAG, eTag))
+					.andExpect(content().bytes(new byte[0]));
+
+			mvc.perform(get("/variants").accept(MediaType.APPLICATION_JSON)
+					.header(HttpHeaders.IF_NONE_MATCH, "\"stale\"")).andExpect(status().isOk())
+					.andExpect(header().string(HttpHeaders.ETAG, eTag)).andExpect(content().bytes(bytes));
+		}
+	}
+
+	@Test
+	void oneEncodingForEachAcceptedType() throws Exception {
+
+		try (ConfigurableApplicationContext context = context()) {
+			MockMvc mvc = mvc(context);
+
+			for (String accept : new String[] { MediaType.APPLICATION_JSON_VALUE, GREETING_JSON }) {
+				MvcResult first = mvc.perform(get("/variants").header(HttpHeaders.ACCEPT, accept))
+						.andExpect(status().isOk()).andExpect(content().contentType(accept)).andReturn();
+				MvcResult second = mvc.perform(get("/variants").header(HttpHeaders.ACCEPT, accept))
+						.andExpect(status().isOk()).andExpect(content().contentType(accept)).andReturn();
+
+				assertArrayEquals(first.getResponse().getContentAsByteArray(),
+						second.getResponse().getContentAsByteArray());
+				assertEquals("{\"message\":\"Hello World\",\"from\":null}",
+						second.getResponse().getContentAsString());
+			}
+
+			/*
+			 * No Accept takes the first media type of the mapping, none producible is 406
+			 */
+			mvc.perform(get("/variants")).andExpect(content().contentType(MediaType.APPLICATION_JSON));
+			mvc.perform(get("/variants").accept(MediaType.TEXT_PLAIN)).andExpect(status().isNotAcceptable());
+			assertEquals(5, context.getBean(Variants.class).calls.get());
+		}
+	}
+
+	private ConfigurableApplicationContext context() {
+		return new SpringApplicationBuilder(WebClientApplication.class)
+				.initializers(context -> ((GenericApplicationContext) context).registerBean(Variants.class))
+				.run("--server.port=0", "--greeting.server.netty.port=0", "--greeting.server.cached-responses=true");
+	}
+
+	private MockMvc mvc(ConfigurableApplicationContext context) {
+		return MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+	}
+
+	/*
+	 * Registered by the test only: a @RequestMapping without @Component is left out of the component scan
+	 */
+	@RequestMapping
+	static class Variants {
+
+		static final ResponseEntity<Greeting> GREETING = ResponseEntity.ok(new Greeting("Hello World"));
+
+		final AtomicInteger calls = new AtomicInteger();
+
+		@CachedResponse
+		@GetMapping(value = "/variants", produces = { MediaType.APPLICATION_JSON_VALUE, GREETING_JSON })
+		public ResponseEntity<Greeting> variants() {
+			calls.incrementAndGet();
+			return GREETING;
+		}
+	}
+}
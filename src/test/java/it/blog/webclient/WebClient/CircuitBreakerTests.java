@@ -0,0 +1,142 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import it.blog.webclient.component.CircuitBreaker;
+import it.blog.webclient.component.CircuitBreaker.State;
+import it.blog.webclient.component.UpstreamProperties;
+
+/*
+ * CLOSED opens at the failure rate threshold, OPEN refuses calls for open-duration, HALF_OPEN lets only
+ * half-open-probes calls through and closes when all of them succeeded, or opens again on one failure
+ */
+class CircuitBreakerTests {
+
+	static final Duration OPEN_DURATION = Duration.ofMillis(100);
+	static final int PROBES = 2;
+
+	@Test
+	void opensAtTheThreshold() {
+
+		CircuitBreaker breaker = breaker();
+
+		/*
+		 * Not evaluated before minimum-calls outcomes
+		 */
+		for (int i = 0; i < 3; i++) {
+			call(breaker, false);
+		}
+		assertEquals(State.CLOSED, breaker.getState());
+
+		call(breaker, true);
+		call(breaker, true);
+		assertEquals(State.CLOSED, breaker.getState(), "2 failures out of 5 calls");
+
+		call(breaker, true);
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+		assertEquals(1L, breaker.snapshot().get("trips"));
+	}
+
+	@Test
+	void closesAfterTheProbes() {
+
+		CircuitBreaker breaker = tripped();
+
+		sleep(OPEN_DURATION.multipliedBy(2));
+		assertTrue(breaker.tryAcquire());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.tryAcquire());
+
+		/*
+		 * Only half-open-probes calls in flight
+		 */
+		assertFalse(breaker.tryAcquire());
+
+		breaker.onSuccess();
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire(), "a finished probe doesn't free its slot");
+		breaker.onSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+
+		/*
+		 * The window starts over: the failures that opened the breaker are forgotten
+		 */
+		call(breaker, true);
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(100.0, breaker.snapshot().get("failureRate"));
+		assertEquals(1, breaker.snapshot().get("calls"));
+	}
+
+	@Test
+	void reopensOnAFailedProbe() {
+
+		CircuitBreaker breaker = tripped();
+
+		sleep(OPEN_DURATION.multipliedBy(2));
+		assertTrue(breaker.tryAcquire());
+		breaker.onFailure();
+
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+		assertEquals(2L, breaker.snapshot().get("trips"));
+	}
+
+	@Test
+	void cancelledProbeFreesItsSlot() {
+
+		CircuitBreaker breaker = tripped();
+
+		sleep(OPEN_DURATION.multipliedBy(2));
+		assertTrue(breaker.tryAcquire());
+		assertTrue(breaker.tryAcquire());
+		assertFalse(breaker.tryAcquire());
+
+		breaker.onCancel();
+		assertTrue(breaker.tryAcquire());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+	}
+
+	private CircuitBreaker breaker() {
+		UpstreamProperties.Breaker config = new UpstreamProperties.Breaker();
+		config.setEnabled(true);
+		config.setWindowSize(10);
+		config.setMinimumCalls(5);
+		config.setFailureRateThreshold(50);
+		config.setOpenDuration(OPEN_DURATION);
+		config.setHalfOpenProbes(PROBES);
+		return new CircuitBreaker(config);
+	}
+
+	private CircuitBreaker tripped() {
+		CircuitBreaker breaker = breaker();
+		for (int i = 0; i < 5; i++) {
+			call(breaker, true);
+		}
+		assertEquals(State.OPEN, breaker.getState());
+		return breaker;
+	}
+
+	private void call(CircuitBreaker breaker, boolean failure) {
+		assertTrue(breaker.tryAcquire());
+		if (failure) {
+			breaker.onFailure();
+		} else {
+			breaker.onSuccess();
+		}
+	}
+
+	private void sleep(Duration duration) {
+		try {
+			Thread.sleep(duration.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.WebClientApplication;
+import it.blog.webclient.WebClient.StubUpstream.Latency;
+import it.blog.webclient.WebClient.StubUpstream.Route;
+import it.blog.webclient.component.Deadline;
+import it.blog.webclient.component.ErrorType;
+import it.blog.webclient.component.WebClientException;
+import it.blog.webclient.component.WebClientRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/*
+ * Callers of one coalesced GET come and go on their own: cancelling one, or its Deadline running out, leaves
+ * the others with the response of the same single upstream call
+ */
+class CoalescingTests {
+
+	static final Duration LATENCY = Duration.ofMillis(300);
+
+	@Test
+	void cancelledCallerLeavesTheOthers() {
+
+		try (StubUpstream stub = stub(); ConfigurableApplicationContext client = client(stub)) {
+
+			WebClient webClient = client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+
+			Disposable first = get(webClient).subscribe();
+			Mono<Greeting> second = get(webClient).cache();
+			second.subscribe();
+
+			sleep(LATENCY.dividedBy(3));
+			first.dispose();
+
+			assertEquals("Hello World", second.block(LATENCY.multipliedBy(3)).getMessage());
+			assertEquals(1, stub.stats("/message").getRequests());
+
+			/*
+			 * The call is over, the next caller gets a new one
+			 */
+			get(webClient).block(LATENCY.multipliedBy(3));
+			assertEquals(2, stub.stats("/message").getRequests());
+		}
+	}
+
+	@Test
+	void deadlineOfTheFirstCallerIsNotShared() {
+
+		try (StubUpstream stub = stub(); ConfigurableApplicationContext client = client(stub)) {
+
+			WebClient webClient = client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Deadline.bound(Deadline.after(LATENCY.dividedBy(3)), get(webClient)).subscribe(null, failure::set);
+			Greeting greeting = get(webClient).block(LATENCY.multipliedBy(3));
+
+			assertEquals("Hello World", greeting.getMessage());
+			assertTrue(failure.get() instanceof WebClientException, String.valueOf(failure.get()));
+			assertEquals(ErrorType.DEADLINE_EXCEEDED, ((WebClientException) failure.get()).getType());
+			assertEquals(1, stub.stats("/message").getRequests());
+		}
+	}
+
+	private Mono<Greeting> get(WebClient webClient) {
+		return webClient.get().uri("/message").retrieve().bodyToMono(Greeting.class);
+	}
+
+	private StubUpstream stub() {
+		return StubUpstream.builder().route("/message", new Route().latency(Latency.fixed(LATENCY))).start();
+	}
+
+	private ConfigurableApplicationContext client(StubUpstream stub) {
+		return new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE).run(
+				"--greeting.server.netty.port=0", //
+				"--webclient.upstreams.greeting.base-url=" + stub.getBaseUrl(), //
+				"--webclient.upstreams.greeting.coalescing.enabled=true", //
+				"--webclient.upstreams.greeting.cache.enabled=false", //
+				"--webclient.upstreams.greeting.hedging.enabled=false", //
+				"--webclient.upstreams.greeting.retry.enabled=false");
+	}
+
+	private void sleep(Duration duration) {
+		try {
+			Thread.sleep(duration.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
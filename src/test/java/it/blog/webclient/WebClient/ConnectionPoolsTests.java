@@ -0,0 +1,148 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import it.blog.webclient.WebClientApplication;
+import it.blog.webclient.WebClient.StubUpstream.Latency;
+import it.blog.webclient.WebClient.StubUpstream.Route;
+import it.blog.webclient.component.ConnectionPools;
+import it.blog.webclient.component.WebClientRegistry;
+import reactor.core.publisher.Flux;
+
+/*
+ * The pool of the greeting upstream against a stub: the connections of a retired pool are closed and counted in the
+ * lifetime stats, and PoolTuner resizes a pool short of connections at most once every min-resize-interval
+ */
+class ConnectionPoolsTests {
+
+	static final Duration LATENCY = Duration.ofMillis(50);
+
+	@Test
+	void connectionLifetimeStats() {
+
+		try (StubUpstream stub = stub();
+				ConfigurableApplicationContext client = client(stub, 4)) {
+
+			calls(client, 40);
+			Map<String, Object> connections = connections(client);
+			long opened = (Long) connections.get("opened");
+			assertTrue(opened >= 1 && opened <= 4, connections.toString());
+			assertEquals(0L, connections.get("closed"));
+			assertEquals(0L, lifetime(connections).get("count"));
+
+			/*
+			 * The retired pool is disposed after pending-acquire-timeout, closing its idle connections
+			 */
+			ConnectionPools.Limits limits = new ConnectionPools.Limits();
+			limits.setMaxConnections(8);
+			limits.setPendingAcquireMaxCount(32);
+			client.getBean(ConnectionPools.class).resize(WebClientRegistry.GREETING, limits);
+			sleep(Duration.ofMillis(1500));
+
+			connections = connections(client);
+			assertEquals(opened, connections.get("closed"));
+			assertEquals(opened, lifetime(connections).get("count"));
+			assertTrue((Double) lifetime(connections).get("p50Millis") >= 1000, connections.toString());
+			assertEquals(0, pool(client).get("retiringPools"));
+
+			calls(client, 8);
+			assertTrue((Long) connections(client).get("opened") > opened, connections(client).toString());
+		}
+	}
+
+	@Test
+	void tunerResizesOncePerMinResizeInterval() {
+
+		/*
+		 * 16 callers on 2 connections wait for them every interval: the pool grows, once
+		 */
+		try (StubUpstream stub = stub();
+				ConfigurableApplicationContext client = client(stub, 2,
+						"--webclient.upstreams.greeting.pool.tuning.enabled=true",
+						"--webclient.upstreams.greeting.pool.tuning.min-resize-interval=1h")) {
+
+			calls(client, 160);
+			assertEquals(1L, pool(client).get("resizes"));
+			assertTrue((Integer) pool(client).get("maxConnections") > 2, pool(client).toString());
+		}
+
+		try (StubUpstream stub = stub();
+				ConfigurableApplicationContext client = client(stub, 2,
+						"--webclient.upstreams.greeting.pool.tuning.enabled=true",
+						"--webclient.upstreams.greeting.pool.tuning.min-resize-interval=0s")) {
+
+			calls(client, 160);
+			assertTrue((Long) pool(client).get("resizes") > 1, pool(client).toString());
+		}
+	}
+
+	private void calls(ConfigurableApplicationContext client, int count) {
+		WebClient webClient = client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+		Flux.range(0, count).flatMap(i -> webClient.get().uri("/message").retrieve().toBodilessEntity(), 16)
+				.blockLast(Duration.ofSeconds(30));
+	}
+
+	private Map<String, Object> pool(ConfigurableApplicationContext client) {
+		return client.getBean(ConnectionPools.class).snapshot().get(WebClientRegistry.GREETING);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> connections(ConfigurableApplicationContext client) {
+		return (Map<String, Object>) pool(client).get("connections");
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> lifetime(Map<String, Object> connections) {
+		return (Map<String, Object>) connections.get("lifetime");
+	}
+
+	private StubUpstream stub() {
+		return StubUpstream.builder().workerThreads(2).route("/message", new Route().latency(Latency.fixed(LATENCY)))
+				.start();
+	}
+
+	/*
+	 * Tuned every 200ms when enabled, with room in the queue for all 16 callers, and nothing else holding calls back
+	 * or cutting them: no limiter, no adaptive timeout, no cache
+	 */
+	private ConfigurableApplicationContext client(StubUpstream stub, int maxConnections, String... properties) {
+		List<String> args = new ArrayList<>(List.of("--greeting.server.netty.port=0", //
+				"--webclient.upstreams.greeting.base-url=" + stub.getBaseUrl(), //
+				"--webclient.upstreams.greeting.pool.max-connections=" + maxConnections, //
+				"--webclient.upstreams.greeting.pool.pending-acquire-timeout=1s", //
+				"--webclient.upstreams.greeting.pool.tuning.interval=200ms", //
+				"--webclient.upstreams.greeting.pool.tuning.min-connections=1", //
+				"--webclient.upstreams.greeting.pool.tuning.max-acquire-wait=1ms", //
+				"--webclient.upstreams.greeting.pool.tuning.pending-per-connection=16", //
+				"--webclient.upstreams.greeting.cache.enabled=false", //
+				"--webclient.upstreams.greeting.coalescing.enabled=false", //
+				"--webclient.upstreams.greeting.hedging.enabled=false", //
+				"--webclient.upstreams.greeting.timeout.adaptive.enabled=false", //
+				"--webclient.upstreams.greeting.breaker.enabled=false", //
+				"--webclient.upstreams.greeting.retry.enabled=false", //
+				"--webclient.upstreams.greeting.limiter.enabled=false"));
+		args.addAll(List.of(properties));
+		return new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE)
+				.run(args.toArray(new String[0]));
+	}
+
+	private void sleep(Duration duration) {
+		try {
+			Thread.sleep(duration.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import it.blog.webclient.DeadlineRequestFilter;
+import it.blog.webclient.Greeting;
+import it.blog.webclient.GreetingNettyServer;
+import it.blog.webclient.WebClientApplication;
+import it.blog.webclient.component.Deadline;
+import it.blog.webclient.component.HttpMetricsFilter;
+import it.blog.webclient.component.WebClientRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/*
+ * Upstream calls cut by the Deadline of the inbound request give their pooled connection back at once,
+ * not when the 3s upstream answers
+ */
+class DeadlineTests {
+
+	static final Duration LATENCY = Duration.ofSeconds(3);
+	static final Duration PROMPTLY = Duration.ofMillis(500);
+
+	@Test
+	void expiredDeadlineCancelsUpstreamCalls() {
+
+		try (ConfigurableApplicationContext upstream = upstream(); ConfigurableApplicationContext client = client(upstream)) {
+
+			int port = ((WebServerApplicationContext) client).getWebServer().getPort();
+			GreetingNettyServer server = upstream.getBean(GreetingNettyServer.class);
+
+			long start = System.nanoTime();
+			ResponseEntity<Greeting> response = WebClient.create("http://localhost:" + port).get()
+					.uri("/clientReactiveParallel").header(Deadline.HEADER, "300").retrieve()
+					.onRawStatus(status -> true, error -> Mono.empty()).toEntity(Greeting.class).block(LATENCY);
+			Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+			assertEquals(504, response.getStatusCodeValue());
+			assertTrue(elapsed.compareTo(LATENCY) < 0, "answered after " + elapsed);
+			assertTrue(await(() -> server.getOpenConnections() == 0), "upstream connections still open");
+			assertEquals(0, client.getBean(HttpMetricsFilter.class).metrics(WebClientRegistry.GREETING).inFlight());
+		}
+	}
+
+	/*
+	 * The Tomcat thread of a blocking endpoint is back at the deadline, its upstream call cancelled or timed out
+	 */
+	@Test
+	void blockingEndpointsHonourTheDeadline() {
+
+		try (ConfigurableApplicationContext upstream = upstream(); ConfigurableApplicationContext client = client(upstream)) {
+
+			int port = ((WebServerApplicationContext) client).getWebServer().getPort();
+			GreetingNettyServer server = upstream.getBean(GreetingNettyServer.class);
+
+			for (String path : List.of("/clientReactiveBlock", "/clientNoReactive")) {
+				long start = System.nanoTime();
+				ResponseEntity<Greeting> response = WebClient.create("http://localhost:" + port).get().uri(path)
+						.header(Deadline.HEADER, "300").retrieve().onRawStatus(status -> true, error -> Mono.empty())
+						.toEntity(Greeting.class).block(LATENCY);
+				Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+				assertEquals(504, response.getStatusCodeValue(), path);
+				assertTrue(elapsed.compareTo(LATENCY) < 0, path + " answered after " + elapsed);
+				assertTrue(await(() -> server.getOpenConnections() == 0), path + " upstream connections still open");
+			}
+		}
+	}
+
+	/*
+	 * The timeout of an endpoint listed after one with a broader pattern still applies to its path
+	 */
+	@Test
+	void mostSpecificEndpointTimeout() throws Exception {
+
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(WebClientApplication.class)
+				.web(WebApplicationType.NONE).run("--greeting.server.netty.port=0", //
+						"--greeting.deadline.endpoints.reactive.paths=/client*", //
+						"--greeting.deadline.endpoints.reactive.timeout=5s", //
+						"--greeting.deadline.endpoints.blocking.paths=/clientNoReactive", //
+						"--greeting.deadline.endpoints.blocking.timeout=1s")) {
+
+			DeadlineRequestFilter filter = context.getBean(DeadlineRequestFilter.class);
+
+			assertTrue(deadline(filter, "/clientNoReactive").remaining().compareTo(Duration.ofSeconds(1)) <= 0);
+			assertTrue(deadline(filter, "/clientReactive").remaining().compareTo(Duration.ofSeconds(1)) > 0);
+		}
+	}
+
+	@Test
+	void abandonedDeadlineCancelsUpstreamCalls() {
+
+		try (ConfigurableApplicationContext upstream = upstream(); ConfigurableApplicationContext client = client(upstream)) {
+
+			GreetingNettyServer server = upstream.getBean(GreetingNettyServer.class);
+			WebClient webClient = client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+
+			Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+			Disposable call = Deadline.bound(deadline, webClient.get().uri("/message").retrieve().bodyToMono(Greeting.class))
+					.subscribe();
+
+			assertTrue(await(() -> server.getOpenConnections() == 1), "upstream not called");
+
+			/*
+			 * The caller went away
+			 */
+			deadline.abandon();
+
+			assertTrue(await(() -> server.getOpenConnections() == 0), "upstream connection still open");
+			assertTrue(call.isDisposed());
+			assertEquals(0, client.getBean(HttpMetricsFilter.class).metrics(WebClientRegistry.GREETING).inFlight());
+		}
+	}
+
+	private Deadline deadline(DeadlineRequestFilter filter, String path) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+		filter.doFilter(request, new MockHttpServletResponse(), (ignored, response) -> {
+		});
+		return (Deadline) request.getAttribute(DeadlineRequestFilter.ATTRIBUTE);
+	}
+
+	private ConfigurableApplicationContext upstream() {
+		return new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE).run(
+				"--greeting.server.mode=netty", "--greeting.server.netty.port=0",
+				"--greeting.server.latency=" + LATENCY.toMillis() + "ms");
+	}
+
+	private ConfigurableApplicationContext client(ConfigurableApplicationContext upstream) {
+		return new SpringApplicationBuilder(WebClientApplication.class).run("--server.port=0",
+				"--greeting.server.netty.port=0",
+				"--webclient.upstreams.greeting.base-url=http://localhost:"
+						+ upstream.getBean(GreetingNettyServer.class).getPort(),
+				"--webclient.upstreams.greeting.cache.enabled=false",
+				"--webclient.upstreams.greeting.coalescing.enabled=false",
+				"--webclient.upstreams.greeting.hedging.enabled=false");
+	}
+
+	private boolean await(BooleanSupplier condition) {
+		long end = System.nanoTime() + PROMPTLY.toNanos();
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > end) {
+				return false;
+			}
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,233 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import it.blog.webclient.Greeting;
+import it.blog.webclient.WebClientApplication;
+import it.blog.webclient.WebClient.StubUpstream.Route;
+import it.blog.webclient.component.HedgingFilter;
+import it.blog.webclient.component.WebClientRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Hedged GETs through the greeting WebClient against a stub upstream: the hedge goes out after the percentile of
+ * the recent latency and within the budget, answers when the primary request failed, and the losing response
+ * gives its buffers and its connection back
+ */
+class HedgingTests {
+
+	static final Duration UPSTREAM = Duration.ofMillis(20);
+
+	@Test
+	void hedgeAfterThePercentileDelay() {
+
+		AtomicBoolean slowOnce = new AtomicBoolean();
+		Route route = new Route().latency(random -> slowOnce.getAndSet(false) ? Duration.ofSeconds(1) : UPSTREAM);
+
+		try (StubUpstream stub = stub(route);
+				ConfigurableApplicationContext client = client(stub,
+						"--webclient.upstreams.greeting.hedging.max-delay=2s",
+						"--webclient.upstreams.greeting.hedging.min-samples=20",
+						"--webclient.upstreams.greeting.hedging.budget-percent=100",
+						"--webclient.upstreams.greeting.hedging.budget-burst=10")) {
+
+			WebClient webClient = webClient(client);
+			for (int i = 0; i < 30; i++) {
+				get(webClient).block(Duration.ofSeconds(5));
+			}
+			sleep(Duration.ofMillis(200));
+
+			long delay = (Long) snapshot(client).get("delayMillis");
+			assertTrue(delay >= UPSTREAM.toMillis() && delay < 200, delay + "ms hedge delay");
+
+			/*
+			 * The primary request takes a second, the hedge sent after the delay answers in 20ms
+			 */
+			long fired = (Long) snapshot(client).get("hedgesFired");
+			long won = (Long) snapshot(client).get("hedgesWon");
+			slowOnce.set(true);
+
+			long start = System.nanoTime();
+			assertEquals("Hello World", get(webClient).block(Duration.ofSeconds(5)).getMessage());
+			long elapsed = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+			assertTrue(elapsed >= delay && elapsed < 500, elapsed + "ms with a " + delay + "ms hedge delay");
+			assertEquals(fired + 1, snapshot(client).get("hedgesFired"));
+			assertEquals(won + 1, snapshot(client).get("hedgesWon"));
+		}
+	}
+
+	@Test
+	void budgetCapsHedges() {
+
+		/*
+		 * Every call is slower than the 20ms delay: a hedge for each of the first 2 (the burst), then one every
+		 * 10 calls (10%)
+		 */
+		try (StubUpstream stub = stub(new Route().latency(random -> Duration.ofMillis(100)));
+				ConfigurableApplicationContext client = client(stub,
+						"--webclient.upstreams.greeting.hedging.max-delay=20ms",
+						"--webclient.upstreams.greeting.hedging.min-samples=1000",
+						"--webclient.upstreams.greeting.hedging.budget-percent=10",
+						"--webclient.upstreams.greeting.hedging.budget-burst=2")) {
+
+			WebClient webClient = webClient(client);
+			for (int i = 0; i < 30; i++) {
+				get(webClient).block(Duration.ofSeconds(5));
+			}
+
+			assertEquals(4L, snapshot(client).get("hedgesFired"));
+			assertEquals(34, stub.stats("/message").getRequests());
+		}
+	}
+
+	@Test
+	void failedPrimaryLeavesTheHedgeToWin() {
+
+		/*
+		 * Seed 16: the first request is reset after 100ms, the second, the hedge sent after 50ms, answers
+		 * after 200ms. The connections are opened by /from beforehand, the hedge can't overtake the primary
+		 */
+		AtomicInteger requests = new AtomicInteger();
+		Route route = new Route().reset(0.9)
+				.latency(random -> Duration.ofMillis(requests.getAndIncrement() == 0 ? 100 : 200));
+
+		try (StubUpstream stub = StubUpstream.builder().seed(16).route("/message", route).route("/from", new Route())
+				.start();
+				ConfigurableApplicationContext client = client(stub,
+						"--webclient.upstreams.greeting.hedging.max-delay=50ms",
+						"--webclient.upstreams.greeting.hedging.min-samples=1000",
+						"--webclient.upstreams.greeting.hedging.budget-percent=10",
+						"--webclient.upstreams.greeting.hedging.budget-burst=10")) {
+
+			WebClient webClient = webClient(client);
+			Flux.range(0, 4).flatMap(i -> webClient.get().uri("/from").retrieve().toBodilessEntity()).blockLast();
+			long won = (Long) snapshot(client).get("hedgesWon");
+
+			assertEquals("Hello World", get(webClient).block(Duration.ofSeconds(5)).getMessage());
+
+			assertEquals(2, stub.stats("/message").getRequests());
+			assertEquals(1, stub.stats("/message").getResets());
+			assertEquals(won + 1, snapshot(client).get("hedgesWon"));
+		}
+	}
+
+	@Test
+	void loserReleased() {
+
+		ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+		ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+
+		Logger logger = (Logger) LoggerFactory.getLogger(ResourceLeakDetector.class);
+		ListAppender<ILoggingEvent> leaks = new ListAppender<>();
+		leaks.start();
+
+		/*
+		 * Both requests sent at once and answered together: the late response is released or cancelled, with
+		 * 4 connections any one kept would soon leave the calls without
+		 */
+		try (StubUpstream stub = stub(new Route().latency(random -> UPSTREAM));
+				ConfigurableApplicationContext client = client(stub,
+						"--webclient.upstreams.greeting.hedging.max-delay=0ms",
+						"--webclient.upstreams.greeting.hedging.min-samples=1000",
+						"--webclient.upstreams.greeting.hedging.budget-percent=100",
+						"--webclient.upstreams.greeting.hedging.budget-burst=1000",
+						"--webclient.upstreams.greeting.hedging.min-delay=0ms",
+						"--webclient.upstreams.greeting.pool.max-connections=4",
+						"--webclient.upstreams.greeting.pool.pending-acquire-timeout=2s")) {
+
+			logger.addAppender(leaks);
+			ByteBufAllocator.DEFAULT.buffer(64);
+			assertTrue(awaitLeakReports(leaks), "leak detection is not reporting");
+			leaks.list.clear();
+
+			WebClient webClient = webClient(client);
+			List<Greeting> greetings = Flux.range(0, 200).flatMap(i -> get(webClient), 2).collectList()
+					.block(Duration.ofSeconds(30));
+
+			assertEquals(200, greetings.size());
+			assertEquals(200L, snapshot(client).get("hedgesFired"));
+			assertFalse(awaitLeakReports(leaks), () -> leaks.list.stream().map(ILoggingEvent::getFormattedMessage)
+					.collect(Collectors.joining("\n")));
+		} finally {
+			logger.detachAppender(leaks);
+			ResourceLeakDetector.setLevel(level);
+		}
+	}
+
+	private Mono<Greeting> get(WebClient webClient) {
+		return webClient.get().uri("/message").retrieve().bodyToMono(Greeting.class);
+	}
+
+	private WebClient webClient(ConfigurableApplicationContext client) {
+		return client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+	}
+
+	private Map<String, Object> snapshot(ConfigurableApplicationContext client) {
+		return client.getBean(HedgingFilter.class).snapshot().get(WebClientRegistry.GREETING);
+	}
+
+	private StubUpstream stub(Route route) {
+		return StubUpstream.builder().route("/message", route).start();
+	}
+
+	/*
+	 * Hedging alone between the WebClient and the stub. Until min-samples latencies are recorded the hedge delay is
+	 * max-delay
+	 */
+	private ConfigurableApplicationContext client(StubUpstream stub, String... properties) {
+		List<String> args = new ArrayList<>(List.of("--greeting.server.netty.port=0", //
+				"--webclient.upstreams.greeting.base-url=" + stub.getBaseUrl(), //
+				"--webclient.upstreams.greeting.hedging.enabled=true", //
+				"--webclient.upstreams.greeting.cache.enabled=false", //
+				"--webclient.upstreams.greeting.coalescing.enabled=false", //
+				"--webclient.upstreams.greeting.breaker.enabled=false", //
+				"--webclient.upstreams.greeting.retry.enabled=false"));
+		args.addAll(List.of(properties));
+		return new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE)
+				.run(args.toArray(new String[0]));
+	}
+
+	/*
+	 * Leaks are reported by the next allocation after the leaked buffer is collected
+	 */
+	private boolean awaitLeakReports(ListAppender<ILoggingEvent> leaks) {
+		for (int i = 0; i < 20 && leaks.list.isEmpty(); i++) {
+			System.gc();
+			sleep(Duration.ofMillis(50));
+			ByteBufAllocator.DEFAULT.buffer(1).release();
+		}
+		return !leaks.list.isEmpty();
+	}
+
+	private void sleep(Duration duration) {
+		try {
+			Thread.sleep(duration.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import it.blog.webclient.WebClientApplication;
+import it.blog.webclient.WebClient.StubUpstream.Latency;
+import it.blog.webclient.WebClient.StubUpstream.Route;
+import it.blog.webclient.component.LoadBalancerFilter;
+import it.blog.webclient.component.WebClientRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * Calls through the greeting WebClient balanced over two stub replicas: the slow one gets less traffic, a
+ * failing or hung one is ejected by the outcomes of real exchanges, and the replicas replaced with
+ * PUT /admin/upstreams/greeting/endpoints take the next calls of the same WebClient
+ */
+class LoadBalancerFilterTests {
+
+	static final int FAILURES = 3;
+	static final Duration TIMEOUT = Duration.ofSeconds(1);
+
+	@Test
+	void slowReplicaGetsLessTraffic() {
+
+		try (StubUpstream fast = replica(new Route().latency(Latency.fixed(Duration.ofMillis(5))));
+				StubUpstream slow = replica(new Route().latency(Latency.fixed(Duration.ofMillis(100))));
+				ConfigurableApplicationContext client = client(WebApplicationType.NONE, fast, slow)) {
+
+			calls(webClient(client), 200, 8);
+
+			long fastCalls = fast.stats("/message").getRequests();
+			long slowCalls = slow.stats("/message").getRequests();
+			assertEquals(200, fastCalls + slowCalls);
+			assertTrue(slowCalls * 4 < fastCalls, fastCalls + " fast calls, " + slowCalls + " slow calls");
+		}
+	}
+
+	@Test
+	void failingReplicaEjected() {
+
+		try (StubUpstream healthy = replica(new Route());
+				StubUpstream failing = replica(new Route().error(503, 1));
+				ConfigurableApplicationContext client = client(WebApplicationType.NONE, healthy, failing)) {
+
+			List<Integer> statuses = calls(webClient(client), 40, 1);
+
+			assertEquals(FAILURES, failing.stats("/message").getRequests());
+			assertEquals(FAILURES, statuses.stream().filter(status -> status == 503).count());
+			assertEquals(true, endpoint(client, failing).get("ejected"));
+		}
+	}
+
+	@Test
+	void hungReplicaEjected() {
+
+		try (StubUpstream healthy = replica(new Route());
+				StubUpstream hung = replica(new Route().latency(Latency.fixed(Duration.ofMinutes(10))));
+				ConfigurableApplicationContext client = client(WebApplicationType.NONE, healthy, hung)) {
+
+			/*
+			 * Cut by the adaptive timeout: failures of the replica, and a latency at least the timeout
+			 */
+			calls(webClient(client), 10, 10);
+			long hungCalls = hung.stats("/message").getRequests();
+			assertTrue(hungCalls >= FAILURES, hungCalls + " calls to the hung replica");
+
+			Map<String, Object> endpoint = endpoint(client, hung);
+			assertEquals(true, endpoint.get("ejected"));
+			assertTrue((Double) endpoint.get("latencyMillis") >= TIMEOUT.toMillis(), endpoint.toString());
+
+			List<Integer> statuses = calls(webClient(client), 20, 1);
+			assertTrue(statuses.stream().allMatch(status -> status == 200), statuses.toString());
+			assertEquals(hungCalls, hung.stats("/message").getRequests());
+		}
+	}
+
+	@Test
+	void endpointsReplacedAtRuntime() {
+
+		try (StubUpstream first = replica(new Route());
+				StubUpstream second = replica(new Route());
+				ConfigurableApplicationContext client = client(WebApplicationType.SERVLET, first)) {
+
+			WebClient webClient = webClient(client);
+			calls(webClient, 10, 1);
+			assertEquals(10, first.stats("/message").getRequests());
+
+			assertEquals(200, put(client, "[\"" + second.getBaseUrl() + "\"]"));
+			calls(webClient, 10, 1);
+			assertEquals(10, first.stats("/message").getRequests());
+			assertEquals(10, second.stats("/message").getRequests());
+
+			assertEquals(200, put(client, "[\"" + first.getBaseUrl() + "\",\"" + second.getBaseUrl() + "\"]"));
+			calls(webClient, 100, 4);
+			assertTrue(first.stats("/message").getRequests() > 10, "first replica not added back");
+			assertTrue(second.stats("/message").getRequests() > 10, "second replica dropped");
+
+			assertEquals(400, put(client, "[\"ftp://nowhere\"]"));
+			assertEquals(2, endpoints(client).size());
+			assertSame(webClient, webClient(client), "WebClient rebuilt");
+		}
+	}
+
+	private StubUpstream replica(Route route) {
+		return StubUpstream.builder().route("/message", route).start();
+	}
+
+	private ConfigurableApplicationContext client(WebApplicationType type, StubUpstream... replicas) {
+		List<String> urls = new ArrayList<>();
+		for (StubUpstream replica : replicas) {
+			urls.add(replica.getBaseUrl());
+		}
+		return new SpringApplicationBuilder(WebClientApplication.class).web(type).run("--server.port=0",
+				"--greeting.server.netty.port=0", //
+				"--webclient.upstreams.greeting.endpoints=" + String.join(",", urls), //
+				"--webclient.upstreams.greeting.balancer.consecutive-failures=" + FAILURES, //
+				"--webclient.upstreams.greeting.balancer.base-ejection-time=1m", //
+				/*
+				 * The first calls, with connects and a cold JIT, are forgotten in the first second
+				 */
+				"--webclient.upstreams.greeting.balancer.latency-decay=200ms", //
+				"--webclient.upstreams.greeting.timeout.adaptive.max=" + TIMEOUT.toMillis() + "ms", //
+				"--webclient.upstreams.greeting.cache.enabled=false", //
+				"--webclient.upstreams.greeting.coalescing.enabled=false", //
+				"--webclient.upstreams.greeting.hedging.enabled=false", //
+				"--webclient.upstreams.greeting.breaker.enabled=false", //
+				"--webclient.upstreams.greeting.retry.enabled=false");
+	}
+
+	private WebClient webClient(ConfigurableApplicationContext client) {
+		return client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+	}
+
+	/*
+	 * Statuses of count calls, concurrency at a time, 0 for a call that failed without one
+	 */
+	private List<Integer> calls(WebClient webClient, int count, int concurrency) {
+		return Flux.range(0, count)
+				.flatMap(i -> webClient.get().uri("/message")
+						.exchangeToMono(response -> response.releaseBody().thenReturn(response.rawStatusCode()))
+						.onErrorResume(error -> Mono.just(0)), concurrency)
+				.collectList().block(Duration.ofSeconds(30));
+	}
+
+	private int put(ConfigurableApplicationContext client, String endpoints) {
+		int port = ((WebServerApplicationContext) client).getWebServer().getPort();
+		return WebClient.create("http://localhost:" + port).put().uri("/admin/upstreams/greeting/endpoints")
+				.contentType(MediaType.APPLICATION_JSON).bodyValue(endpoints)
+				.exchangeToMono(response -> response.releaseBody().thenReturn(response.rawStatusCode()))
+				.block(Duration.ofSeconds(5));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> endpoints(ConfigurableApplicationContext client) {
+		return (List<Map<String, Object>>) client.getBean(LoadBalancerFilter.class).snapshot()
+				.get(WebClientRegistry.GREETING).get("endpoints");
+	}
+
+	private Map<String, Object> endpoint(ConfigurableApplicationContext client, StubUpstream replica) {
+		return endpoints(client).stream().filter(endpoint -> replica.getBaseUrl().equals(endpoint.get("url")))
+				.findFirst().orElseThrow();
+	}
+}
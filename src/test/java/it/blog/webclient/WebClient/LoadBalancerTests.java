@@ -0,0 +1,137 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import it.blog.webclient.component.LoadBalancer;
+import it.blog.webclient.component.LoadBalancer.Endpoint;
+import it.blog.webclient.component.UpstreamProperties;
+
+/*
+ * consecutive-failures failures in a row eject a replica for base-ejection-time times its ejections since the
+ * last success, never more than max-ejection-percent of them. An ejected replica gets no calls until the
+ * ejection is over.
+ */
+class LoadBalancerTests {
+
+	static final String SICK = "http://sick:8080";
+	static final String HEALTHY = "http://healthy:8080";
+	static final Duration EJECTION = Duration.ofMillis(200);
+	static final int FAILURES = 3;
+
+	@Test
+	void ejectedAfterConsecutiveFailures() {
+
+		LoadBalancer balancer = balancer();
+		Endpoint sick = find(balancer, SICK);
+
+		fail(balancer, sick, FAILURES - 1);
+		balancer.onResult(sick, 1_000_000, false);
+		fail(balancer, sick, FAILURES - 1);
+		assertFalse(ejected(balancer, SICK), "a success in between starts the count over");
+
+		fail(balancer, sick, 1);
+		assertTrue(ejected(balancer, SICK));
+		assertEquals(1L, balancer.snapshot().get("ejections"));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(HEALTHY, balancer.choose().getUri().toString());
+		}
+	}
+
+	@Test
+	void recoversAfterTheEjection() {
+
+		LoadBalancer balancer = balancer();
+		Endpoint sick = find(balancer, SICK);
+
+		fail(balancer, sick, FAILURES);
+		assertTrue(ejected(balancer, SICK));
+
+		sleep(EJECTION.plusMillis(50));
+		assertFalse(ejected(balancer, SICK));
+		assertEquals(sick, find(balancer, SICK), "back in rotation");
+
+		/*
+		 * Ejected again without a success in between: twice as long
+		 */
+		fail(balancer, sick, FAILURES);
+		assertTrue(ejectedForMillis(balancer, SICK) > EJECTION.toMillis(), "second ejection");
+
+		sleep(EJECTION.multipliedBy(2).plusMillis(50));
+		balancer.onResult(sick, 1_000_000, false);
+		fail(balancer, sick, FAILURES);
+		assertTrue(ejectedForMillis(balancer, SICK) <= EJECTION.toMillis(), "a success resets the ejection time");
+	}
+
+	@Test
+	void neverBeyondTheMaxEjectionPercent() {
+
+		LoadBalancer balancer = balancer();
+		Endpoint sick = find(balancer, SICK);
+		Endpoint healthy = find(balancer, HEALTHY);
+
+		fail(balancer, sick, FAILURES);
+		fail(balancer, healthy, FAILURES);
+
+		assertTrue(ejected(balancer, SICK));
+		assertFalse(ejected(balancer, HEALTHY), "half of the replicas are ejected already");
+		assertEquals(1L, balancer.snapshot().get("ejections"));
+	}
+
+	private LoadBalancer balancer() {
+		UpstreamProperties.Balancer config = new UpstreamProperties.Balancer();
+		config.setConsecutiveFailures(FAILURES);
+		config.setBaseEjectionTime(EJECTION);
+		config.setMaxEjectionTime(Duration.ofSeconds(10));
+		config.setMaxEjectionPercent(50);
+		return new LoadBalancer("greeting", config, List.of(SICK, HEALTHY));
+	}
+
+	/*
+	 * The replicas are drawn at random, the one asked for shows up soon enough
+	 */
+	private Endpoint find(LoadBalancer balancer, String url) {
+		for (int i = 0; i < 1000; i++) {
+			Endpoint endpoint = balancer.choose();
+			if (endpoint.getUri().toString().equals(url)) {
+				return endpoint;
+			}
+		}
+		throw new AssertionError(url + " never chosen");
+	}
+
+	private void fail(LoadBalancer balancer, Endpoint endpoint, int failures) {
+		for (int i = 0; i < failures; i++) {
+			balancer.onResult(endpoint, 1_000_000, true);
+		}
+	}
+
+	private boolean ejected(LoadBalancer balancer, String url) {
+		return (Boolean) endpoint(balancer, url).get("ejected");
+	}
+
+	private long ejectedForMillis(LoadBalancer balancer, String url) {
+		return (Long) endpoint(balancer, url).get("ejectedForMillis");
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> endpoint(LoadBalancer balancer, String url) {
+		List<Map<String, Object>> endpoints = (List<Map<String, Object>>) balancer.snapshot().get("endpoints");
+		return endpoints.stream().filter(endpoint -> url.equals(endpoint.get("url"))).findFirst().orElseThrow();
+	}
+
+	private void sleep(Duration duration) {
+		try {
+			Thread.sleep(duration.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
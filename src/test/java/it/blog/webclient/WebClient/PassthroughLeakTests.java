@@ -0,0 +1,99 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import it.blog.webclient.GreetingNettyServer;
+import it.blog.webclient.WebClientApplication;
+import reactor.core.publisher.Flux;
+
+/*
+ * /proxy under paranoid Netty leak detection: every upstream buffer must be released once written
+ */
+class PassthroughLeakTests {
+
+	static final int REQUESTS = 200;
+
+	@Test
+	void passthroughReleasesEveryBuffer() {
+
+		ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+		ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+
+		Logger logger = (Logger) LoggerFactory.getLogger(ResourceLeakDetector.class);
+		ListAppender<ILoggingEvent> leaks = new ListAppender<>();
+		leaks.start();
+
+		try (ConfigurableApplicationContext upstream = new SpringApplicationBuilder(WebClientApplication.class)
+				.web(WebApplicationType.NONE)
+				.run("--greeting.server.mode=netty", "--greeting.server.netty.port=0", "--greeting.server.latency=0ms");
+				ConfigurableApplicationContext proxy = new SpringApplicationBuilder(WebClientApplication.class)
+						.run("--server.port=0", "--webclient.upstreams.greeting.base-url=http://localhost:"
+								+ upstream.getBean(GreetingNettyServer.class).getPort(),
+								"--webclient.upstreams.greeting.cache.enabled=false",
+								"--webclient.upstreams.greeting.coalescing.enabled=false",
+								"--webclient.upstreams.greeting.hedging.enabled=false")) {
+
+			/*
+			 * After the contexts are started, Spring Boot resets the logging configuration.
+			 * A buffer dropped on purpose proves that leaks are detected at all
+			 */
+			logger.addAppender(leaks);
+			ByteBufAllocator.DEFAULT.buffer(64);
+			assertTrue(awaitLeakReports(leaks), "leak detection is not reporting");
+			leaks.list.clear();
+
+			int port = ((WebServerApplicationContext) proxy).getWebServer().getPort();
+			WebClient client = WebClient.create("http://localhost:" + port);
+
+			List<String> bodies = Flux.range(0, REQUESTS)
+					.flatMap(i -> client.get().uri(i % 2 == 0 ? "/proxy/message" : "/proxy/from").retrieve()
+							.bodyToMono(String.class), 16)
+					.collectList().block(Duration.ofSeconds(30));
+
+			assertEquals(REQUESTS, bodies.size());
+			assertTrue(bodies.contains("{\"message\":\"Hello World\",\"from\":null}"));
+
+			assertFalse(awaitLeakReports(leaks), () -> leaks.list.stream().map(ILoggingEvent::getFormattedMessage)
+					.collect(Collectors.joining("\n")));
+		} finally {
+			logger.detachAppender(leaks);
+			ResourceLeakDetector.setLevel(level);
+		}
+	}
+
+	/*
+	 * Leaks are reported by the next allocation after the leaked buffer is collected
+	 */
+	private boolean awaitLeakReports(ListAppender<ILoggingEvent> leaks) {
+		for (int i = 0; i < 20 && leaks.list.isEmpty(); i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			ByteBufAllocator.DEFAULT.buffer(1).release();
+		}
+		return !leaks.list.isEmpty();
+	}
+}
@@ -0,0 +1,218 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.WebClientApplication;
+import it.blog.webclient.WebClient.StubUpstream.Latency;
+import it.blog.webclient.WebClient.StubUpstream.Route;
+import it.blog.webclient.component.ResponseCacheFilter;
+import it.blog.webclient.component.WebClientRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * GETs through the greeting WebClient cached by ResponseCacheFilter, against a stub upstream counting the calls
+ * that reach it: hits within the TTL, 304 revalidations, Vary: *, and the stale entries served while a refresh
+ * runs or in place of a 5xx or a refused connection, with their Age and Warning
+ */
+class ResponseCacheTests {
+
+	static final Duration TTL = Duration.ofMillis(500);
+
+	static final String RESPONSE_IS_STALE = "110 - \"Response is Stale\"";
+	static final String REVALIDATION_FAILED = "111 - \"Revalidation Failed\"";
+
+	@Test
+	void hitWithinTheTtl() {
+
+		try (StubUpstream stub = stub(new Route());
+				ConfigurableApplicationContext client = client(stub, Duration.ofMinutes(1), Duration.ZERO,
+						Duration.ZERO)) {
+
+			for (int i = 0; i < 5; i++) {
+				assertEquals("Hello World", get(client).getBody().getMessage());
+			}
+
+			assertEquals(1, stub.stats("/message").getRequests());
+			assertEquals(4, count(client, "hits"));
+			assertEquals(1, count(client, "misses"));
+		}
+	}
+
+	@Test
+	void revalidationRefreshesTheEntry() {
+
+		try (StubUpstream stub = stub(new Route().etag("\"v1\""));
+				ConfigurableApplicationContext client = client(stub, TTL, Duration.ZERO, Duration.ZERO)) {
+
+			get(client);
+			sleep(TTL.plusMillis(100));
+
+			ResponseEntity<Greeting> revalidated = get(client);
+			assertEquals(200, revalidated.getStatusCodeValue());
+			assertEquals("Hello World", revalidated.getBody().getMessage());
+			assertEquals("\"v1\"", revalidated.getHeaders().getETag());
+			assertEquals(1, stub.stats("/message").getStatus(304));
+			assertEquals(1, count(client, "revalidated"));
+
+			/*
+			 * The 304 made the entry young again
+			 */
+			get(client);
+			assertEquals(2, stub.stats("/message").getRequests());
+			assertEquals(1, count(client, "hits"));
+		}
+	}
+
+	@Test
+	void varyStarNotCached() {
+
+		try (StubUpstream stub = stub(new Route().header(HttpHeaders.VARY, "*"));
+				ConfigurableApplicationContext client = client(stub, Duration.ofMinutes(1), Duration.ZERO,
+						Duration.ZERO)) {
+
+			for (int i = 0; i < 3; i++) {
+				assertEquals("Hello World", get(client).getBody().getMessage());
+			}
+
+			assertEquals(3, stub.stats("/message").getRequests());
+			assertEquals(0, count(client, "hits"));
+		}
+	}
+
+	@Test
+	void staleWhileRevalidateRefreshedOnce() {
+
+		try (StubUpstream stub = stub(new Route().latency(Latency.fixed(Duration.ofMillis(300))));
+				ConfigurableApplicationContext client = client(stub, Duration.ofSeconds(1),
+						Duration.ofMinutes(1), Duration.ZERO)) {
+
+			get(client);
+			sleep(Duration.ofMillis(1100));
+
+			/*
+			 * Served at once, before the refresh answers: the stale entry, not the 300ms of the upstream
+			 */
+			long start = System.nanoTime();
+			List<ResponseEntity<Greeting>> responses = Flux.range(0, 10).flatMap(i -> entity(client))
+					.collectList().block(Duration.ofSeconds(5));
+			long elapsed = Duration.ofNanos(System.nanoTime() - start).toMillis();
+			assertTrue(elapsed < 250, elapsed + "ms for the stale responses");
+
+			for (ResponseEntity<Greeting> response : responses) {
+				assertEquals("Hello World", response.getBody().getMessage());
+				assertEquals("1", response.getHeaders().getFirst(HttpHeaders.AGE));
+				assertEquals(List.of(RESPONSE_IS_STALE), response.getHeaders().get(HttpHeaders.WARNING));
+			}
+
+			sleep(Duration.ofMillis(500));
+			assertEquals(2, stub.stats("/message").getRequests());
+			assertEquals(10, count(client, "stale"));
+
+			/*
+			 * The refresh stored a young entry
+			 */
+			ResponseEntity<Greeting> fresh = get(client);
+			assertEquals(null, fresh.getHeaders().get(HttpHeaders.WARNING));
+			assertEquals(2, stub.stats("/message").getRequests());
+		}
+	}
+
+	@Test
+	void staleIfErrorOn5xx() {
+
+		Route route = new Route();
+		try (StubUpstream stub = stub(route);
+				ConfigurableApplicationContext client = client(stub, TTL, Duration.ZERO,
+						Duration.ofMinutes(1))) {
+
+			get(client);
+			sleep(TTL.plusMillis(100));
+			route.error(503, 1);
+
+			ResponseEntity<Greeting> response = get(client);
+			assertEquals(200, response.getStatusCodeValue());
+			assertEquals("Hello World", response.getBody().getMessage());
+			assertEquals("0", response.getHeaders().getFirst(HttpHeaders.AGE));
+			assertEquals(List.of(REVALIDATION_FAILED), response.getHeaders().get(HttpHeaders.WARNING));
+			assertEquals(1, stub.stats("/message").getStatus(503));
+			assertEquals(1, count(client, "staleOnError"));
+		}
+	}
+
+	@Test
+	void staleIfErrorOnConnectError() {
+
+		StubUpstream stub = stub(new Route());
+		try (ConfigurableApplicationContext client = client(stub, TTL, Duration.ZERO,
+				Duration.ofMinutes(1))) {
+
+			get(client);
+			stub.close();
+			sleep(TTL.plusMillis(100));
+
+			ResponseEntity<Greeting> response = get(client);
+			assertEquals(200, response.getStatusCodeValue());
+			assertEquals("Hello World", response.getBody().getMessage());
+			assertEquals(List.of(REVALIDATION_FAILED), response.getHeaders().get(HttpHeaders.WARNING));
+			assertEquals(1, count(client, "staleOnError"));
+		}
+	}
+
+	private ResponseEntity<Greeting> get(ConfigurableApplicationContext client) {
+		return entity(client).block(Duration.ofSeconds(5));
+	}
+
+	private Mono<ResponseEntity<Greeting>> entity(ConfigurableApplicationContext client) {
+		WebClient webClient = client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+		return webClient.get().uri("/message").retrieve().toEntity(Greeting.class);
+	}
+
+	private long count(ConfigurableApplicationContext client, String counter) {
+		return client.getBean(ResponseCacheFilter.class).snapshot().get(WebClientRegistry.GREETING).get(counter);
+	}
+
+	private StubUpstream stub(Route route) {
+		return StubUpstream.builder().route("/message", route).start();
+	}
+
+	/*
+	 * Only the cache between the WebClient and the stub: no retries or hedges adding calls, no breaker refusing
+	 */
+	private ConfigurableApplicationContext client(StubUpstream stub, Duration ttl, Duration staleWhileRevalidate,
+			Duration staleIfError) {
+		return new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE).run(
+				"--greeting.server.netty.port=0", //
+				"--webclient.upstreams.greeting.base-url=" + stub.getBaseUrl(), //
+				"--webclient.upstreams.greeting.cache.enabled=true", //
+				"--webclient.upstreams.greeting.cache.ttl=" + ttl.toMillis() + "ms", //
+				"--webclient.upstreams.greeting.cache.stale-while-revalidate=" + staleWhileRevalidate.toMillis()
+						+ "ms", //
+				"--webclient.upstreams.greeting.cache.stale-if-error=" + staleIfError.toMillis() + "ms", //
+				"--webclient.upstreams.greeting.coalescing.enabled=false", //
+				"--webclient.upstreams.greeting.hedging.enabled=false", //
+				"--webclient.upstreams.greeting.breaker.enabled=false", //
+				"--webclient.upstreams.greeting.retry.enabled=false");
+	}
+
+	private void sleep(Duration duration) {
+		try {
+			Thread.sleep(duration.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
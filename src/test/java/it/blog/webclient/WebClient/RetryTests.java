@@ -0,0 +1,160 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import it.blog.webclient.WebClientApplication;
+import it.blog.webclient.WebClient.StubUpstream.Route;
+import it.blog.webclient.component.RetryFilter;
+import it.blog.webclient.component.WebClientRegistry;
+import reactor.core.publisher.Mono;
+
+/*
+ * Calls through the greeting WebClient retried by RetryFilter, against the faults of a stub upstream: resets and
+ * 5xx are retried, 4xx and the non-idempotent methods (unless allowed) are not, the backoff is full jitter and
+ * the budget stops the retries of an upstream that keeps failing
+ */
+class RetryTests {
+
+	@Test
+	void networkAnd5xxRetried() {
+
+		try (StubUpstream stub = stub(); ConfigurableApplicationContext client = client(stub)) {
+
+			WebClient webClient = webClient(client);
+			assertEquals(503, call(webClient, HttpMethod.GET, "/unavailable"));
+			assertEquals(0, call(webClient, HttpMethod.GET, "/reset"));
+			assertEquals(404, call(webClient, HttpMethod.GET, "/missing"));
+
+			assertEquals(3, stub.stats("/unavailable").getRequests());
+			assertEquals(3, stub.stats("/reset").getRequests());
+			assertEquals(1, stub.stats("/missing").getRequests());
+			assertEquals(4L, snapshot(client).get("retries"));
+		}
+	}
+
+	@Test
+	void nonIdempotentOnlyWhenAllowed() {
+
+		try (StubUpstream stub = stub(); ConfigurableApplicationContext client = client(stub)) {
+
+			assertEquals(503, call(webClient(client), HttpMethod.POST, "/unavailable"));
+			assertEquals(1, stub.stats("/unavailable").getRequests());
+		}
+
+		try (StubUpstream stub = stub();
+				ConfigurableApplicationContext client = client(stub,
+						"--webclient.upstreams.greeting.retry.allow-non-idempotent=true")) {
+
+			assertEquals(503, call(webClient(client), HttpMethod.POST, "/unavailable"));
+			assertEquals(3, stub.stats("/unavailable").getRequests());
+		}
+	}
+
+	@Test
+	void fullJitterBackoff() {
+
+		/*
+		 * Two backoffs, each uniform between 0 and 100ms, the second one capped by max-backoff. With equal jitter
+		 * (half fixed, half random) no call would take less than 100ms
+		 */
+		try (StubUpstream stub = stub();
+				ConfigurableApplicationContext client = client(stub,
+						"--webclient.upstreams.greeting.retry.base-backoff=100ms",
+						"--webclient.upstreams.greeting.retry.max-backoff=100ms",
+						"--webclient.upstreams.greeting.retry.budget-burst=1000")) {
+
+			WebClient webClient = webClient(client);
+			call(webClient, HttpMethod.GET, "/unavailable");
+
+			List<Long> elapsed = new ArrayList<>();
+			for (int i = 0; i < 40; i++) {
+				long start = System.nanoTime();
+				assertEquals(503, call(webClient, HttpMethod.GET, "/unavailable"));
+				elapsed.add(Duration.ofNanos(System.nanoTime() - start).toMillis());
+			}
+
+			long min = elapsed.stream().mapToLong(Long::longValue).min().getAsLong();
+			long max = elapsed.stream().mapToLong(Long::longValue).max().getAsLong();
+			assertTrue(min < 60, elapsed.toString());
+			assertTrue(max > 100 && max < 260, elapsed.toString());
+			assertEquals(123, stub.stats("/unavailable").getRequests());
+		}
+	}
+
+	@Test
+	void budgetRunsOut() {
+
+		/*
+		 * The burst of 2 tokens pays both retries of the first call, the next calls add 0.1 tokens each
+		 */
+		try (StubUpstream stub = stub();
+				ConfigurableApplicationContext client = client(stub,
+						"--webclient.upstreams.greeting.retry.budget-burst=2")) {
+
+			WebClient webClient = webClient(client);
+			for (int i = 0; i < 5; i++) {
+				assertEquals(503, call(webClient, HttpMethod.GET, "/unavailable"));
+			}
+
+			assertEquals(7, stub.stats("/unavailable").getRequests());
+			assertEquals(2L, snapshot(client).get("retries"));
+			assertEquals(4L, snapshot(client).get("budgetExhausted"));
+		}
+	}
+
+	/*
+	 * Status of the call, 0 when it failed without one
+	 */
+	private int call(WebClient webClient, HttpMethod method, String path) {
+		return webClient.method(method).uri(path)
+				.exchangeToMono(response -> response.releaseBody().thenReturn(response.rawStatusCode()))
+				.onErrorResume(error -> Mono.just(0)).block(Duration.ofSeconds(10));
+	}
+
+	private WebClient webClient(ConfigurableApplicationContext client) {
+		return client.getBean(WebClientRegistry.class).get(WebClientRegistry.GREETING);
+	}
+
+	private Map<String, Object> snapshot(ConfigurableApplicationContext client) {
+		return client.getBean(RetryFilter.class).snapshot().get(WebClientRegistry.GREETING);
+	}
+
+	private StubUpstream stub() {
+		return StubUpstream.builder() //
+				.route("/unavailable", new Route().error(503, 1)) //
+				.route("/reset", new Route().reset(1)) //
+				.route("/missing", new Route().error(404, 1)) //
+				.start();
+	}
+
+	/*
+	 * 3 attempts, budget of 10% of the calls, and nothing else retrying or refusing: no hedges, no breaker
+	 */
+	private ConfigurableApplicationContext client(StubUpstream stub, String... properties) {
+		List<String> args = new ArrayList<>(List.of("--greeting.server.netty.port=0", //
+				"--webclient.upstreams.greeting.base-url=" + stub.getBaseUrl(), //
+				"--webclient.upstreams.greeting.retry.enabled=true", //
+				"--webclient.upstreams.greeting.retry.max-attempts=3", //
+				"--webclient.upstreams.greeting.retry.budget-percent=10", //
+				"--webclient.upstreams.greeting.cache.enabled=false", //
+				"--webclient.upstreams.greeting.coalescing.enabled=false", //
+				"--webclient.upstreams.greeting.hedging.enabled=false", //
+				"--webclient.upstreams.greeting.breaker.enabled=false"));
+		args.addAll(List.of(properties));
+		return new SpringApplicationBuilder(WebClientApplication.class).web(WebApplicationType.NONE)
+				.run(args.toArray(new String[0]));
+	}
+}
@@ -0,0 +1,74 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import it.blog.webclient.Greeting;
+import it.blog.webclient.GreetingNettyServer;
+import it.blog.webclient.ServerMode;
+import it.blog.webclient.WebClientApplication;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/*
+ * 100 concurrent callers against /message, with 5 Tomcat threads and 200ms of simulated latency
+ */
+class ServerModeLoadTests {
+
+	private static Logger log = LoggerFactory.getLogger(ServerModeLoadTests.class);
+
+	static final int CALLERS = 100;
+	static final Duration LATENCY = Duration.ofMillis(200);
+
+	@ParameterizedTest
+	@EnumSource(ServerMode.class)
+	void concurrentCallers(ServerMode mode) {
+
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(WebClientApplication.class)
+				.run("--server.port=0", "--greeting.server.netty.port=0", "--greeting.server.mode=" + mode,
+						"--greeting.server.latency=" + LATENCY.toMillis() + "ms")) {
+
+			int port = mode == ServerMode.NETTY ? context.getBean(GreetingNettyServer.class).getPort()
+					: ((WebServerApplicationContext) context).getWebServer().getPort();
+
+			ConnectionProvider provider = ConnectionProvider.builder("load-test").maxConnections(CALLERS).build();
+			WebClient client = WebClient.builder().baseUrl("http://localhost:" + port)
+					.clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider))).build();
+
+			long start = System.nanoTime();
+			List<Greeting> greetings = Flux.range(0, CALLERS)
+					.flatMap(i -> client.get().uri("/message").retrieve().bodyToMono(Greeting.class), CALLERS)
+					.collectList().block(Duration.ofSeconds(30));
+			Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+			provider.dispose();
+
+			log.info("{}: {} callers in {} ms, {} req/s", mode, CALLERS, elapsed.toMillis(),
+					String.format("%.1f", CALLERS * 1000.0 / Math.max(1, elapsed.toMillis())));
+
+			assertEquals(CALLERS, greetings.size());
+			assertTrue(greetings.stream().allMatch(greeting -> "Hello World".equals(greeting.getMessage())));
+
+			if (mode != ServerMode.BLOCKING) {
+				/*
+				 * Tomcat threads are not the ceiling anymore: every caller waits the latency concurrently
+				 */
+				assertTrue(elapsed.compareTo(LATENCY.multipliedBy(5)) < 0, mode + " took " + elapsed);
+			}
+		}
+	}
+}
@@ -0,0 +1,366 @@
+package it.blog.webclient.WebClient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import it.blog.webclient.Greeting;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.resources.LoopResources;
+
+/*
+ * Non-blocking upstream for tests and benchmarks, every route with its own latency distribution and faults:
+ * error statuses, connection resets, bodies dripped a chunk at a time, payloads of any size, ETags answered with 304.
+ * Each route draws from a Random seeded with the seed and its path: the n-th request to a route gets the same
+ * latency and fault on every run, whatever the timing of the other routes.
+ *
+ * StubUpstream stub = StubUpstream.builder().seed(42)
+ *     .route("/message", new StubUpstream.Route()
+ *         .latency(Latency.logNormal(Duration.ofMillis(20), 0.5).withSpikes(0.01, Duration.ofSeconds(1)))
+ *         .error(503, 0.02).reset(0.001))
+ *     .start();
+ */
+public class StubUpstream implements AutoCloseable {
+
+	private final Map<String, Route> routes;
+	private final LoopResources loops;
+	private final DisposableServer server;
+
+	private StubUpstream(Builder builder) {
+		this.routes = new LinkedHashMap<>(builder.routes);
+		routes.forEach((path, route) -> route.random = new Random(builder.seed * 31 + path.hashCode()));
+
+		loops = LoopResources.create("stub-upstream", builder.workerThreads, true);
+		server = HttpServer.create() //
+				.port(builder.port) //
+				.protocol(HttpProtocol.HTTP11, HttpProtocol.H2C) //
+				.runOn(loops) //
+				.handle(this::handle) //
+				.bindNow();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public int getPort() {
+		return server.port();
+	}
+
+	public String getBaseUrl() {
+		return "http://localhost:" + server.port();
+	}
+
+	public Stats stats(String path) {
+		return routes.get(path).stats;
+	}
+
+	@Override
+	public void close() {
+		server.disposeNow();
+		loops.dispose();
+	}
+
+	/*
+	 * The request body is read before the latency starts, as an upstream parsing it would
+	 */
+	private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+		Route route = routes.get(request.fullPath());
+		if (route == null) {
+			return response.status(HttpResponseStatus.NOT_FOUND).send();
+		}
+
+		Plan plan = route.plan();
+		route.stats.requests.increment();
+
+		return request.receive().then() //
+				.then(Mono.delay(plan.latency)) //
+				.then(Mono.defer(() -> respond(route, plan, request, response)));
+	}
+
+	private Mono<Void> respond(Route route, Plan plan, HttpServerRequest request, HttpServerResponse response) {
+
+		if (plan.reset) {
+			route.stats.resets.increment();
+			/*
+			 * No linger: the close sends a RST instead of a FIN, the client sees "connection reset by peer"
+			 */
+			response.withConnection(connection -> {
+				connection.channel().config().setOption(ChannelOption.SO_LINGER, 0);
+				connection.channel().close();
+			});
+			return Mono.empty();
+		}
+
+		int status = plan.status == HttpResponseStatus.OK.code() && route.isNotModified(request)
+				? HttpResponseStatus.NOT_MODIFIED.code()
+				: plan.status;
+		route.stats.statuses.computeIfAbsent(status, code -> new LongAdder()).increment();
+
+		if (status != HttpResponseStatus.OK.code()) {
+			if (status == HttpResponseStatus.NOT_MODIFIED.code()) {
+				route.headers.forEach(response::header);
+			}
+			return response.status(status).header(HttpHeaders.CONTENT_LENGTH, "0").send();
+		}
+
+		byte[] body = route.body;
+		route.headers.forEach(response::header);
+		response.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE) //
+				.header(HttpHeaders.CONTENT_LENGTH, String.valueOf(body.length));
+
+		if (route.dripInterval == null) {
+			return response.sendByteArray(Mono.just(body)).then();
+		}
+
+		int chunk = route.dripChunk;
+		int chunks = (body.length + chunk - 1) / chunk;
+		return response.send(Flux.range(0, chunks) //
+				.delayElements(route.dripInterval) //
+				.map(i -> Unpooled.wrappedBuffer(body, i * chunk, Math.min(chunk, body.length - i * chunk))),
+				buffer -> true).then();
+	}
+
+	public static class Builder {
+
+		private long seed = 0;
+		private int port = 0;
+		private int workerThreads = 1;
+		private final Map<String, Route> routes = new LinkedHashMap<>();
+
+		public Builder seed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		/*
+		 * 0, the default, for a free port
+		 */
+		public Builder port(int port) {
+			this.port = port;
+			return this;
+		}
+
+		public Builder workerThreads(int workerThreads) {
+			this.workerThreads = workerThreads;
+			return this;
+		}
+
+		/*
+		 * GET and POST of the path, the query is ignored
+		 */
+		public Builder route(String path, Route route) {
+			routes.put(path, route);
+			return this;
+		}
+
+		public StubUpstream start() {
+			return new StubUpstream(this);
+		}
+	}
+
+	/*
+	 * Latency and faults of a path. Without settings: a Hello World greeting at once
+	 */
+	public static class Route {
+
+		private static final ObjectMapper MAPPER = new ObjectMapper();
+
+		private Latency latency = Latency.fixed(Duration.ZERO);
+		private final Map<Integer, Double> errors = new LinkedHashMap<>();
+		private double resets = 0;
+		private byte[] body = json(new Greeting("Hello World"));
+		private int dripChunk;
+		private Duration dripInterval;
+		private final Map<String, String> headers = new LinkedHashMap<>();
+
+		private Random random;
+		private final Stats stats = new Stats();
+
+		public Route latency(Latency latency) {
+			this.latency = latency;
+			return this;
+		}
+
+		/*
+		 * Fraction of the requests answered with the status and an empty body, after the latency.
+		 * The faults can be changed while the stub runs: an upstream that starts failing
+		 */
+		public synchronized Route error(int status, double probability) {
+			errors.put(status, probability);
+			return this;
+		}
+
+		/*
+		 * Fraction of the requests whose connection is reset after the latency, without a response
+		 */
+		public synchronized Route reset(double probability) {
+			this.resets = probability;
+			return this;
+		}
+
+		public Route body(Object greeting) {
+			this.body = json(greeting);
+			return this;
+		}
+
+		/*
+		 * A greeting of about size bytes
+		 */
+		public Route payload(DataSize size) {
+			int overhead = json(new Greeting("")).length;
+			this.body = json(new Greeting("x".repeat((int) Math.max(0, size.toBytes() - overhead))));
+			return this;
+		}
+
+		/*
+		 * Header of the 200 and 304 responses
+		 */
+		public Route header(String name, String value) {
+			headers.put(name, value);
+			return this;
+		}
+
+		/*
+		 * The ETag of the body: a request with a matching If-None-Match gets 304 and no body
+		 */
+		public Route etag(String etag) {
+			return header(HttpHeaders.ETAG, etag);
+		}
+
+		/*
+		 * The body written chunk bytes at a time, one chunk every interval: headers arrive, the body drags on
+		 */
+		public Route drip(DataSize chunk, Duration interval) {
+			this.dripChunk = (int) Math.max(1, chunk.toBytes());
+			this.dripInterval = interval;
+			return this;
+		}
+
+		/*
+		 * Every request draws the same amount, latency and fault are decided together: the sequence does not
+		 * depend on which requests overlap
+		 */
+		private synchronized Plan plan() {
+			Duration delay = latency.sample(random);
+			double draw = random.nextDouble();
+
+			if (draw < resets) {
+				return new Plan(delay, 0, true);
+			}
+			draw -= resets;
+			for (Map.Entry<Integer, Double> error : errors.entrySet()) {
+				if (draw < error.getValue()) {
+					return new Plan(delay, error.getKey(), false);
+				}
+				draw -= error.getValue();
+			}
+			return new Plan(delay, HttpResponseStatus.OK.code(), false);
+		}
+
+		private boolean isNotModified(HttpServerRequest request) {
+			String etag = headers.get(HttpHeaders.ETAG);
+			return etag != null && etag.equals(request.requestHeaders().get(HttpHeaders.IF_NONE_MATCH));
+		}
+
+		private static byte[] json(Object value) {
+			try {
+				return MAPPER.writeValueAsBytes(value);
+			} catch (JsonProcessingException e) {
+				return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+			}
+		}
+	}
+
+	/*
+	 * Latency of a request drawn from the Random of its route
+	 */
+	@FunctionalInterface
+	public interface Latency {
+
+		Duration sample(Random random);
+
+		static Latency fixed(Duration latency) {
+			return random -> latency;
+		}
+
+		static Latency uniform(Duration min, Duration max) {
+			long range = max.minus(min).toNanos();
+			return random -> min.plusNanos((long) (random.nextDouble() * range));
+		}
+
+		/*
+		 * Half of the requests under median, sigma widens the tail: 0.5 puts p99 at about 3.2 x median
+		 */
+		static Latency logNormal(Duration median, double sigma) {
+			return random -> Duration.ofNanos((long) (median.toNanos() * Math.exp(sigma * random.nextGaussian())));
+		}
+
+		/*
+		 * A fraction of the requests gets spike on top, the stalls (GC, retransmits) a distribution misses
+		 */
+		default Latency withSpikes(double probability, Duration spike) {
+			return random -> {
+				boolean spiked = random.nextDouble() < probability;
+				Duration latency = sample(random);
+				return spiked ? latency.plus(spike) : latency;
+			};
+		}
+	}
+
+	/*
+	 * Requests of a route, answered by status and reset
+	 */
+	public static class Stats {
+
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder resets = new LongAdder();
+		private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+		public long getRequests() {
+			return requests.sum();
+		}
+
+		public long getResets() {
+			return resets.sum();
+		}
+
+		public long getStatus(int status) {
+			LongAdder count = statuses.get(status);
+			return count == null ? 0 : count.sum();
+		}
+	}
+
+	private static class Plan {
+
+		final Duration latency;
+		final int status;
+		final boolean reset;
+
+		Plan(Duration latency, int status, boolean reset) {
+			this.latency = latency;
+			this.status = status;
+			this.reset = reset;
+		}
+	}
+}
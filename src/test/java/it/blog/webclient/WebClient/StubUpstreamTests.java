@@ -0,0 +1,96 @@
+package it.blog.webclient.WebClient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+
+import it.blog.webclient.WebClient.StubUpstream.Latency;
+import it.blog.webclient.WebClient.StubUpstream.Route;
+import reactor.core.publisher.Flux;
+
+/*
+ * The stub upstream repeats its faults for the same seed, and the client sees them as a real upstream would
+ */
+class StubUpstreamTests {
+
+	static final int REQUESTS = 100;
+
+	@Test
+	void sameSeedSameFaults() {
+
+		List<Integer> first = statuses(7);
+		List<Integer> second = statuses(7);
+
+		assertEquals(first, second);
+		assertTrue(first.contains(200) && first.contains(503) && first.contains(500), first.toString());
+	}
+
+	@Test
+	void logNormalLatencyWithSpikes() {
+
+		Latency latency = Latency.logNormal(Duration.ofMillis(20), 0.5).withSpikes(0.01, Duration.ofSeconds(1));
+		Random random = new Random(1);
+		long[] millis = new long[100_000];
+		for (int i = 0; i < millis.length; i++) {
+			millis[i] = latency.sample(random).toMillis();
+		}
+		Arrays.sort(millis);
+
+		long p50 = millis[millis.length / 2];
+		long p999 = millis[millis.length * 999 / 1000];
+		assertTrue(p50 >= 18 && p50 <= 22, "p50 " + p50);
+		assertTrue(p999 >= 1000, "p99.9 " + p999);
+	}
+
+	@Test
+	void resetsAndDrips() {
+
+		try (StubUpstream stub = StubUpstream.builder() //
+				.route("/reset", new Route().reset(1)) //
+				.route("/drip", new Route().payload(DataSize.ofKilobytes(4)).drip(DataSize.ofKilobytes(1),
+						Duration.ofMillis(100))) //
+				.start()) {
+
+			WebClient client = WebClient.create(stub.getBaseUrl());
+
+			assertThrows(WebClientRequestException.class,
+					() -> client.get().uri("/reset").retrieve().bodyToMono(String.class).block(Duration.ofSeconds(5)));
+			assertEquals(1, stub.stats("/reset").getResets());
+
+			long start = System.nanoTime();
+			String body = client.get().uri("/drip").retrieve().bodyToMono(String.class).block(Duration.ofSeconds(5));
+			Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+			assertEquals(4096, body.length());
+			assertTrue(elapsed.compareTo(Duration.ofMillis(400)) >= 0, "dripped in " + elapsed);
+		}
+	}
+
+	private List<Integer> statuses(long seed) {
+		try (StubUpstream stub = StubUpstream.builder().seed(seed) //
+				.route("/message", new Route().latency(Latency.uniform(Duration.ZERO, Duration.ofMillis(5))) //
+						.error(503, 0.2).error(500, 0.05)) //
+				.start()) {
+
+			WebClient client = WebClient.create(stub.getBaseUrl());
+			List<Integer> statuses = Flux.range(0, REQUESTS)
+					.concatMap(i -> client.get().uri("/message").exchangeToMono(
+							response -> response.releaseBody().thenReturn(response.rawStatusCode())))
+					.collectList().block(Duration.ofSeconds(30));
+
+			assertEquals(REQUESTS, stub.stats("/message").getRequests());
+			assertEquals(stub.stats("/message").getStatus(503), statuses.stream().filter(s -> s == 503).count());
+			return statuses;
+		}
+	}
+}